@@ -1,5 +1,8 @@
 package bank;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 import bank.exceptions.InsufficientFundsException;
 import bank.exceptions.InvalidLoanAmountException;
 
@@ -12,23 +15,72 @@ import bank.exceptions.InvalidLoanAmountException;
  * funds, as well as managing the loan balance. It throws exceptions when
  * operations are not permissible due to insufficient funds or loan balance.
  * </p>
+ * <p>
+ * Balances are kept as whole numbers of cents. Every operation is available
+ * both in major units, as a {@code double}, and in cents, as a {@code long};
+ * see {@link Money} for how the two are converted.
+ * </p>
+ * <p>
+ * The balance and loan balance are each updated without a lock, by a
+ * compare-and-set loop on the field through a {@link VarHandle}, so a
+ * withdrawal or repayment checks the amount against the current value and
+ * takes it off in one atomic step. Any number of threads may use an account,
+ * and a contended account costs retries rather than blocking.
+ * </p>
+ * <p>
+ * {@link Bank} still takes the account's lock while it applies an operation,
+ * so that the operation's journal record, reserve update and any closing of
+ * the account stay together, but its own debits use the same atomic checks,
+ * so they stay correct alongside direct calls to the account. The lock is the
+ * account itself, except for accounts whose balances are kept in a
+ * {@link bank.store.SlotAccountStore}, which share the store's lock for their
+ * slot and take it for every operation.
+ * </p>
  */
 public class Account {
 
+    private static final VarHandle ACCOUNT_BALANCE;
+    private static final VarHandle LOAN_BALANCE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ACCOUNT_BALANCE = lookup.findVarHandle(Account.class, "accountBalance", long.class);
+            LOAN_BALANCE = lookup.findVarHandle(Account.class, "loanBalance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String accountHolder;
-    private double accountBalance;
-    private double loanBalance = 0.0;
+    private volatile long accountBalance;
+    private volatile long loanBalance = 0;
+    private boolean closed = false;
+    private volatile boolean dirty = true;
 
     /**
      * Constructs a new {@link Account} for the specified account holder with an
      * initial balance.
-     * 
+     *
      * @param accountHolder the name of the account holder
      * @param balance       the initial balance of the account
      */
     public Account(String accountHolder, double balance) {
+        this(accountHolder, Money.toCents(balance), 0);
+    }
+
+    /**
+     * Constructs a new {@link Account} for the specified account holder with an
+     * initial balance and loan balance in cents.
+     *
+     * @param accountHolder the name of the account holder
+     * @param balance       the initial balance of the account, in cents
+     * @param loanBalance   the initial loan balance of the account, in cents
+     */
+    Account(String accountHolder, long balance, long loanBalance) {
         this.accountHolder = accountHolder;
         this.accountBalance = balance;
+        this.loanBalance = loanBalance;
     }
 
     /**
@@ -46,20 +98,43 @@ public class Account {
      * @return the current account balance
      */
     public double getAccountBalance() {
-        return accountBalance;
+        return Money.toAmount(getAccountBalanceCents());
+    }
+
+    /**
+     * Retrieves the current balance of the account in cents.
+     *
+     * @return the current account balance, in cents
+     */
+    public long getAccountBalanceCents() {
+        return balance();
     }
 
     /**
      * Checks whether the specified amount is available in the account balance.
-     * 
+     *
      * @param amount the amount to check
      * @throws InsufficientFundsException if the amount exceeds the current account
      *                                    balance
      */
     public void checkAmountInAccount(double amount)
             throws InsufficientFundsException {
-        if (accountBalance < amount)
-            throw new InsufficientFundsException(amount, accountBalance);
+        checkAmountInAccountCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether the specified amount in cents is available in the account
+     * balance.
+     *
+     * @param amount the amount to check, in cents
+     * @throws InsufficientFundsException if the amount exceeds the current account
+     *                                    balance
+     */
+    public void checkAmountInAccountCents(long amount)
+            throws InsufficientFundsException {
+        long balance = balance();
+        if (balance < amount)
+            throw new InsufficientFundsException(Money.toAmount(amount), Money.toAmount(balance));
     }
 
     /**
@@ -69,21 +144,45 @@ public class Account {
      * @param amount the amount to deposit
      */
     public void deposit(double amount) {
-        accountBalance += amount;
+        depositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Deposits the specified amount in cents into the account, increasing the
+     * account balance.
+     *
+     * @param amount the amount to deposit, in cents
+     */
+    public void depositCents(long amount) {
+        adjustBalance(amount);
     }
 
     /**
      * Withdraws the specified amount from the account, reducing the account
      * balance.
-     * 
+     *
      * @param amount the amount to withdraw
      * @throws InsufficientFundsException if the withdrawal amount exceeds the
      *                                    current balance
      */
     public void withdraw(double amount)
             throws InsufficientFundsException {
-        checkAmountInAccount(amount);
-        accountBalance -= amount;
+        withdrawCents(Money.toCents(amount));
+    }
+
+    /**
+     * Withdraws the specified amount in cents from the account, reducing the
+     * account balance. The amount is checked against the balance and taken off
+     * it in one atomic step.
+     *
+     * @param amount the amount to withdraw, in cents
+     * @throws InsufficientFundsException if the withdrawal amount exceeds the
+     *                                    current balance
+     */
+    public void withdrawCents(long amount)
+            throws InsufficientFundsException {
+        if (!tryDebit(amount))
+            throw new InsufficientFundsException(Money.toAmount(amount), Money.toAmount(balance()));
     }
 
     /**
@@ -92,7 +191,16 @@ public class Account {
      * @return the current loan balance
      */
     public double getLoanBalance() {
-        return loanBalance;
+        return Money.toAmount(getLoanBalanceCents());
+    }
+
+    /**
+     * Retrieves the current loan balance for the account holder in cents.
+     *
+     * @return the current loan balance, in cents
+     */
+    public long getLoanBalanceCents() {
+        return loan();
     }
 
     /**
@@ -105,8 +213,21 @@ public class Account {
      */
     public void checkAmountInLoanBalance(double amount)
             throws InvalidLoanAmountException {
-        if (amount > loanBalance)
-            throw new InvalidLoanAmountException(amount, "Repayment amount exceeds loan balance");
+        checkAmountInLoanBalanceCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether the specified repayment amount in cents exceeds the current
+     * loan balance.
+     *
+     * @param amount the amount to check, in cents
+     * @throws InvalidLoanAmountException if the repayment amount exceeds the loan
+     *                                    balance
+     */
+    public void checkAmountInLoanBalanceCents(long amount)
+            throws InvalidLoanAmountException {
+        if (amount > loan())
+            throw new InvalidLoanAmountException(Money.toAmount(amount), "Repayment amount exceeds loan balance");
     }
 
     /**
@@ -115,7 +236,16 @@ public class Account {
      * @param amount the amount to add to the loan balance
      */
     public void addToLoanBalance(double amount) {
-        loanBalance += amount;
+        addToLoanBalanceCents(Money.toCents(amount));
+    }
+
+    /**
+     * Adds the specified amount in cents to the loan balance.
+     *
+     * @param amount the amount to add to the loan balance, in cents
+     */
+    public void addToLoanBalanceCents(long amount) {
+        adjustLoan(amount);
     }
 
     /**
@@ -127,8 +257,162 @@ public class Account {
      */
     public void subtractFromLoanBalance(double amount)
             throws InvalidLoanAmountException {
-        checkAmountInLoanBalance(amount);
-        loanBalance -= amount;
+        subtractFromLoanBalanceCents(Money.toCents(amount));
+    }
+
+    /**
+     * Subtracts the specified amount in cents from the loan balance. The amount
+     * is checked against the loan balance and taken off it in one atomic step.
+     *
+     * @param amount the amount to subtract from the loan balance, in cents
+     * @throws InvalidLoanAmountException if the repayment amount exceeds the loan
+     *                                    balance
+     */
+    public void subtractFromLoanBalanceCents(long amount)
+            throws InvalidLoanAmountException {
+        if (!tryReduceLoan(amount))
+            throw new InvalidLoanAmountException(Money.toAmount(amount), "Repayment amount exceeds loan balance");
+    }
+
+    /**
+     * Checks whether the account has been closed by {@link Bank}.
+     *
+     * @return {@code true} if the account has been closed
+     */
+    boolean isClosed() {
+        synchronized (monitor()) {
+            return closed;
+        }
+    }
+
+    /**
+     * Marks the account as closed, so that operations which looked it up before
+     * it was removed from the bank are rejected.
+     */
+    void close() {
+        synchronized (monitor()) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Checks whether the account has changed since it was last written to a
+     * snapshot or checkpoint by {@link Bank}. A new account starts out changed.
+     *
+     * @return {@code true} if the account has changed
+     */
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the account as unchanged, once it has been written to or loaded
+     * from a snapshot or checkpoint.
+     */
+    void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Retrieves the account's lock. Callers that apply several changes to the
+     * account as one, such as {@link Bank}, synchronize on it.
+     *
+     * @return the account's lock, which is the account itself unless its
+     *         balances are held elsewhere
+     */
+    Object monitor() {
+        return this;
+    }
+
+    /**
+     * Compares the order in which this account's lock and another's are taken
+     * when both are needed. Two accounts whose locks compare equal share the
+     * same lock.
+     *
+     * @param other the other account
+     * @return a negative number, zero or a positive number as this account's
+     *         lock is taken before, together with or after the other's
+     */
+    int compareLockOrder(Account other) {
+        return accountHolder.compareTo(other.accountHolder);
+    }
+
+    /**
+     * Reads the account balance.
+     *
+     * @return the account balance, in cents
+     */
+    long balance() {
+        return accountBalance;
+    }
+
+    /**
+     * Adds to the account balance without checking the result, as a deposit or
+     * a replayed change does.
+     *
+     * @param amount the amount to add, in cents, which may be negative
+     */
+    void adjustBalance(long amount) {
+        ACCOUNT_BALANCE.getAndAdd(this, amount);
+        dirty = true;
+    }
+
+    /**
+     * Takes an amount off the account balance if the balance covers it, as
+     * one atomic step.
+     *
+     * @param amount the amount to take, in cents
+     * @return {@code true} if the amount was taken, {@code false} if the
+     *         balance is less than the amount
+     */
+    boolean tryDebit(long amount) {
+        long balance;
+        do {
+            balance = accountBalance;
+            if (balance < amount)
+                return false;
+        } while (!ACCOUNT_BALANCE.weakCompareAndSet(this, balance, balance - amount));
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Reads the loan balance.
+     *
+     * @return the loan balance, in cents
+     */
+    long loan() {
+        return loanBalance;
+    }
+
+    /**
+     * Adds to the loan balance without checking the result, as an approved
+     * loan or a replayed change does.
+     *
+     * @param amount the amount to add, in cents, which may be negative
+     */
+    void adjustLoan(long amount) {
+        LOAN_BALANCE.getAndAdd(this, amount);
+        dirty = true;
+    }
+
+    /**
+     * Takes an amount off the loan balance if the loan balance covers it, as
+     * one atomic step.
+     *
+     * @param amount the amount to take, in cents
+     * @return {@code true} if the amount was taken, {@code false} if the loan
+     *         balance is less than the amount
+     */
+    boolean tryReduceLoan(long amount) {
+        long loan;
+        do {
+            loan = loanBalance;
+            if (loan < amount)
+                return false;
+        } while (!LOAN_BALANCE.weakCompareAndSet(this, loan, loan - amount));
+        dirty = true;
+        return true;
     }
 
 }
@@ -0,0 +1,105 @@
+package bank;
+
+/**
+ * A read-only, forward-only cursor over the accounts of a {@link Bank},
+ * returned by {@link Bank#accountCursor()}.
+ * <p>
+ * The cursor is positioned on one account at a time by {@link #next()}, and
+ * the account holder and balances of that account are then read from the
+ * cursor itself. Nothing is copied up front and no object is created for each
+ * account, so a whole book can be read without the garbage of
+ * {@link Bank#getAccounts()}. The accounts themselves cannot be changed
+ * through a cursor.
+ * </p>
+ * <p>
+ * A cursor may be used while other threads change the bank. Each account's
+ * balance and loan balance are read together under the account's lock, so
+ * they are consistent with each other, but different accounts are read at
+ * different times: like the iterators of concurrent collections, a cursor
+ * sees every account that exists for the whole traversal exactly once, and
+ * may or may not see accounts added or removed during it. A cursor itself is
+ * not safe for use by several threads.
+ * </p>
+ * <p>
+ * All amounts are in cents.
+ * </p>
+ */
+public abstract class AccountCursor {
+
+    private String accountHolder;
+    private long balance;
+    private long loanBalance;
+
+    /**
+     * Constructs a cursor positioned before the first account.
+     */
+    AccountCursor() {
+    }
+
+    /**
+     * Moves to the next account.
+     *
+     * @return {@code true} if the cursor is on an account, {@code false} if
+     *         there are no more accounts
+     */
+    public abstract boolean next();
+
+    /**
+     * Retrieves the account holder of the current account.
+     *
+     * @return the account holder's name
+     * @throws IllegalStateException if the cursor is not on an account
+     */
+    public String getAccountHolder() {
+        if (accountHolder == null)
+            throw new IllegalStateException("Cursor is not on an account");
+        return accountHolder;
+    }
+
+    /**
+     * Retrieves the balance of the current account.
+     *
+     * @return the balance, in cents
+     * @throws IllegalStateException if the cursor is not on an account
+     */
+    public long getBalanceCents() {
+        getAccountHolder();
+        return balance;
+    }
+
+    /**
+     * Retrieves the loan balance of the current account.
+     *
+     * @return the loan balance, in cents
+     * @throws IllegalStateException if the cursor is not on an account
+     */
+    public long getLoanBalanceCents() {
+        getAccountHolder();
+        return loanBalance;
+    }
+
+    /**
+     * Positions the cursor on an account. Implementations call this from
+     * {@link #next()} while holding the account's lock.
+     *
+     * @param accountHolder the account holder's name
+     * @param balance       the balance, in cents
+     * @param loanBalance   the loan balance, in cents
+     */
+    final void set(String accountHolder, long balance, long loanBalance) {
+        this.accountHolder = accountHolder;
+        this.balance = balance;
+        this.loanBalance = loanBalance;
+    }
+
+    /**
+     * Moves the cursor past the last account.
+     *
+     * @return {@code false}, for {@link #next()} to return
+     */
+    final boolean end() {
+        accountHolder = null;
+        return false;
+    }
+
+}
@@ -0,0 +1,126 @@
+package bank;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import bank.store.SlotAccountStore;
+
+/**
+ * Holds a {@link Bank}'s accounts, keyed by account holder.
+ * <p>
+ * A bank is given its store when it is constructed, so the storage can be
+ * chosen for each deployment: a hash table with {@link #hashed()}, a table
+ * sorted by account holder with {@link #sorted()}, or any
+ * {@link SlotAccountStore}, such as a primitive-column, off-heap or
+ * memory-mapped store, with {@link #of(SlotAccountStore)}.
+ * </p>
+ * <p>
+ * A store must be safe for use by several threads. New accounts are added in
+ * two steps, so that the bank can take a new account's lock before any other
+ * thread can find it: {@link #create(String, long, long)} makes the account,
+ * and {@link #add(Account)}, called while holding its lock, publishes it.
+ * Iteration is weakly consistent, as with concurrent collections.
+ * </p>
+ */
+public interface AccountStore extends Iterable<Account> {
+
+    /**
+     * Creates a store backed by a {@link ConcurrentHashMap}, which is the
+     * default for a {@link Bank}.
+     *
+     * @return the new, empty store
+     */
+    static AccountStore hashed() {
+        return new MapAccountStore(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Creates a store backed by a {@link ConcurrentSkipListMap}, which iterates
+     * accounts in account holder order.
+     *
+     * @return the new, empty store
+     */
+    static AccountStore sorted() {
+        return new MapAccountStore(new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * Creates a store whose accounts are views of the slots of a
+     * {@link SlotAccountStore}. No account objects are kept; each lookup
+     * returns a new view, and views of the same account share its slot's
+     * lock.
+     * <p>
+     * Accounts in such a store are not tracked as changed, so every checkpoint
+     * holds all of them.
+     * </p>
+     *
+     * @param slots the slot store to hold the accounts in, which should be
+     *              empty
+     * @return the new store
+     */
+    static AccountStore of(SlotAccountStore slots) {
+        return new SlotBackedAccountStore(slots);
+    }
+
+    /**
+     * Finds the account of an account holder.
+     *
+     * @param accountHolder the account holder's name
+     * @return the account, or {@code null} if the account holder has none
+     */
+    Account get(String accountHolder);
+
+    /**
+     * Creates an account that is not yet held by the store.
+     *
+     * @param accountHolder the account holder's name
+     * @param balance       the initial balance, in cents
+     * @param loanBalance   the initial loan balance, in cents
+     * @return the new account, to be passed to {@link #add(Account)}
+     */
+    Account create(String accountHolder, long balance, long loanBalance);
+
+    /**
+     * Publishes an account made by {@link #create(String, long, long)}, unless
+     * its account holder already has one. The caller must hold the account's
+     * lock.
+     *
+     * @param account the account to add
+     * @return {@code true} if the account was added, {@code false} if the
+     *         account holder already has an account
+     */
+    boolean add(Account account);
+
+    /**
+     * Removes an account, if it is still held. The caller must hold the
+     * account's lock.
+     *
+     * @param account the account to remove
+     */
+    void remove(Account account);
+
+    /**
+     * Retrieves the number of accounts held.
+     *
+     * @return the number of accounts
+     */
+    int size();
+
+    /**
+     * Iterates over the accounts held.
+     *
+     * @return an iterator over the accounts
+     */
+    @Override
+    Iterator<Account> iterator();
+
+    /**
+     * Opens a read-only cursor over the accounts held, which reads each account
+     * under its lock without creating an object for it.
+     *
+     * @return the new cursor, positioned before the first account
+     */
+    AccountCursor cursor();
+
+}
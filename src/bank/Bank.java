@@ -1,7 +1,12 @@
 package bank;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import bank.exceptions.AccountNotFoundException;
 import bank.exceptions.DuplicateAccountException;
@@ -10,21 +15,79 @@ import bank.exceptions.InsufficientReservesException;
 import bank.exceptions.InvalidDepositAmountException;
 import bank.exceptions.InvalidLoanAmountException;
 import bank.exceptions.InvalidWithdrawalAmountException;
+import bank.journal.JournalReader;
+import bank.journal.Mutation;
+import bank.journal.MutationLog;
 
 /**
  * Represents a bank with functionality to manage accounts, deposits,
  * withdrawals, loans, and reserves.
  * Provides checks and constraints to ensure valid operations within defined
  * limits.
+ * <p>
+ * All amounts are kept as whole numbers of cents. Every operation is available
+ * both in major units, as a {@code double}, and in cents, as a {@code long};
+ * the {@code double} methods round to the nearest cent and delegate to their
+ * cents counterparts. See {@link Money}.
+ * </p>
+ * <p>
+ * Deposits, withdrawals, loans and repayments can also be made through the
+ * non-throwing {@code try} methods, such as {@link #tryDeposit(String, long)},
+ * which report a rejection as an {@link OperationResult} instead of an
+ * exception. The throwing methods are thin wrappers over them. Large numbers
+ * of these operations can be applied together with {@link #applyBatch(List)},
+ * or as a single all-or-nothing {@link Transaction} started with
+ * {@link #transaction()}.
+ * </p>
+ * <p>
+ * Money can be moved between accounts with
+ * {@link #transfer(String, String, double)}, which debits and credits both
+ * accounts atomically and leaves the reserves unchanged.
+ * </p>
+ * <p>
+ * A bank may be shared between threads. Each operation on an account holds
+ * that account's lock while it validates and applies the change, so
+ * operations on different accounts run in parallel. The reserves are held in
+ * a striped counter whose cells are locked independently and always after the
+ * account lock, so reserve updates from different threads do not serialize on
+ * a single field while the reserves stay exact and never go below zero,
+ * other than through {@link #tryTransferOut(String, long)}. Operations that
+ * lock two accounts take their locks in account holder order, so they cannot
+ * deadlock.
+ * </p>
+ * <p>
+ * Every change to an account or to the reserves can be recorded in a
+ * {@link MutationLog}, such as a {@link bank.journal.Journal}, set with
+ * {@link #setMutationLog(MutationLog)}. A change is appended while the lock
+ * that protects it is still held and before the operation returns, so the log
+ * records the changes to each account in the order they were made. A change
+ * the log fails to take is undone, or never made, before the log's exception
+ * is passed on to the caller, even from the {@code try} methods, so the bank
+ * never holds a change its log did not record.
+ * </p>
+ * <p>
+ * A bank is rebuilt from its journal with {@link #replayJournal(Path, long)},
+ * on top of a snapshot written by {@link #writeSnapshot(Path, long)} and read
+ * back by {@link #loadSnapshot(Path)}. Between full snapshots, incremental
+ * checkpoints written by {@link #writeCheckpoint(Path, long)} hold only the
+ * accounts changed since the previous snapshot or checkpoint; see
+ * {@link Checkpoints}.
+ * </p>
+ * <p>
+ * Accounts are held in an {@link AccountStore} given to the constructor,
+ * which defaults to a hash table.
+ * </p>
  */
 public class Bank {
 
-    private double maxDeposit;
-    private double maxWithdrawal;
-    private double maxLoan;
+    private volatile long maxDeposit;
+    private volatile long maxWithdrawal;
+    private volatile long maxLoan;
 
-    private List<Account> accounts = new ArrayList<>();
-    private double reserves = 0;
+    private final AccountStore accounts;
+    private final ReserveCounter reserves = new ReserveCounter();
+    private final Set<String> removedSinceCheckpoint = ConcurrentHashMap.newKeySet();
+    private volatile MutationLog log = MutationLog.NONE;
 
     /**
      * Constructs a Bank instance with specified operational limits.
@@ -34,54 +97,98 @@ public class Bank {
      * @param maxLoan       the maximum allowable loan amount
      */
     public Bank(double maxDeposit, double maxWithdrawal, double maxLoan) {
-        this.maxDeposit = maxDeposit;
-        this.maxWithdrawal = maxWithdrawal;
-        this.maxLoan = maxLoan;
+        this(maxDeposit, maxWithdrawal, maxLoan, AccountStore.hashed());
+    }
+
+    /**
+     * Constructs a Bank instance with specified operational limits, holding its
+     * accounts in the specified store.
+     *
+     * @param maxDeposit    the maximum allowable deposit amount
+     * @param maxWithdrawal the maximum allowable withdrawal amount
+     * @param maxLoan       the maximum allowable loan amount
+     * @param accounts      the empty store to hold the bank's accounts in
+     */
+    public Bank(double maxDeposit, double maxWithdrawal, double maxLoan, AccountStore accounts) {
+        this.maxDeposit = Money.toCents(maxDeposit);
+        this.maxWithdrawal = Money.toCents(maxWithdrawal);
+        this.maxLoan = Money.toCents(maxLoan);
+        this.accounts = accounts;
     }
 
     /**
      * Retrieves the maximum deposit limit.
-     * 
+     *
      * @return the maximum deposit limit.
      */
     public double getMaxDeposit() {
-        return maxDeposit;
+        return Money.toAmount(maxDeposit);
     }
 
     /**
      * Retrieves the maximum withdrawal limit.
-     * 
+     *
      * @return the maximum withdrawal limit.
      */
     public double getMaxWithdrawal() {
-        return maxWithdrawal;
+        return Money.toAmount(maxWithdrawal);
     }
 
     /**
      * Retrieves the maximum loan limit.
-     * 
+     *
      * @return the maximum loan limit.
      */
     public double getMaxLoan() {
-        return maxLoan;
+        return Money.toAmount(maxLoan);
     }
 
     /**
      * Retrieves the list of accounts in the bank.
-     * 
+     * <p>
+     * The returned list is a copy; adding to or removing from it does not
+     * affect the accounts held by the bank. Callers that only read the
+     * accounts, such as reports, should use {@link #accountCursor()}, which
+     * copies nothing.
+     * </p>
+     *
      * @return the list of accounts in the bank.
      */
     public List<Account> getAccounts() {
-        return accounts;
+        List<Account> copy = new ArrayList<>(accounts.size());
+        for (Account account : accounts)
+            copy.add(account);
+        return copy;
+    }
+
+    /**
+     * Opens a read-only cursor over the bank's accounts. Unlike
+     * {@link #getAccounts()}, the cursor copies nothing and creates no object
+     * for each account, and it may be used while other threads change the
+     * bank; see {@link AccountCursor}.
+     *
+     * @return the new cursor, positioned before the first account
+     */
+    public AccountCursor accountCursor() {
+        return accounts.cursor();
     }
 
     /**
      * Retrieves the current reserve amount in the bank.
-     * 
+     *
      * @return the current reserve amount.
      */
     public double getReserves() {
-        return reserves;
+        return Money.toAmount(getReservesCents());
+    }
+
+    /**
+     * Retrieves the current reserve amount in the bank in cents.
+     *
+     * @return the current reserve amount, in cents.
+     */
+    public long getReservesCents() {
+        return reserves.sum();
     }
 
     /**
@@ -90,7 +197,7 @@ public class Bank {
      * @param maxDeposit the new maximum deposit limit
      */
     public void setMaxDeposit(double maxDeposit) {
-        this.maxDeposit = maxDeposit;
+        this.maxDeposit = Money.toCents(maxDeposit);
     }
 
     /**
@@ -99,7 +206,7 @@ public class Bank {
      * @param maxWithdrawal the new maximum withdrawal limit
      */
     public void setMaxWithdrawal(double maxWithdrawal) {
-        this.maxWithdrawal = maxWithdrawal;
+        this.maxWithdrawal = Money.toCents(maxWithdrawal);
     }
 
     /**
@@ -108,7 +215,18 @@ public class Bank {
      * @param maxLoan the new maximum loan limit
      */
     public void setMaxLoan(double maxLoan) {
-        this.maxLoan = maxLoan;
+        this.maxLoan = Money.toCents(maxLoan);
+    }
+
+    /**
+     * Sets the log that every change to the bank's accounts and reserves is
+     * appended to.
+     *
+     * @param log the log to append to, or {@link MutationLog#NONE} to stop
+     *            logging
+     */
+    public void setMutationLog(MutationLog log) {
+        this.log = log;
     }
 
     /**
@@ -119,10 +237,50 @@ public class Bank {
      */
     public void checkDepositAmount(double amount)
             throws InvalidDepositAmountException {
+        checkDepositAmountCents(Money.toCents(amount));
+    }
+
+    /**
+     * Validates the deposit amount in cents against bank constraints.
+     *
+     * @param amount the deposit amount to check, in cents
+     * @throws InvalidDepositAmountException if the amount is invalid
+     */
+    public void checkDepositAmountCents(long amount)
+            throws InvalidDepositAmountException {
+        throwIfInvalidDeposit(validateDepositAmount(amount), amount);
+    }
+
+    /**
+     * Validates the deposit amount in cents against bank constraints without
+     * throwing.
+     *
+     * @param amount the deposit amount to check, in cents
+     * @return {@link OperationResult#OK} if the amount is valid, otherwise the
+     *         reason it is not
+     */
+    private OperationResult validateDepositAmount(long amount) {
         if (amount <= 0)
-            throw new InvalidDepositAmountException(amount, "Amount must be greater than zero");
+            return OperationResult.INVALID_AMOUNT;
         if (amount > maxDeposit)
-            throw new InvalidDepositAmountException(amount, "Amount exceeds the maximum allowed deposit limit");
+            return OperationResult.LIMIT_EXCEEDED;
+        return OperationResult.OK;
+    }
+
+    /**
+     * Throws the exception matching an invalid deposit amount result.
+     *
+     * @param result the result of an operation
+     * @param amount the deposit amount, in cents
+     * @throws InvalidDepositAmountException if the result reports an invalid amount
+     */
+    private static void throwIfInvalidDeposit(OperationResult result, long amount)
+            throws InvalidDepositAmountException {
+        if (result == OperationResult.INVALID_AMOUNT)
+            throw new InvalidDepositAmountException(Money.toAmount(amount), "Amount must be greater than zero");
+        if (result == OperationResult.LIMIT_EXCEEDED)
+            throw new InvalidDepositAmountException(Money.toAmount(amount),
+                    "Amount exceeds the maximum allowed deposit limit");
     }
 
     /**
@@ -133,10 +291,51 @@ public class Bank {
      */
     public void checkWithdrawalAmount(double amount)
             throws InvalidWithdrawalAmountException {
+        checkWithdrawalAmountCents(Money.toCents(amount));
+    }
+
+    /**
+     * Validates the withdrawal amount in cents against bank constraints.
+     *
+     * @param amount the withdrawal amount to check, in cents
+     * @throws InvalidWithdrawalAmountException if the amount is invalid
+     */
+    public void checkWithdrawalAmountCents(long amount)
+            throws InvalidWithdrawalAmountException {
+        throwIfInvalidWithdrawal(validateWithdrawalAmount(amount), amount);
+    }
+
+    /**
+     * Validates the withdrawal amount in cents against bank constraints without
+     * throwing.
+     *
+     * @param amount the withdrawal amount to check, in cents
+     * @return {@link OperationResult#OK} if the amount is valid, otherwise the
+     *         reason it is not
+     */
+    private OperationResult validateWithdrawalAmount(long amount) {
         if (amount <= 0)
-            throw new InvalidWithdrawalAmountException(amount, "Amount must be greater than zero");
+            return OperationResult.INVALID_AMOUNT;
         if (amount > maxWithdrawal)
-            throw new InvalidWithdrawalAmountException(amount, "Amount exceeds the maximum allowed withdrawal limit");
+            return OperationResult.LIMIT_EXCEEDED;
+        return OperationResult.OK;
+    }
+
+    /**
+     * Throws the exception matching an invalid withdrawal amount result.
+     *
+     * @param result the result of an operation
+     * @param amount the withdrawal amount, in cents
+     * @throws InvalidWithdrawalAmountException if the result reports an
+     *                                          invalid amount
+     */
+    private static void throwIfInvalidWithdrawal(OperationResult result, long amount)
+            throws InvalidWithdrawalAmountException {
+        if (result == OperationResult.INVALID_AMOUNT)
+            throw new InvalidWithdrawalAmountException(Money.toAmount(amount), "Amount must be greater than zero");
+        if (result == OperationResult.LIMIT_EXCEEDED)
+            throw new InvalidWithdrawalAmountException(Money.toAmount(amount),
+                    "Amount exceeds the maximum allowed withdrawal limit");
     }
 
     /**
@@ -147,10 +346,50 @@ public class Bank {
      */
     public void checkLoanAmount(double amount)
             throws InvalidLoanAmountException {
+        checkLoanAmountCents(Money.toCents(amount));
+    }
+
+    /**
+     * Validates the loan amount in cents against bank constraints.
+     *
+     * @param amount the loan amount to check, in cents
+     * @throws InvalidLoanAmountException if the amount is invalid
+     */
+    public void checkLoanAmountCents(long amount)
+            throws InvalidLoanAmountException {
+        throwIfInvalidLoan(validateLoanAmount(amount), amount);
+    }
+
+    /**
+     * Validates the loan amount in cents against bank constraints without
+     * throwing.
+     *
+     * @param amount the loan amount to check, in cents
+     * @return {@link OperationResult#OK} if the amount is valid, otherwise the
+     *         reason it is not
+     */
+    private OperationResult validateLoanAmount(long amount) {
         if (amount <= 0)
-            throw new InvalidLoanAmountException(amount, "Amount must be greater than zero");
+            return OperationResult.INVALID_AMOUNT;
         if (amount > maxLoan)
-            throw new InvalidLoanAmountException(amount, "Amount exceeds the maximum allowed loan limit");
+            return OperationResult.LIMIT_EXCEEDED;
+        return OperationResult.OK;
+    }
+
+    /**
+     * Throws the exception matching an invalid loan amount result.
+     *
+     * @param result the result of an operation
+     * @param amount the loan amount, in cents
+     * @throws InvalidLoanAmountException if the result reports an invalid amount
+     */
+    private static void throwIfInvalidLoan(OperationResult result, long amount)
+            throws InvalidLoanAmountException {
+        if (result == OperationResult.INVALID_AMOUNT)
+            throw new InvalidLoanAmountException(Money.toAmount(amount), "Amount must be greater than zero");
+        if (result == OperationResult.LIMIT_EXCEEDED)
+            throw new InvalidLoanAmountException(Money.toAmount(amount),
+                    "Amount exceeds the maximum allowed loan limit");
     }
 
     /**
@@ -159,7 +398,17 @@ public class Bank {
      * @param amount the amount to add
      */
     public void addToReserves(double amount) {
-        reserves += amount;
+        addToReservesCents(Money.toCents(amount));
+    }
+
+    /**
+     * Adds a specified amount in cents to the bank's reserves.
+     *
+     * @param amount the amount to add, in cents
+     */
+    public void addToReservesCents(long amount) {
+        log.append(Mutation.RESERVES_ADDED, null, null, amount);
+        reserves.add(amount);
     }
 
     /**
@@ -170,8 +419,24 @@ public class Bank {
      */
     public void subtractFromReserves(double amount)
             throws InsufficientReservesException {
-        checkAmountInReserves(amount);
-        reserves -= amount;
+        subtractFromReservesCents(Money.toCents(amount));
+    }
+
+    /**
+     * Subtracts a specified amount in cents from the bank's reserves.
+     *
+     * @param amount the amount to subtract, in cents
+     * @throws InsufficientReservesException if reserves are insufficient
+     */
+    public void subtractFromReservesCents(long amount)
+            throws InsufficientReservesException {
+        reserves.subtract(amount);
+        try {
+            log.append(Mutation.RESERVES_SUBTRACTED, null, null, amount);
+        } catch (RuntimeException e) {
+            reserves.add(amount);
+            throw e;
+        }
     }
 
     /**
@@ -182,12 +447,28 @@ public class Bank {
      */
     public void checkAmountInReserves(double amount)
             throws InsufficientReservesException {
-        if (reserves < amount)
-            throw new InsufficientReservesException(amount, reserves);
+        checkAmountInReservesCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks if the bank's reserves are sufficient for the specified amount in
+     * cents.
+     *
+     * @param amount the amount to check, in cents
+     * @throws InsufficientReservesException if reserves are insufficient
+     */
+    public void checkAmountInReservesCents(long amount)
+            throws InsufficientReservesException {
+        reserves.check(amount);
     }
 
     /**
      * Retrieves an account by the account holder's name.
+     * <p>
+     * Accounts are looked up in the bank's {@link AccountStore}; with the
+     * default hash table, the cost of the lookup does not grow with the number
+     * of accounts.
+     * </p>
      *
      * @param accountHolder the account holder's name
      * @return the matching account
@@ -195,10 +476,10 @@ public class Bank {
      */
     public Account getAccount(String accountHolder)
             throws AccountNotFoundException {
-        return accounts.stream()
-                .filter(account -> account.getAccountHolder().equals(accountHolder))
-                .findFirst()
-                .orElseThrow(() -> new AccountNotFoundException(accountHolder));
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            throw new AccountNotFoundException(accountHolder);
+        return account;
     }
 
     /**
@@ -212,15 +493,35 @@ public class Bank {
      */
     public void addAccount(String accountHolder, double initialDeposit)
             throws InvalidDepositAmountException, DuplicateAccountException {
-        checkDepositAmount(initialDeposit);
+        addAccountCents(accountHolder, Money.toCents(initialDeposit));
+    }
 
-        boolean accountExists = accounts.stream()
-                .anyMatch(account -> account.getAccountHolder().equals(accountHolder));
-        if (accountExists)
-            throw new DuplicateAccountException(accountHolder);
+    /**
+     * Adds a new account with an initial deposit in cents.
+     *
+     * @param accountHolder  the name of the account holder
+     * @param initialDeposit the initial deposit amount, in cents
+     * @throws InvalidDepositAmountException if the initial deposit is invalid
+     * @throws DuplicateAccountException     if the account details are already in
+     *                                       use
+     */
+    public void addAccountCents(String accountHolder, long initialDeposit)
+            throws InvalidDepositAmountException, DuplicateAccountException {
+        checkDepositAmountCents(initialDeposit);
 
-        accounts.add(new Account(accountHolder, initialDeposit));
-        addToReserves(initialDeposit);
+        Account account = accounts.create(accountHolder, initialDeposit, 0);
+        synchronized (account.monitor()) {
+            if (!accounts.add(account))
+                throw new DuplicateAccountException(accountHolder);
+            try {
+                log.append(Mutation.ACCOUNT_ADDED, accountHolder, null, initialDeposit);
+            } catch (RuntimeException e) {
+                account.close();
+                accounts.remove(account);
+                throw e;
+            }
+            reserves.add(initialDeposit);
+        }
     }
 
     /**
@@ -236,11 +537,69 @@ public class Bank {
             InvalidLoanAmountException,
             InsufficientReservesException {
         Account account = getAccount(accountHolder);
-        double loanBalance = account.getLoanBalance();
-        if (loanBalance > 0)
-            throw new InvalidLoanAmountException(loanBalance, "Loan balance must be 0 to close account");
-        accounts.removeIf(a -> a.getAccountHolder().equals(accountHolder));
-        subtractFromReserves(account.getAccountBalance());
+        synchronized (account.monitor()) {
+            checkOpen(account);
+            long loanBalance = account.getLoanBalanceCents();
+            if (loanBalance > 0)
+                throw new InvalidLoanAmountException(Money.toAmount(loanBalance),
+                        "Loan balance must be 0 to close account");
+            long balance = account.getAccountBalanceCents();
+            reserves.subtract(balance);
+            // journaled while the holder still owns its entry in the store, so
+            // that a new account for the same holder is journaled after it
+            try {
+                log.append(Mutation.ACCOUNT_REMOVED, accountHolder, null, balance);
+            } catch (RuntimeException e) {
+                reserves.add(balance);
+                throw e;
+            }
+            account.close();
+            accounts.remove(account);
+            removedSinceCheckpoint.add(accountHolder);
+        }
+    }
+
+    /**
+     * Throws {@link AccountNotFoundException} if a result reports a missing
+     * account.
+     *
+     * @param result        the result of an operation
+     * @param accountHolder the account holder's name
+     * @throws AccountNotFoundException if the result reports a missing account
+     */
+    private static void throwIfNotFound(OperationResult result, String accountHolder)
+            throws AccountNotFoundException {
+        if (result == OperationResult.ACCOUNT_NOT_FOUND)
+            throw new AccountNotFoundException(accountHolder);
+    }
+
+    /**
+     * Throws {@link InsufficientReservesException} if a result reports
+     * insufficient reserves.
+     *
+     * @param result the result of an operation
+     * @param amount the requested amount, in cents
+     * @throws InsufficientReservesException if the result reports insufficient
+     *                                       reserves
+     */
+    private void throwIfInsufficientReserves(OperationResult result, long amount)
+            throws InsufficientReservesException {
+        if (result == OperationResult.INSUFFICIENT_RESERVES)
+            throw new InsufficientReservesException(Money.toAmount(amount), getReserves());
+    }
+
+    /**
+     * Checks that an account has not been closed by a concurrent
+     * {@link #removeAccount(String)} since it was looked up. Must be called
+     * while holding the account's lock.
+     *
+     * @param account the account to check
+     * @throws AccountNotFoundException if the account has been closed
+     */
+    private void checkOpen(Account account)
+            throws AccountNotFoundException {
+        if (account.isClosed())
+            throw new AccountNotFoundException(account.getAccountHolder());
     }
 
     /**
@@ -255,6 +614,18 @@ public class Bank {
         return getAccount(accountHolder).getAccountBalance();
     }
 
+    /**
+     * Retrieves the balance of an account in cents.
+     *
+     * @param accountHolder the account holder's name
+     * @return the account balance, in cents
+     * @throws AccountNotFoundException if the account does not exist
+     */
+    public long getAccountBalanceCents(String accountHolder)
+            throws AccountNotFoundException {
+        return getAccount(accountHolder).getAccountBalanceCents();
+    }
+
     /**
      * Deposits an amount into an account.
      *
@@ -266,10 +637,48 @@ public class Bank {
     public void deposit(String accountHolder, double amount)
             throws InvalidDepositAmountException,
             AccountNotFoundException {
-        checkDepositAmount(amount);
-        getAccount(accountHolder)
-                .deposit(amount);
-        addToReserves(amount);
+        depositCents(accountHolder, Money.toCents(amount));
+    }
+
+    /**
+     * Deposits an amount in cents into an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the deposit amount, in cents
+     * @throws InvalidDepositAmountException if the amount is invalid
+     * @throws AccountNotFoundException      if the account does not exist
+     */
+    public void depositCents(String accountHolder, long amount)
+            throws InvalidDepositAmountException,
+            AccountNotFoundException {
+        OperationResult result = tryDeposit(accountHolder, amount);
+        throwIfInvalidDeposit(result, amount);
+        throwIfNotFound(result, accountHolder);
+    }
+
+    /**
+     * Deposits an amount in cents into an account, reporting a rejection as a
+     * result instead of an exception.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the deposit amount, in cents
+     * @return the result of the deposit
+     */
+    public OperationResult tryDeposit(String accountHolder, long amount) {
+        OperationResult result = validateDepositAmount(amount);
+        if (result != OperationResult.OK)
+            return result;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            log.append(Mutation.DEPOSIT, accountHolder, null, amount);
+            account.depositCents(amount);
+            reserves.add(amount);
+        }
+        return OperationResult.OK;
     }
 
     /**
@@ -288,11 +697,83 @@ public class Bank {
             InsufficientReservesException,
             AccountNotFoundException,
             InvalidWithdrawalAmountException {
-        checkWithdrawalAmount(amount);
-        checkAmountInReserves(amount);
-        getAccount(accountHolder)
-                .withdraw(amount);
-        subtractFromReserves(amount);
+        withdrawCents(accountHolder, Money.toCents(amount));
+    }
+
+    /**
+     * Withdraws an amount in cents from an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the withdrawal amount, in cents
+     * @throws InsufficientFundsException       if the account has insufficient
+     *                                          funds
+     * @throws InsufficientReservesException    if reserves are insufficient
+     * @throws AccountNotFoundException         if the account does not exist
+     * @throws InvalidWithdrawalAmountException if the amount is invalid
+     */
+    public void withdrawCents(String accountHolder, long amount)
+            throws InsufficientFundsException,
+            InsufficientReservesException,
+            AccountNotFoundException,
+            InvalidWithdrawalAmountException {
+        OperationResult result = tryWithdraw(accountHolder, amount);
+        throwIfInvalidWithdrawal(result, amount);
+        throwIfNotFound(result, accountHolder);
+        if (result == OperationResult.INSUFFICIENT_FUNDS)
+            throw new InsufficientFundsException(Money.toAmount(amount), getAccountBalance(accountHolder));
+        throwIfInsufficientReserves(result, amount);
+    }
+
+    /**
+     * Withdraws an amount in cents from an account, reporting a rejection as a
+     * result instead of an exception.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the withdrawal amount, in cents
+     * @return the result of the withdrawal
+     */
+    public OperationResult tryWithdraw(String accountHolder, long amount) {
+        OperationResult result = validateWithdrawalAmount(amount);
+        if (result != OperationResult.OK)
+            return result;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        return reserveAndDebit(account, amount);
+    }
+
+    /**
+     * Takes the specified amount out of both the reserves and the account
+     * balance as a single step under the account's lock. The amount is taken
+     * from the reserves first, and given back if the balance, checked and
+     * reduced by one atomic update, cannot cover it. Balances are read without
+     * the lock, so a rejected withdrawal is never visible in the balance.
+     *
+     * @param account the account to debit
+     * @param amount  the amount to take, in cents
+     * @return the result of the debit
+     */
+    private OperationResult reserveAndDebit(Account account, long amount) {
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            if (account.balance() < amount)
+                return OperationResult.INSUFFICIENT_FUNDS;
+            if (!reserves.trySubtract(amount))
+                return OperationResult.INSUFFICIENT_RESERVES;
+            if (!account.tryDebit(amount)) {
+                reserves.add(amount);
+                return OperationResult.INSUFFICIENT_FUNDS;
+            }
+            try {
+                log.append(Mutation.WITHDRAWAL, account.getAccountHolder(), null, amount);
+            } catch (RuntimeException e) {
+                account.adjustBalance(amount);
+                reserves.add(amount);
+                throw e;
+            }
+        }
+        return OperationResult.OK;
     }
 
     /**
@@ -308,12 +789,69 @@ public class Bank {
             throws InsufficientReservesException,
             AccountNotFoundException,
             InvalidLoanAmountException {
-        checkLoanAmount(loanAmount);
-        checkAmountInReserves(loanAmount);
-        getAccount(accountHolder)
-                .addToLoanBalance(loanAmount);
-        subtractFromReserves(loanAmount);
+        approveLoanCents(accountHolder, Money.toCents(loanAmount));
+    }
 
+    /**
+     * Approves a loan in cents for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param loanAmount    the loan amount, in cents
+     * @throws InsufficientReservesException if reserves are insufficient
+     * @throws AccountNotFoundException      if the account does not exist
+     * @throws InvalidLoanAmountException    if the loan amount is invalid
+     */
+    public void approveLoanCents(String accountHolder, long loanAmount)
+            throws InsufficientReservesException,
+            AccountNotFoundException,
+            InvalidLoanAmountException {
+        OperationResult result = tryApproveLoan(accountHolder, loanAmount);
+        throwIfInvalidLoan(result, loanAmount);
+        throwIfNotFound(result, accountHolder);
+        throwIfInsufficientReserves(result, loanAmount);
+    }
+
+    /**
+     * Approves a loan in cents for an account, reporting a rejection as a result
+     * instead of an exception.
+     *
+     * @param accountHolder the account holder's name
+     * @param loanAmount    the loan amount, in cents
+     * @return the result of the loan approval
+     */
+    public OperationResult tryApproveLoan(String accountHolder, long loanAmount) {
+        OperationResult result = validateLoanAmount(loanAmount);
+        if (result != OperationResult.OK)
+            return result;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        return reserveAndLend(account, loanAmount);
+    }
+
+    /**
+     * Takes the specified amount out of the reserves and adds it to the
+     * account's loan balance as a single step under the account's lock.
+     *
+     * @param account    the account to lend to
+     * @param loanAmount the amount to lend, in cents
+     * @return the result of the loan
+     */
+    private OperationResult reserveAndLend(Account account, long loanAmount) {
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            if (!reserves.trySubtract(loanAmount))
+                return OperationResult.INSUFFICIENT_RESERVES;
+            try {
+                log.append(Mutation.LOAN, account.getAccountHolder(), null, loanAmount);
+            } catch (RuntimeException e) {
+                reserves.add(loanAmount);
+                throw e;
+            }
+            account.addToLoanBalanceCents(loanAmount);
+        }
+        return OperationResult.OK;
     }
 
     /**
@@ -328,6 +866,18 @@ public class Bank {
         return getAccount(accountHolder).getLoanBalance();
     }
 
+    /**
+     * Retrieves the loan balance of an account in cents.
+     *
+     * @param accountHolder the account holder's name
+     * @return the loan balance, in cents
+     * @throws AccountNotFoundException if the account does not exist
+     */
+    public long getLoanBalanceCents(String accountHolder)
+            throws AccountNotFoundException {
+        return getAccount(accountHolder).getLoanBalanceCents();
+    }
+
     /**
      * Repays a loan for an account.
      *
@@ -341,10 +891,760 @@ public class Bank {
             throws AccountNotFoundException,
             InvalidLoanAmountException,
             InvalidDepositAmountException {
-        checkDepositAmount(amount);
-        getAccount(accountHolder)
-                .subtractFromLoanBalance(amount);
-        addToReserves(amount);
+        repayLoanCents(accountHolder, Money.toCents(amount));
+    }
+
+    /**
+     * Repays a loan in cents for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the repayment amount, in cents
+     * @throws AccountNotFoundException      if the account does not exist
+     * @throws InvalidLoanAmountException    if the repayment amount is invalid
+     * @throws InvalidDepositAmountException if the repayment amount is invalid
+     */
+    public void repayLoanCents(String accountHolder, long amount)
+            throws AccountNotFoundException,
+            InvalidLoanAmountException,
+            InvalidDepositAmountException {
+        OperationResult result = tryRepayLoan(accountHolder, amount);
+        throwIfInvalidDeposit(result, amount);
+        throwIfNotFound(result, accountHolder);
+        if (result == OperationResult.EXCEEDS_LOAN_BALANCE)
+            throw new InvalidLoanAmountException(Money.toAmount(amount), "Repayment amount exceeds loan balance");
+    }
+
+    /**
+     * Repays a loan in cents for an account, reporting a rejection as a result
+     * instead of an exception.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the repayment amount, in cents
+     * @return the result of the repayment
+     */
+    public OperationResult tryRepayLoan(String accountHolder, long amount) {
+        OperationResult result = validateDepositAmount(amount);
+        if (result != OperationResult.OK)
+            return result;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            if (!account.tryReduceLoan(amount))
+                return OperationResult.EXCEEDS_LOAN_BALANCE;
+            try {
+                log.append(Mutation.REPAYMENT, accountHolder, null, amount);
+            } catch (RuntimeException e) {
+                account.adjustLoan(amount);
+                throw e;
+            }
+            reserves.add(amount);
+        }
+        return OperationResult.OK;
+    }
+
+    /**
+     * Applies a batch of operations, reporting the result of each one.
+     * <p>
+     * All amounts are validated in a first pass over the batch. The valid
+     * operations are then applied in batch order, with each run of consecutive
+     * operations on the same account applied under a single acquisition of the
+     * account's lock, so callers that group their batches by account pay for
+     * one lookup and one lock per account. Deposits and repayments in the batch
+     * fund the withdrawals and loans that follow them on the same account, so
+     * the reserves are only touched when the money taken out exceeds the money
+     * paid in, and once per run to add the net amount paid in. That amount is
+     * added before the run's lock is released, even if appending to the
+     * mutation log fails, so the reserves never fall behind the balances.
+     * </p>
+     *
+     * @param operations the operations to apply
+     * @return the result of each operation, at the same index as the operation
+     */
+    public OperationResult[] applyBatch(List<Operation> operations) {
+        int size = operations.size();
+        OperationResult[] results = new OperationResult[size];
+        for (int i = 0; i < size; i++)
+            results[i] = validateAmount(operations.get(i));
+
+        MutationLog log = this.log;
+        int i = 0;
+        while (i < size) {
+            if (results[i] != OperationResult.OK) {
+                i++;
+                continue;
+            }
+            String accountHolder = operations.get(i).getAccountHolder();
+            Account account = accounts.get(accountHolder);
+            int end = i + 1;
+            while (end < size && accountHolder.equals(operations.get(end).getAccountHolder()))
+                end++;
+            if (account == null) {
+                for (; i < end; i++)
+                    if (results[i] == OperationResult.OK)
+                        results[i] = OperationResult.ACCOUNT_NOT_FOUND;
+                continue;
+            }
+            synchronized (account.monitor()) {
+                long credit = 0;
+                try {
+                    for (; i < end; i++) {
+                        if (results[i] != OperationResult.OK)
+                            continue;
+                        if (account.isClosed()) {
+                            results[i] = OperationResult.ACCOUNT_NOT_FOUND;
+                            continue;
+                        }
+                        Operation operation = operations.get(i);
+                        long amount = operation.getAmount();
+                        switch (operation.getType()) {
+                            case DEPOSIT -> {
+                                log.append(Mutation.DEPOSIT, accountHolder, null, amount);
+                                account.depositCents(amount);
+                                credit += amount;
+                            }
+                            case REPAYMENT -> {
+                                if (!account.tryReduceLoan(amount)) {
+                                    results[i] = OperationResult.EXCEEDS_LOAN_BALANCE;
+                                    continue;
+                                }
+                                try {
+                                    log.append(Mutation.REPAYMENT, accountHolder, null, amount);
+                                } catch (RuntimeException e) {
+                                    account.adjustLoan(amount);
+                                    throw e;
+                                }
+                                credit += amount;
+                            }
+                            case WITHDRAWAL, LOAN -> {
+                                boolean withdrawal = operation.getType() == Operation.Type.WITHDRAWAL;
+                                if (withdrawal && account.balance() < amount) {
+                                    results[i] = OperationResult.INSUFFICIENT_FUNDS;
+                                    continue;
+                                }
+                                long shortfall = amount - credit;
+                                if (shortfall > 0 && !reserves.trySubtract(shortfall)) {
+                                    results[i] = OperationResult.INSUFFICIENT_RESERVES;
+                                    continue;
+                                }
+                                if (withdrawal && !account.tryDebit(amount)) {
+                                    if (shortfall > 0)
+                                        reserves.add(shortfall);
+                                    results[i] = OperationResult.INSUFFICIENT_FUNDS;
+                                    continue;
+                                }
+                                try {
+                                    log.append(withdrawal ? Mutation.WITHDRAWAL : Mutation.LOAN, accountHolder, null,
+                                            amount);
+                                } catch (RuntimeException e) {
+                                    if (withdrawal)
+                                        account.adjustBalance(amount);
+                                    if (shortfall > 0)
+                                        reserves.add(shortfall);
+                                    throw e;
+                                }
+                                credit = Math.max(credit - amount, 0);
+                                if (!withdrawal)
+                                    account.addToLoanBalanceCents(amount);
+                            }
+                        }
+                    }
+                } finally {
+                    if (credit > 0)
+                        reserves.add(credit);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Starts a transaction, which applies the operations added to it to this
+     * bank together, or not at all, when it is committed.
+     *
+     * @return a new, empty transaction
+     */
+    public Transaction transaction() {
+        return new Transaction(this);
+    }
+
+    /**
+     * Applies a committed transaction's operations as one unit.
+     * <p>
+     * The accounts the operations touch are looked up once and locked in lock
+     * order. The operations are then run, in order, against working copies of
+     * the accounts' balances, and the lowest point the reserves would reach is
+     * tracked. Only once every operation has passed, and that low point has
+     * been taken from the reserves, is the transaction appended to the
+     * mutation log as one unit and are the accounts' net changes written. A
+     * rejected transaction changes nothing. Each account is found with a
+     * linear scan of those already seen, which suits transactions over a
+     * handful of accounts.
+     * </p>
+     *
+     * @param operations the operations to apply
+     * @return {@link OperationResult#OK} if the operations were applied,
+     *         otherwise the reason the first rejected operation was rejected
+     */
+    OperationResult commit(List<Operation> operations) {
+        int size = operations.size();
+        for (int i = 0; i < size; i++) {
+            OperationResult result = validateAmount(operations.get(i));
+            if (result != OperationResult.OK)
+                return result;
+        }
+
+        String[] holders = new String[size];
+        Account[] touched = new Account[size];
+        int[] slots = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            String accountHolder = operations.get(i).getAccountHolder();
+            int slot = 0;
+            while (slot < count && !holders[slot].equals(accountHolder))
+                slot++;
+            if (slot == count) {
+                Account account = accounts.get(accountHolder);
+                if (account == null)
+                    return OperationResult.ACCOUNT_NOT_FOUND;
+                holders[count] = accountHolder;
+                touched[count++] = account;
+            }
+            slots[i] = slot;
+        }
+
+        Account[] lockOrder = Arrays.copyOf(touched, count);
+        Arrays.sort(lockOrder, Account::compareLockOrder);
+        return commitLocked(operations, touched, slots, lockOrder, 0);
+    }
+
+    /**
+     * Takes the lock of each account from {@code index} on, in lock order,
+     * and then applies the transaction.
+     */
+    private OperationResult commitLocked(List<Operation> operations, Account[] touched, int[] slots,
+                                         Account[] lockOrder, int index) {
+        if (index == lockOrder.length)
+            return applyCommit(operations, touched, slots, lockOrder.length);
+        synchronized (lockOrder[index].monitor()) {
+            return commitLocked(operations, touched, slots, lockOrder, index + 1);
+        }
+    }
+
+    /**
+     * Validates and applies a transaction once all its accounts are locked.
+     */
+    private OperationResult applyCommit(List<Operation> operations, Account[] touched, int[] slots, int count) {
+        long[] balances = new long[count];
+        long[] loans = new long[count];
+        for (int slot = 0; slot < count; slot++) {
+            if (touched[slot].isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            balances[slot] = touched[slot].balance();
+            loans[slot] = touched[slot].loan();
+        }
+
+        long reserveChange = 0;
+        long lowest = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            int slot = slots[i];
+            long amount = operation.getAmount();
+            switch (operation.getType()) {
+                case DEPOSIT -> {
+                    balances[slot] += amount;
+                    reserveChange += amount;
+                }
+                case WITHDRAWAL -> {
+                    if (balances[slot] < amount)
+                        return OperationResult.INSUFFICIENT_FUNDS;
+                    balances[slot] -= amount;
+                    reserveChange -= amount;
+                }
+                case LOAN -> {
+                    loans[slot] += amount;
+                    reserveChange -= amount;
+                }
+                case REPAYMENT -> {
+                    if (loans[slot] < amount)
+                        return OperationResult.EXCEEDS_LOAN_BALANCE;
+                    loans[slot] -= amount;
+                    reserveChange += amount;
+                }
+            }
+            lowest = Math.min(lowest, reserveChange);
+        }
+        if (lowest < 0 && !reserves.trySubtract(-lowest))
+            return OperationResult.INSUFFICIENT_RESERVES;
+        // The transaction is logged as one record before any account changes,
+        // so a log that rejects it leaves nothing to undo but the low point.
+        try {
+            log.appendTransaction(operations);
+        } catch (RuntimeException e) {
+            if (lowest < 0)
+                reserves.add(-lowest);
+            throw e;
+        }
+        if (reserveChange > lowest)
+            reserves.add(reserveChange - lowest);
+
+        for (int slot = 0; slot < count; slot++) {
+            Account account = touched[slot];
+            long balanceChange = balances[slot] - account.balance();
+            if (balanceChange != 0)
+                account.adjustBalance(balanceChange);
+            long loanChange = loans[slot] - account.loan();
+            if (loanChange != 0)
+                account.adjustLoan(loanChange);
+        }
+        return OperationResult.OK;
+    }
+
+    /**
+     * Validates the amount of a batched operation against the bank limit for
+     * its kind of operation.
+     *
+     * @param operation the operation to validate
+     * @return {@link OperationResult#OK} if the amount is valid, otherwise the
+     *         reason it is not
+     */
+    private OperationResult validateAmount(Operation operation) {
+        return switch (operation.getType()) {
+            case DEPOSIT, REPAYMENT -> validateDepositAmount(operation.getAmount());
+            case WITHDRAWAL -> validateWithdrawalAmount(operation.getAmount());
+            case LOAN -> validateLoanAmount(operation.getAmount());
+        };
+    }
+
+    /**
+     * Transfers an amount from one account to another.
+     *
+     * @param fromAccountHolder the name of the account holder to debit
+     * @param toAccountHolder   the name of the account holder to credit
+     * @param amount            the transfer amount
+     * @throws InsufficientFundsException       if the debited account has
+     *                                          insufficient funds
+     * @throws AccountNotFoundException         if either account does not exist
+     * @throws InvalidWithdrawalAmountException if the amount is invalid
+     */
+    public void transfer(String fromAccountHolder, String toAccountHolder, double amount)
+            throws InsufficientFundsException,
+            AccountNotFoundException,
+            InvalidWithdrawalAmountException {
+        transferCents(fromAccountHolder, toAccountHolder, Money.toCents(amount));
+    }
+
+    /**
+     * Transfers an amount in cents from one account to another.
+     *
+     * @param fromAccountHolder the name of the account holder to debit
+     * @param toAccountHolder   the name of the account holder to credit
+     * @param amount            the transfer amount, in cents
+     * @throws InsufficientFundsException       if the debited account has
+     *                                          insufficient funds
+     * @throws AccountNotFoundException         if either account does not exist
+     * @throws InvalidWithdrawalAmountException if the amount is invalid
+     */
+    public void transferCents(String fromAccountHolder, String toAccountHolder, long amount)
+            throws InsufficientFundsException,
+            AccountNotFoundException,
+            InvalidWithdrawalAmountException {
+        OperationResult result = tryTransfer(fromAccountHolder, toAccountHolder, amount);
+        throwIfInvalidWithdrawal(result, amount);
+        if (result == OperationResult.ACCOUNT_NOT_FOUND)
+            throw new AccountNotFoundException(accounts.get(fromAccountHolder) != null
+                    ? toAccountHolder
+                    : fromAccountHolder);
+        if (result == OperationResult.INSUFFICIENT_FUNDS)
+            throw new InsufficientFundsException(Money.toAmount(amount), getAccountBalance(fromAccountHolder));
+    }
+
+    /**
+     * Transfers an amount in cents from one account to another, reporting a
+     * rejection as a result instead of an exception.
+     * <p>
+     * The transfer amount is subject to the bank's withdrawal limit. Both
+     * accounts are locked, in account holder order, while the debited account's
+     * balance is checked and both balances are updated, so no other operation
+     * can observe one side of the transfer without the other. The money stays
+     * within the bank, so the reserves are not touched.
+     * </p>
+     *
+     * @param fromAccountHolder the name of the account holder to debit
+     * @param toAccountHolder   the name of the account holder to credit
+     * @param amount            the transfer amount, in cents
+     * @return the result of the transfer
+     */
+    public OperationResult tryTransfer(String fromAccountHolder, String toAccountHolder, long amount) {
+        OperationResult result = validateWithdrawalAmount(amount);
+        if (result != OperationResult.OK)
+            return result;
+        Account from = accounts.get(fromAccountHolder);
+        Account to = accounts.get(toAccountHolder);
+        if (from == null || to == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+
+        boolean fromFirst = from.compareLockOrder(to) <= 0;
+        Account first = fromFirst ? from : to;
+        Account second = fromFirst ? to : from;
+        synchronized (first.monitor()) {
+            synchronized (second.monitor()) {
+                if (from.isClosed() || to.isClosed())
+                    return OperationResult.ACCOUNT_NOT_FOUND;
+                if (!from.tryDebit(amount))
+                    return OperationResult.INSUFFICIENT_FUNDS;
+                try {
+                    log.append(Mutation.TRANSFER, fromAccountHolder, toAccountHolder, amount);
+                } catch (RuntimeException e) {
+                    from.adjustBalance(amount);
+                    throw e;
+                }
+                to.depositCents(amount);
+            }
+        }
+        return OperationResult.OK;
+    }
+
+    /**
+     * Moves an amount in cents out of an account, together with the same
+     * amount of the reserves, to be paid into an account held by another bank
+     * with {@link #tryTransferIn(String, long)}.
+     * <p>
+     * The amount is subject to the bank's withdrawal limit and must be covered
+     * by the account's balance. The reserves are not checked: the money takes
+     * its own share of the reserves with it, which the other bank adds to its
+     * reserves, so the total held by the two banks does not change. This bank's
+     * reserves may go below zero if its loans have used that share, in which
+     * case it declines withdrawals and loans until its reserves are built back
+     * up.
+     * The change is journaled as a withdrawal.
+     * </p>
+     *
+     * @param accountHolder the name of the account holder to debit
+     * @param amount        the amount to move, in cents
+     * @return the result of the debit
+     */
+    public OperationResult tryTransferOut(String accountHolder, long amount) {
+        OperationResult result = validateWithdrawalAmount(amount);
+        if (result != OperationResult.OK)
+            return result;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            if (!account.tryDebit(amount))
+                return OperationResult.INSUFFICIENT_FUNDS;
+            try {
+                log.append(Mutation.WITHDRAWAL, accountHolder, null, amount);
+            } catch (RuntimeException e) {
+                account.adjustBalance(amount);
+                throw e;
+            }
+            reserves.add(-amount);
+        }
+        return OperationResult.OK;
+    }
+
+    /**
+     * Pays an amount in cents moved out of an account held by another bank
+     * with {@link #tryTransferOut(String, long)} into an account, together with
+     * the same amount of the reserves.
+     * <p>
+     * The amount is not subject to the bank's deposit limit, so that money can
+     * always be returned to the account it came from; a transfer should check
+     * the limit of the bank it pays into beforehand. The change is journaled
+     * as a deposit.
+     * </p>
+     *
+     * @param accountHolder the name of the account holder to credit
+     * @param amount        the amount to pay in, in cents
+     * @return the result of the credit
+     */
+    public OperationResult tryTransferIn(String accountHolder, long amount) {
+        if (amount <= 0)
+            return OperationResult.INVALID_AMOUNT;
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        synchronized (account.monitor()) {
+            if (account.isClosed())
+                return OperationResult.ACCOUNT_NOT_FOUND;
+            log.append(Mutation.DEPOSIT, accountHolder, null, amount);
+            account.depositCents(amount);
+            reserves.add(amount);
+        }
+        return OperationResult.OK;
+    }
+
+    /**
+     * Replays a journal into this bank, rebuilding the state it records.
+     * <p>
+     * Replay is meant for rebuilding a bank at startup, before it is shared
+     * with other threads. Each record is applied directly, without checking it
+     * against the bank's limits, balances or reserves and without creating
+     * exceptions, since it was validated when it was first applied. A change to
+     * an account that does not exist is applied to the reserves alone. Replayed
+     * changes are not appended to the bank's {@link MutationLog}.
+     * </p>
+     * <p>
+     * Records up to and including {@code afterSequence} are skipped, so a
+     * journal can be replayed on top of a state that already contains them.
+     * Replay stops at the end of the journal or at the first record that is
+     * torn or corrupt. A transaction is a single record, so a torn transaction
+     * is dropped whole.
+     * </p>
+     *
+     * @param journal       the journal file
+     * @param afterSequence the sequence number of the last record already
+     *                      applied, or zero to replay the whole journal
+     * @return the sequence number of the last record applied, or
+     *         {@code afterSequence} if none was
+     * @throws IOException if the journal cannot be read
+     */
+    public long replayJournal(Path journal, long afterSequence)
+            throws IOException {
+        long lastSequence = afterSequence;
+        long reserveChange = 0;
+        try (JournalReader reader = new JournalReader(journal)) {
+            while (reader.next()) {
+                if (reader.getSequence() <= afterSequence)
+                    continue;
+                lastSequence = reader.getSequence();
+                if (reader.getMutation() == Mutation.TRANSACTION) {
+                    for (Operation operation : reader.getOperations())
+                        reserveChange += replay(Mutation.of(operation.getType()), operation.getAccountHolder(), null,
+                                operation.getAmount());
+                } else {
+                    reserveChange += replay(reader.getMutation(), reader.getAccountHolder(), reader.getCounterparty(),
+                            reader.getAmount());
+                }
+            }
+        }
+        reserves.add(reserveChange);
+        return lastSequence;
+    }
+
+    /**
+     * Applies a single journaled change to the accounts it names.
+     *
+     * @param mutation      the kind of change
+     * @param accountHolder the account holder the change applies to, if any
+     * @param counterparty  the account holder credited by a transfer
+     * @param amount        the amount of the change, in cents
+     * @return the change to the reserves, in cents
+     */
+    private long replay(Mutation mutation, String accountHolder, String counterparty, long amount) {
+        if (mutation == Mutation.ACCOUNT_ADDED) {
+            putAccount(accounts, accountHolder, amount, 0);
+            return amount;
+        }
+        if (mutation == Mutation.ACCOUNT_REMOVED) {
+            removeAccountIfPresent(accounts, accountHolder);
+            removedSinceCheckpoint.add(accountHolder);
+            return -amount;
+        }
+        Account account = accountHolder == null ? null : accounts.get(accountHolder);
+        if (account != null) {
+            synchronized (account.monitor()) {
+                switch (mutation) {
+                    case DEPOSIT -> account.depositCents(amount);
+                    case WITHDRAWAL, TRANSFER -> account.adjustBalance(-amount);
+                    case LOAN -> account.adjustLoan(amount);
+                    case REPAYMENT -> account.adjustLoan(-amount);
+                    default -> {
+                    }
+                }
+            }
+        }
+        return switch (mutation) {
+            case DEPOSIT, REPAYMENT, RESERVES_ADDED -> amount;
+            case WITHDRAWAL, LOAN, RESERVES_SUBTRACTED -> -amount;
+            case TRANSFER -> {
+                Account to = accounts.get(counterparty);
+                if (to != null)
+                    to.depositCents(amount);
+                yield 0;
+            }
+            default -> 0;
+        };
+    }
+
+    /**
+     * Adds an account to a store, replacing any account the account holder
+     * already has. Used while rebuilding a bank, before it is shared with other
+     * threads.
+     *
+     * @param accounts      the store to add to
+     * @param accountHolder the account holder's name
+     * @param balance       the balance, in cents
+     * @param loanBalance   the loan balance, in cents
+     * @return the new account
+     */
+    static Account putAccount(AccountStore accounts, String accountHolder, long balance, long loanBalance) {
+        removeAccountIfPresent(accounts, accountHolder);
+        Account account = accounts.create(accountHolder, balance, loanBalance);
+        synchronized (account.monitor()) {
+            accounts.add(account);
+        }
+        return account;
+    }
+
+    /**
+     * Closes and removes an account holder's account from a store, if there is
+     * one.
+     *
+     * @param accounts      the store to remove from
+     * @param accountHolder the account holder's name
+     */
+    static void removeAccountIfPresent(AccountStore accounts, String accountHolder) {
+        Account account = accounts.get(accountHolder);
+        if (account == null)
+            return;
+        synchronized (account.monitor()) {
+            account.close();
+            accounts.remove(account);
+        }
+    }
+
+    /**
+     * Writes a point-in-time snapshot of the bank's limits, reserves and
+     * accounts.
+     * <p>
+     * The accounts are streamed straight from the bank's own table into the
+     * file, without copying it. Each account is read under its lock, but the
+     * snapshot as a whole is only consistent if no operation changes the bank
+     * while it is written, so callers must stop all writers first. The journal
+     * sequence number is stored with the snapshot, so that
+     * {@link #replayJournal(Path, long)} can later skip the records it already
+     * contains. Every account is marked unchanged, so the next checkpoint
+     * written by {@link #writeCheckpoint(Path, long)} holds only the changes
+     * made after this snapshot.
+     * </p>
+     *
+     * @param path            the snapshot file, replaced if it exists
+     * @param journalSequence the sequence number of the last journal record
+     *                        applied to the bank, or zero if it is not journaled
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path path, long journalSequence)
+            throws IOException {
+        writeSnapshot(path, journalSequence, false);
+    }
+
+    /**
+     * Writes an incremental checkpoint holding the bank's limits and reserves,
+     * the accounts changed since the last snapshot or checkpoint, and the
+     * account holders whose accounts were removed since then.
+     * <p>
+     * Each account records whether it has changed since it was last written,
+     * so a checkpoint only writes the accounts that did, and marks them
+     * unchanged again. As with {@link #writeSnapshot(Path, long)}, callers must
+     * stop all writers while the checkpoint is written. Checkpoints are applied
+     * on top of a snapshot, in the order they were written, with
+     * {@link #applyCheckpoint(Path)}.
+     * </p>
+     *
+     * @param path            the checkpoint file, replaced if it exists
+     * @param journalSequence the sequence number of the last journal record
+     *                        applied to the bank, or zero if it is not journaled
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCheckpoint(Path path, long journalSequence)
+            throws IOException {
+        writeSnapshot(path, journalSequence, true);
+    }
+
+    /**
+     * Writes a full snapshot or an incremental checkpoint, marking the accounts
+     * written as unchanged once the file is in place. If the file cannot be
+     * written, every account stays as it was, so the next checkpoint still
+     * holds it.
+     *
+     * @param path            the file to write
+     * @param journalSequence the journal sequence number to store
+     * @param changedOnly     {@code true} to write only changed accounts and
+     *                        tombstones for removed ones
+     * @throws IOException if the file cannot be written
+     */
+    private void writeSnapshot(Path path, long journalSequence, boolean changedOnly)
+            throws IOException {
+        List<Account> written = new ArrayList<>();
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(path)) {
+            if (changedOnly) {
+                for (String accountHolder : removedSinceCheckpoint)
+                    writer.addTombstone(accountHolder);
+            }
+            for (Account account : accounts) {
+                long balance;
+                long loanBalance;
+                synchronized (account.monitor()) {
+                    if (account.isClosed() || (changedOnly && !account.isDirty()))
+                        continue;
+                    balance = account.getAccountBalanceCents();
+                    loanBalance = account.getLoanBalanceCents();
+                }
+                writer.addAccount(account.getAccountHolder(), balance, loanBalance);
+                written.add(account);
+            }
+            writer.finish(new SnapshotFile.Header(journalSequence, maxDeposit, maxWithdrawal, maxLoan,
+                    reserves.sum()));
+        }
+        for (Account account : written)
+            account.markClean();
+        removedSinceCheckpoint.clear();
+    }
+
+    /**
+     * Loads a snapshot written by {@link #writeSnapshot(Path, long)} into this
+     * bank, replacing its limits and reserves and adding the snapshot's
+     * accounts.
+     * <p>
+     * The bank must have no accounts and no reserves, and should not yet be
+     * shared with other threads. The snapshot's segments are loaded in
+     * parallel.
+     * </p>
+     *
+     * @param path the snapshot file
+     * @return the journal sequence number stored with the snapshot
+     * @throws IOException           if the file cannot be read or is not a valid
+     *                               snapshot
+     * @throws IllegalStateException if the bank already has accounts or reserves
+     */
+    public long loadSnapshot(Path path)
+            throws IOException {
+        if (accounts.size() != 0 || reserves.sum() != 0)
+            throw new IllegalStateException("A snapshot can only be loaded into an empty bank");
+        return applyCheckpoint(path);
+    }
+
+    /**
+     * Applies a checkpoint written by {@link #writeCheckpoint(Path, long)} on top
+     * of the state loaded from a snapshot and any earlier checkpoints, replacing
+     * the bank's limits and reserves, removing the accounts it records as
+     * removed and adding or replacing the accounts it holds.
+     * <p>
+     * Like {@link #loadSnapshot(Path)}, this is meant for rebuilding a bank
+     * before it is shared with other threads.
+     * </p>
+     *
+     * @param path the checkpoint file
+     * @return the journal sequence number stored with the checkpoint
+     * @throws IOException if the file cannot be read or is not a valid
+     *                     checkpoint
+     */
+    public long applyCheckpoint(Path path)
+            throws IOException {
+        SnapshotFile.Header header = SnapshotFile.read(path, accounts);
+        maxDeposit = header.maxDeposit();
+        maxWithdrawal = header.maxWithdrawal();
+        maxLoan = header.maxLoan();
+        reserves.add(header.reserves() - reserves.sum());
+        removedSinceCheckpoint.clear();
+        return header.journalSequence();
     }
 
 }
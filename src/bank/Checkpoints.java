@@ -0,0 +1,229 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a directory of a bank's base snapshot and the incremental checkpoints
+ * written after it, and folds the checkpoints into the base in the background.
+ * <p>
+ * Files are numbered in the order they are written. The base snapshot is named
+ * after the last checkpoint folded into it, so {@link #load(Bank)} loads the
+ * highest-numbered base and applies every checkpoint numbered after it. Every
+ * file is written under a temporary name and then renamed into place, and
+ * files made redundant by a newer base are only deleted after it is there, so
+ * a crash at any point leaves a directory that loads to the last completed
+ * state.
+ * </p>
+ * <p>
+ * As with {@link Bank#writeSnapshot(Path, long)}, callers must stop all
+ * writers while a base or checkpoint is written. Compaction only reads files,
+ * so it runs alongside the bank and later checkpoints; only writing a new base
+ * waits for it.
+ * </p>
+ */
+public final class Checkpoints implements Closeable {
+
+    private static final String BASE_PREFIX = "base-";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object baseLock = new Object();
+    private long nextNumber;
+
+    /**
+     * Opens a checkpoint directory, creating it if it does not exist.
+     *
+     * @param directory the directory holding the base snapshot and checkpoints
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public Checkpoints(Path directory)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        long last = 0;
+        for (Path file : list(BASE_PREFIX))
+            last = Math.max(last, number(file));
+        for (Path file : list(CHECKPOINT_PREFIX))
+            last = Math.max(last, number(file));
+        nextNumber = last + 1;
+    }
+
+    /**
+     * Writes a full snapshot of a bank as the new base, replacing the previous
+     * base and all checkpoints.
+     *
+     * @param bank            the bank to write
+     * @param journalSequence the sequence number of the last journal record
+     *                        applied to the bank
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeBase(Bank bank, long journalSequence)
+            throws IOException {
+        synchronized (baseLock) {
+            long number = reserveNumber();
+            bank.writeSnapshot(file(BASE_PREFIX, number), journalSequence);
+            deleteBefore(number);
+        }
+    }
+
+    /**
+     * Writes an incremental checkpoint of the accounts changed since the last
+     * base or checkpoint. If there is no base yet, a full base is written
+     * instead.
+     *
+     * @param bank            the bank to write
+     * @param journalSequence the sequence number of the last journal record
+     *                        applied to the bank
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void writeCheckpoint(Bank bank, long journalSequence)
+            throws IOException {
+        if (list(BASE_PREFIX).isEmpty()) {
+            writeBase(bank, journalSequence);
+            return;
+        }
+        bank.writeCheckpoint(file(CHECKPOINT_PREFIX, reserveNumber()), journalSequence);
+    }
+
+    /**
+     * Loads the latest base and every checkpoint written after it into an empty
+     * bank.
+     *
+     * @param bank the bank to load into
+     * @return the journal sequence number of the last file loaded, from which
+     *         the journal should be replayed, or zero if there is no base
+     * @throws IOException if a file cannot be read
+     */
+    public long load(Bank bank)
+            throws IOException {
+        Path base = latestBase();
+        if (base == null)
+            return 0;
+        long journalSequence = bank.loadSnapshot(base);
+        for (Path checkpoint : checkpointsAfter(number(base)))
+            journalSequence = bank.applyCheckpoint(checkpoint);
+        return journalSequence;
+    }
+
+    /**
+     * Folds the checkpoints written so far into a new base on a background
+     * thread.
+     *
+     * @return a future that completes once the compaction has finished
+     */
+    public Future<?> compactInBackground() {
+        return compactor.submit(() -> {
+            compact();
+            return null;
+        });
+    }
+
+    /**
+     * Folds the checkpoints written so far into a new base, then deletes them
+     * and the old base.
+     *
+     * @throws IOException if a file cannot be read or written
+     */
+    public void compact()
+            throws IOException {
+        synchronized (baseLock) {
+            Path base = latestBase();
+            if (base == null)
+                return;
+            List<Path> checkpoints = checkpointsAfter(number(base));
+            if (checkpoints.isEmpty())
+                return;
+
+            long number = number(checkpoints.getLast());
+            SnapshotFile.compact(base, checkpoints, file(BASE_PREFIX, number));
+            deleteBefore(number + 1);
+        }
+    }
+
+    private synchronized long reserveNumber() {
+        return nextNumber++;
+    }
+
+    private Path latestBase()
+            throws IOException {
+        List<Path> bases = list(BASE_PREFIX);
+        return bases.isEmpty() ? null : bases.getLast();
+    }
+
+    private List<Path> checkpointsAfter(long number)
+            throws IOException {
+        List<Path> checkpoints = new ArrayList<>();
+        for (Path checkpoint : list(CHECKPOINT_PREFIX))
+            if (number(checkpoint) > number)
+                checkpoints.add(checkpoint);
+        return checkpoints;
+    }
+
+    /**
+     * Deletes the checkpoints and every base but the latest numbered below the
+     * specified number.
+     */
+    private void deleteBefore(long number)
+            throws IOException {
+        Path latest = latestBase();
+        for (Path checkpoint : list(CHECKPOINT_PREFIX))
+            if (number(checkpoint) < number)
+                Files.deleteIfExists(checkpoint);
+        for (Path base : list(BASE_PREFIX))
+            if (number(base) < number && !base.equals(latest))
+                Files.deleteIfExists(base);
+    }
+
+    /**
+     * Lists the complete files with the specified prefix, in the order they
+     * were written.
+     */
+    private List<Path> list(String prefix)
+            throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private Path file(String prefix, long number) {
+        return directory.resolve(String.format("%s%019d%s", prefix, number, SUFFIX));
+    }
+
+    private static long number(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Waits for any running compaction to finish and stops the background
+     * thread.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
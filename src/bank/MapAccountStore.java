@@ -0,0 +1,73 @@
+package bank;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An {@link AccountStore} backed by a concurrent map from account holder to
+ * account.
+ */
+final class MapAccountStore implements AccountStore {
+
+    private final ConcurrentMap<String, Account> accounts;
+
+    /**
+     * Constructs a store backed by the specified map.
+     *
+     * @param accounts the empty map to hold the accounts in
+     */
+    MapAccountStore(ConcurrentMap<String, Account> accounts) {
+        this.accounts = accounts;
+    }
+
+    @Override
+    public Account get(String accountHolder) {
+        return accounts.get(accountHolder);
+    }
+
+    @Override
+    public Account create(String accountHolder, long balance, long loanBalance) {
+        return new Account(accountHolder, balance, loanBalance);
+    }
+
+    @Override
+    public boolean add(Account account) {
+        return accounts.putIfAbsent(account.getAccountHolder(), account) == null;
+    }
+
+    @Override
+    public void remove(Account account) {
+        accounts.remove(account.getAccountHolder(), account);
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public Iterator<Account> iterator() {
+        return accounts.values().iterator();
+    }
+
+    @Override
+    public AccountCursor cursor() {
+        Iterator<Account> iterator = accounts.values().iterator();
+        return new AccountCursor() {
+            @Override
+            public boolean next() {
+                while (iterator.hasNext()) {
+                    Account account = iterator.next();
+                    synchronized (account.monitor()) {
+                        if (!account.isClosed()) {
+                            set(account.getAccountHolder(), account.balance(), account.loan());
+                            return true;
+                        }
+                    }
+                }
+                return end();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,44 @@
+package bank;
+
+/**
+ * Converts between amounts of money expressed in major units, such as euro or
+ * dollars, and the whole number of minor units (cents) in which {@link Bank}
+ * and {@link Account} keep their balances.
+ * <p>
+ * Balances are stored as {@code long} cents so that repeated deposits and
+ * withdrawals are exact and allocation-free. Amounts given in major units are
+ * rounded to the nearest cent when they enter the bank.
+ * </p>
+ */
+public final class Money {
+
+    /**
+     * The number of minor units (cents) in one major unit.
+     */
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount in major units to the nearest whole number of cents.
+     * {@code NaN} converts to zero.
+     *
+     * @param amount the amount in major units
+     * @return the amount in cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Converts an amount in cents to major units.
+     *
+     * @param cents the amount in cents
+     * @return the amount in major units
+     */
+    public static double toAmount(long cents) {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+}
@@ -0,0 +1,104 @@
+package bank;
+
+/**
+ * A single deposit, withdrawal, loan approval or loan repayment, as submitted
+ * to {@link Bank#applyBatch(java.util.List)}.
+ * <p>
+ * Operations are immutable, so a batch may be built once and applied many
+ * times. Amounts are in cents.
+ * </p>
+ */
+public final class Operation {
+
+    /**
+     * The kinds of operation that can be batched.
+     */
+    public enum Type {
+        DEPOSIT,
+        WITHDRAWAL,
+        LOAN,
+        REPAYMENT
+    }
+
+    private final Type type;
+    private final String accountHolder;
+    private final long amount;
+
+    private Operation(Type type, String accountHolder, long amount) {
+        this.type = type;
+        this.accountHolder = accountHolder;
+        this.amount = amount;
+    }
+
+    /**
+     * Creates a deposit into an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the deposit amount, in cents
+     * @return the deposit operation
+     */
+    public static Operation deposit(String accountHolder, long amount) {
+        return new Operation(Type.DEPOSIT, accountHolder, amount);
+    }
+
+    /**
+     * Creates a withdrawal from an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the withdrawal amount, in cents
+     * @return the withdrawal operation
+     */
+    public static Operation withdrawal(String accountHolder, long amount) {
+        return new Operation(Type.WITHDRAWAL, accountHolder, amount);
+    }
+
+    /**
+     * Creates a loan approval for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the loan amount, in cents
+     * @return the loan operation
+     */
+    public static Operation loan(String accountHolder, long amount) {
+        return new Operation(Type.LOAN, accountHolder, amount);
+    }
+
+    /**
+     * Creates a loan repayment for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the repayment amount, in cents
+     * @return the repayment operation
+     */
+    public static Operation repayment(String accountHolder, long amount) {
+        return new Operation(Type.REPAYMENT, accountHolder, amount);
+    }
+
+    /**
+     * Retrieves the kind of operation.
+     *
+     * @return the kind of operation
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the account holder's name.
+     *
+     * @return the name of the account holder
+     */
+    public String getAccountHolder() {
+        return accountHolder;
+    }
+
+    /**
+     * Retrieves the amount of the operation in cents.
+     *
+     * @return the amount, in cents
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+}
@@ -0,0 +1,49 @@
+package bank;
+
+/**
+ * The outcome of an operation invoked through one of the non-throwing
+ * {@code try} methods of {@link Bank}, such as
+ * {@link Bank#tryDeposit(String, long)}.
+ * <p>
+ * Every value other than {@link #OK} corresponds to an exception thrown by the
+ * equivalent throwing method.
+ * </p>
+ */
+public enum OperationResult {
+
+    /**
+     * The operation was applied.
+     */
+    OK,
+
+    /**
+     * The amount was not greater than zero.
+     */
+    INVALID_AMOUNT,
+
+    /**
+     * The amount exceeded the bank's limit for the operation.
+     */
+    LIMIT_EXCEEDED,
+
+    /**
+     * No account exists for the account holder.
+     */
+    ACCOUNT_NOT_FOUND,
+
+    /**
+     * The account balance was less than the amount.
+     */
+    INSUFFICIENT_FUNDS,
+
+    /**
+     * The bank's reserves were less than the amount.
+     */
+    INSUFFICIENT_RESERVES,
+
+    /**
+     * The repayment amount exceeded the account's loan balance.
+     */
+    EXCEEDS_LOAN_BALANCE
+
+}
@@ -0,0 +1,341 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+
+import bank.exceptions.InsufficientReservesException;
+
+/**
+ * Holds a bank's reserves as a set of independently locked cells, so that
+ * threads updating the reserves at the same time rarely touch the same cell.
+ * <p>
+ * Each thread adds to and subtracts from its own home cell. The value of a
+ * cell is a quota that the threads using it may spend without coordinating
+ * with anyone else. Only when the home cell cannot cover a subtraction are all
+ * cells locked, in index order, and the amount taken from their combined
+ * total. A checked subtraction therefore never takes the reserves below zero.
+ * </p>
+ * <p>
+ * Adding a negative amount is not checked, and may take the total below zero.
+ * Every cell is kept at zero or above, so that a cell's own value never
+ * covers a subtraction the total cannot: an addition its home cell cannot
+ * cover is drained from the combined cells instead. Any deficit left over is
+ * carried by the first cell, and until the cells have been brought back above
+ * zero, every checked subtraction is made against the combined total.
+ * </p>
+ * <p>
+ * Reading the total takes no locks. Each cell carries a version that its
+ * writer makes odd before changing the cell's value and even again after, as
+ * in a seqlock. A reader collects the versions, then the values, then the
+ * versions again, and accepts the total only if every version was even and
+ * none changed, retrying otherwise. Readers therefore never hold up writers.
+ * A reader that keeps colliding with writers falls back to locking every
+ * cell after a few attempts, so it cannot be starved.
+ * </p>
+ * <p>
+ * All amounts are in cents.
+ * </p>
+ */
+final class ReserveCounter {
+
+    /**
+     * A single cell of the counter, guarded by its own lock. Its version is
+     * odd while its value is being changed. Both are written only under the
+     * lock, and published with ordered writes rather than volatile ones, so
+     * that a change costs the writer no more than it did before readers
+     * stopped locking.
+     */
+    @SuppressWarnings("unused")
+    private static final class Cell extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private static final VarHandle VERSION;
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                VERSION = lookup.findVarHandle(Cell.class, "version", long.class);
+                VALUE = lookup.findVarHandle(Cell.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // padding to keep neighbouring cells off the same cache line
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private long version;
+        private long value;
+        private long q1, q2, q3, q4, q5, q6, q7;
+
+        /**
+         * Marks the cell as being changed. The caller must hold the lock.
+         */
+        void beginChange() {
+            VERSION.setOpaque(this, version + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        /**
+         * Marks the cell's change as complete. The caller must hold the lock.
+         */
+        void endChange() {
+            VERSION.setRelease(this, version + 1);
+        }
+
+        /**
+         * Changes the value, between {@link #beginChange()} and
+         * {@link #endChange()}.
+         *
+         * @param delta the amount to add, which may be negative
+         */
+        void adjust(long delta) {
+            VALUE.setOpaque(this, value + delta);
+        }
+
+        /**
+         * Reads the version without the lock, ordered before any later reads.
+         *
+         * @return the version
+         */
+        long readVersion() {
+            return (long) VERSION.getAcquire(this);
+        }
+
+        /**
+         * Reads the value without the lock.
+         *
+         * @return the value
+         */
+        long readValue() {
+            return (long) VALUE.getOpaque(this);
+        }
+    }
+
+    private static final int OPTIMISTIC_TRIES = 4;
+
+    private final Cell[] cells;
+
+    /**
+     * Whether the first cell is carrying a deficit. Written only while every
+     * cell is locked, and read while holding any one cell's lock.
+     */
+    private boolean overdrawn;
+
+    /**
+     * Constructs an empty counter with one cell per available processor,
+     * rounded up to a power of two.
+     */
+    ReserveCounter() {
+        int size = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        cells = new Cell[size];
+        for (int i = 0; i < size; i++)
+            cells[i] = new Cell();
+    }
+
+    /**
+     * Retrieves the calling thread's home cell.
+     *
+     * @return the home cell
+     */
+    private Cell homeCell() {
+        long id = Thread.currentThread().threadId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return cells[(hash ^ (hash >>> 16)) & (cells.length - 1)];
+    }
+
+    /**
+     * Adds the specified amount to the calling thread's home cell. A negative
+     * amount that the home cell cannot cover is taken from the combined cells
+     * without checking their total.
+     *
+     * @param amount the amount to add, which may be negative
+     */
+    void add(long amount) {
+        Cell cell = homeCell();
+        cell.lock();
+        try {
+            if (amount >= 0 || cell.value >= -amount) {
+                cell.beginChange();
+                cell.adjust(amount);
+                cell.endChange();
+                return;
+            }
+        } finally {
+            cell.unlock();
+        }
+        lockAll();
+        try {
+            takeFromAllCells(-amount);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Subtracts the specified amount, as {@link #trySubtract(long)} does.
+     *
+     * @param amount the amount to subtract
+     * @throws InsufficientReservesException if the total of all cells is less than
+     *                                       the amount
+     */
+    void subtract(long amount)
+            throws InsufficientReservesException {
+        if (!trySubtract(amount))
+            throw new InsufficientReservesException(Money.toAmount(amount), Money.toAmount(sum()));
+    }
+
+    /**
+     * Subtracts the specified amount if the reserves can cover it, taking it
+     * from the calling thread's home cell if possible, and from the combined
+     * cells otherwise.
+     *
+     * @param amount the amount to subtract
+     * @return {@code true} if the amount was subtracted, {@code false} if the
+     *         total of all cells is less than the amount
+     */
+    boolean trySubtract(long amount) {
+        Cell home = homeCell();
+        home.lock();
+        try {
+            if (!overdrawn && home.value >= amount) {
+                home.beginChange();
+                home.adjust(-amount);
+                home.endChange();
+                return true;
+            }
+        } finally {
+            home.unlock();
+        }
+        return trySubtractFromAllCells(amount);
+    }
+
+    /**
+     * Subtracts the specified amount from the combined cells if their total
+     * can cover it.
+     *
+     * @param amount the amount to subtract
+     * @return {@code true} if the amount was subtracted, {@code false} if the
+     *         total of all cells is less than the amount
+     */
+    private boolean trySubtractFromAllCells(long amount) {
+        lockAll();
+        try {
+            if (total() < amount)
+                return false;
+            takeFromAllCells(amount);
+            return true;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Takes the specified amount from the combined cells, draining them in
+     * index order, and leaves any amount they cannot cover as a deficit in the
+     * first cell. A deficit already there is then paid off from the other
+     * cells as far as they allow. The caller must hold every cell's lock.
+     *
+     * @param amount the amount to take
+     */
+    private void takeFromAllCells(long amount) {
+        for (Cell cell : cells)
+            cell.beginChange();
+        long remaining = amount;
+        for (int i = 0; i < cells.length && remaining > 0; i++) {
+            long taken = Math.min(cells[i].value, remaining);
+            if (taken > 0) {
+                cells[i].adjust(-taken);
+                remaining -= taken;
+            }
+        }
+        Cell first = cells[0];
+        first.adjust(-remaining);
+        for (int i = 1; i < cells.length && first.value < 0; i++) {
+            long moved = Math.min(cells[i].value, -first.value);
+            if (moved > 0) {
+                cells[i].adjust(-moved);
+                first.adjust(moved);
+            }
+        }
+        overdrawn = first.value < 0;
+        for (Cell cell : cells)
+            cell.endChange();
+    }
+
+    /**
+     * Checks whether the combined cells can cover the specified amount.
+     *
+     * @param amount the amount to check
+     * @throws InsufficientReservesException if the total of all cells is less than
+     *                                       the amount
+     */
+    void check(long amount)
+            throws InsufficientReservesException {
+        long total = sum();
+        if (total < amount)
+            throw new InsufficientReservesException(Money.toAmount(amount), Money.toAmount(total));
+    }
+
+    /**
+     * Retrieves the exact total of all cells, optimistically without locking
+     * and, if writers keep getting in the way, with every cell locked.
+     *
+     * @return the total reserves
+     */
+    long sum() {
+        for (int attempt = 0; attempt < OPTIMISTIC_TRIES; attempt++) {
+            long before = stamp();
+            if (before < 0)
+                continue;
+            long total = 0;
+            for (Cell cell : cells)
+                total += cell.readValue();
+            VarHandle.loadLoadFence();
+            if (stamp() == before)
+                return total;
+        }
+        lockAll();
+        try {
+            return total();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Adds up the versions of all cells. Versions only grow, so the same stamp
+     * read twice means that no cell changed in between.
+     *
+     * @return the sum of the versions, or -1 if any cell is being changed
+     */
+    private long stamp() {
+        long stamp = 0;
+        for (Cell cell : cells) {
+            long version = cell.readVersion();
+            if ((version & 1) != 0)
+                return -1;
+            stamp += version;
+        }
+        return stamp;
+    }
+
+    private long total() {
+        long total = 0;
+        for (Cell cell : cells)
+            total += cell.value;
+        return total;
+    }
+
+    private void lockAll() {
+        for (Cell cell : cells)
+            cell.lock();
+    }
+
+    private void unlockAll() {
+        for (int i = cells.length - 1; i >= 0; i--)
+            cells[i].unlock();
+    }
+
+}
@@ -0,0 +1,164 @@
+package bank;
+
+import bank.store.SlotAccountStore;
+
+/**
+ * A view of an account held in a slot of a {@link SlotAccountStore}. The view
+ * keeps no balances of its own; it writes the slot under the slot's lock, so
+ * unlike other accounts its changes are not lock-free. Reads of a single
+ * balance take no lock: they are checked against the slot's version, as in a
+ * seqlock, and retried if a change was under way, falling back to the slot's
+ * lock after a few attempts.
+ * <p>
+ * A view remembers the generation of its slot when it is created, and is
+ * closed once the slot's account is removed, or while the slot holds an
+ * account that has not been published. A view of a removed account stays
+ * closed even if the same account holder is later given a new account in the
+ * same slot; a fresh view must be looked up for it.
+ * </p>
+ */
+final class SlotAccount extends Account {
+
+    private static final int OPTIMISTIC_TRIES = 4;
+
+    private final SlotAccountStore slots;
+    private final int slot;
+    private final int generation;
+
+    /**
+     * Constructs a view of a slot.
+     *
+     * @param slots         the store holding the account
+     * @param slot          the account's slot
+     * @param accountHolder the account holder in the slot
+     */
+    SlotAccount(SlotAccountStore slots, int slot, String accountHolder) {
+        super(accountHolder, 0, 0);
+        this.slots = slots;
+        this.slot = slot;
+        synchronized (slots.lock(slot)) {
+            this.generation = slots.generation(slot);
+        }
+    }
+
+    /**
+     * Retrieves the account's slot.
+     *
+     * @return the slot
+     */
+    int slot() {
+        return slot;
+    }
+
+    @Override
+    Object monitor() {
+        return slots.lock(slot);
+    }
+
+    @Override
+    int compareLockOrder(Account other) {
+        return Integer.compare(slots.lockIndex(slot), slots.lockIndex(((SlotAccount) other).slot));
+    }
+
+    @Override
+    long balance() {
+        for (int attempt = 0; attempt < OPTIMISTIC_TRIES; attempt++) {
+            int version = slots.readVersion(slot);
+            long balance = slots.getBalance(slot);
+            if (slots.validate(slot, version))
+                return balance;
+        }
+        synchronized (monitor()) {
+            return slots.getBalance(slot);
+        }
+    }
+
+    @Override
+    void adjustBalance(long amount) {
+        synchronized (monitor()) {
+            slots.beginChange(slot);
+            slots.setBalance(slot, slots.getBalance(slot) + amount);
+            slots.endChange(slot);
+            slots.markDirty(slot);
+        }
+    }
+
+    @Override
+    boolean tryDebit(long amount) {
+        synchronized (monitor()) {
+            long balance = slots.getBalance(slot);
+            if (balance < amount)
+                return false;
+            slots.beginChange(slot);
+            slots.setBalance(slot, balance - amount);
+            slots.endChange(slot);
+            slots.markDirty(slot);
+            return true;
+        }
+    }
+
+    @Override
+    long loan() {
+        for (int attempt = 0; attempt < OPTIMISTIC_TRIES; attempt++) {
+            int version = slots.readVersion(slot);
+            long loan = slots.getLoanBalance(slot);
+            if (slots.validate(slot, version))
+                return loan;
+        }
+        synchronized (monitor()) {
+            return slots.getLoanBalance(slot);
+        }
+    }
+
+    @Override
+    void adjustLoan(long amount) {
+        synchronized (monitor()) {
+            slots.beginChange(slot);
+            slots.setLoanBalance(slot, slots.getLoanBalance(slot) + amount);
+            slots.endChange(slot);
+            slots.markDirty(slot);
+        }
+    }
+
+    @Override
+    boolean tryReduceLoan(long amount) {
+        synchronized (monitor()) {
+            long loan = slots.getLoanBalance(slot);
+            if (loan < amount)
+                return false;
+            slots.beginChange(slot);
+            slots.setLoanBalance(slot, loan - amount);
+            slots.endChange(slot);
+            slots.markDirty(slot);
+            return true;
+        }
+    }
+
+    @Override
+    boolean isClosed() {
+        synchronized (monitor()) {
+            return slots.generation(slot) != generation
+                    || !slots.holds(slot, getAccountHolder())
+                    || !slots.isPublished(slot);
+        }
+    }
+
+    @Override
+    void close() {
+    }
+
+    @Override
+    boolean isDirty() {
+        synchronized (monitor()) {
+            return slots.isDirty(slot);
+        }
+    }
+
+    @Override
+    void markClean() {
+        synchronized (monitor()) {
+            slots.markClean(slot);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package bank;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import bank.store.SlotAccountStore;
+
+/**
+ * An {@link AccountStore} that holds its accounts in a
+ * {@link SlotAccountStore} and hands out {@link SlotAccount} views of them.
+ */
+final class SlotBackedAccountStore implements AccountStore {
+
+    private final SlotAccountStore slots;
+
+    /**
+     * Constructs a store over a slot store.
+     *
+     * @param slots the slot store to hold the accounts in
+     */
+    SlotBackedAccountStore(SlotAccountStore slots) {
+        this.slots = slots;
+    }
+
+    @Override
+    public Account get(String accountHolder) {
+        int slot = slots.find(accountHolder);
+        return slot == SlotAccountStore.NO_SLOT ? null : new SlotAccount(slots, slot, accountHolder);
+    }
+
+    @Override
+    public Account create(String accountHolder, long balance, long loanBalance) {
+        return new SlotAccount(slots, slots.allocate(accountHolder, balance, loanBalance), accountHolder);
+    }
+
+    @Override
+    public boolean add(Account account) {
+        return slots.publish(((SlotAccount) account).slot());
+    }
+
+    @Override
+    public void remove(Account account) {
+        SlotAccount view = (SlotAccount) account;
+        if (!view.isClosed())
+            slots.remove(view.slot());
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Accounts are visited in slot order, and each is read as the iterator
+     * reaches it. Slots written for accounts that are still being added are
+     * skipped.
+     * </p>
+     */
+    @Override
+    public Iterator<Account> iterator() {
+        return new Iterator<>() {
+            private int slot;
+            private Account next = advance();
+
+            private Account advance() {
+                for (int limit = slots.slotLimit(); slot < limit; slot++) {
+                    String accountHolder = slots.getAccountHolder(slot);
+                    if (accountHolder != null && slots.isPublished(slot))
+                        return new SlotAccount(slots, slot++, accountHolder);
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Account next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Account account = next;
+                next = advance();
+                return account;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Accounts are visited in slot order. Stores that keep account holders as
+     * strings create no objects during the traversal; stores that keep them
+     * as encoded bytes decode each account holder's name.
+     * </p>
+     */
+    @Override
+    public AccountCursor cursor() {
+        return new AccountCursor() {
+            private int slot;
+
+            @Override
+            public boolean next() {
+                for (int limit = slots.slotLimit(); slot < limit; slot++) {
+                    synchronized (slots.lock(slot)) {
+                        if (slots.isPublished(slot)) {
+                            set(slots.getAccountHolder(slot), slots.getBalance(slot), slots.getLoanBalance(slot));
+                            slot++;
+                            return true;
+                        }
+                    }
+                }
+                return end();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,473 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes the binary snapshot format used by
+ * {@link Bank#writeSnapshot(Path, long)} and
+ * {@link Bank#writeCheckpoint(Path, long)}.
+ * <p>
+ * A snapshot starts with a fixed-size header holding the bank's limits and
+ * reserves, the journal sequence number the snapshot was taken at, and the
+ * positions of a segment table and a tombstone section at the end of the file.
+ * The header ends with a CRC32C checksum of the rest of it.
+ * The accounts follow in segments of up to {@link #SEGMENT_ACCOUNTS} records,
+ * each record holding the length-prefixed UTF-8 account holder, the balance
+ * and the loan balance. The segment table gives the position, length, account
+ * count and CRC32C checksum of every segment, so segments can be checked and
+ * loaded in parallel. The tombstone section lists the account holders whose
+ * accounts were removed, and is only used by incremental checkpoints, which
+ * hold just the accounts that changed since the previous one.
+ * </p>
+ * <p>
+ * All amounts are in cents.
+ * </p>
+ */
+final class SnapshotFile {
+
+    /**
+     * The header of a snapshot.
+     *
+     * @param journalSequence the sequence number of the last journal record the
+     *                        snapshot contains
+     * @param maxDeposit      the maximum deposit limit
+     * @param maxWithdrawal   the maximum withdrawal limit
+     * @param maxLoan         the maximum loan limit
+     * @param reserves        the reserves
+     */
+    record Header(long journalSequence, long maxDeposit, long maxWithdrawal, long maxLoan, long reserves) {
+    }
+
+    /**
+     * Receives the account records of a snapshot as they are read.
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(String accountHolder, long balance, long loanBalance) throws IOException;
+    }
+
+    static final int SEGMENT_ACCOUNTS = 1 << 16;
+
+    private static final int MAGIC = 0x424B534E;
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 4 + 4 + 8 * 8 + 4 + 4 + 4 + 4;
+    private static final int SEGMENT_ENTRY_BYTES = 8 + 8 + 4 + 4;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_HOLDER_BYTES = 0xFFFF;
+    private static final String TEMPORARY_SUFFIX = ".writing";
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot, streaming the accounts through a buffer as they are
+     * added.
+     * <p>
+     * The snapshot is written to a temporary file beside the target, which is
+     * only moved over the target, atomically, once {@link #finish(Header)} has
+     * forced it to disk. Until then any existing file at the target is left
+     * untouched, so a crash or failure part way through never loses the
+     * previous snapshot. The directory is forced to disk after the move, so
+     * the new name survives a crash too. Closing an unfinished writer deletes
+     * the temporary file.
+     * </p>
+     */
+    static final class Writer implements Closeable {
+
+        private final Path path;
+        private final Path temporary;
+        private final FileChannel channel;
+        private boolean finished;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer table = ByteBuffer.allocate(SEGMENT_ENTRY_BYTES * 64);
+        private ByteBuffer tombstones = ByteBuffer.allocate(1_024);
+        private int tombstoneCount;
+        private long position = HEADER_BYTES;
+        private long segmentStart = HEADER_BYTES;
+        private int segmentAccounts;
+        private long accountCount;
+
+        /**
+         * Starts a snapshot file that replaces any existing file when it is
+         * finished and closed.
+         *
+         * @param path the snapshot file
+         * @throws IOException if the temporary file cannot be created
+         */
+        Writer(Path path)
+                throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+            channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_BYTES);
+        }
+
+        /**
+         * Adds an account record.
+         *
+         * @param accountHolder the account holder
+         * @param balance       the account balance, in cents
+         * @param loanBalance   the loan balance, in cents
+         * @throws IOException if the record cannot be written
+         */
+        void addAccount(String accountHolder, long balance, long loanBalance)
+                throws IOException {
+            byte[] holder = encode(accountHolder);
+            if (buffer.remaining() < 2 + holder.length + 8 + 8)
+                flush();
+            buffer.putShort((short) holder.length);
+            buffer.put(holder);
+            buffer.putLong(balance);
+            buffer.putLong(loanBalance);
+            accountCount++;
+            if (++segmentAccounts == SEGMENT_ACCOUNTS)
+                endSegment();
+        }
+
+        /**
+         * Adds a tombstone for a removed account.
+         *
+         * @param accountHolder the account holder
+         */
+        void addTombstone(String accountHolder) {
+            byte[] holder = encode(accountHolder);
+            if (tombstones.remaining() < 2 + holder.length)
+                tombstones = grow(tombstones, 2 + holder.length);
+            tombstones.putShort((short) holder.length);
+            tombstones.put(holder);
+            tombstoneCount++;
+        }
+
+        /**
+         * Writes the segment table, tombstones and header, and forces the file
+         * to disk.
+         *
+         * @param header the snapshot header
+         * @throws IOException if the file cannot be written
+         */
+        void finish(Header header)
+                throws IOException {
+            if (segmentAccounts > 0)
+                endSegment();
+
+            table.flip();
+            long tableOffset = position;
+            int segmentCount = table.remaining() / SEGMENT_ENTRY_BYTES;
+            position += writeFully(channel, table, position);
+
+            tombstones.flip();
+            long tombstoneOffset = position;
+            crc.reset();
+            crc.update(tombstones.duplicate());
+            writeFully(channel, tombstones, position);
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+            head.putInt(MAGIC);
+            head.putInt(VERSION);
+            head.putLong(header.journalSequence());
+            head.putLong(header.maxDeposit());
+            head.putLong(header.maxWithdrawal());
+            head.putLong(header.maxLoan());
+            head.putLong(header.reserves());
+            head.putLong(accountCount);
+            head.putLong(tableOffset);
+            head.putLong(tombstoneOffset);
+            head.putInt(segmentCount);
+            head.putInt(tombstoneCount);
+            head.putInt((int) crc.getValue());
+            crc.reset();
+            crc.update(head.array(), 0, head.position());
+            head.putInt((int) crc.getValue());
+            head.flip();
+            writeFully(channel, head, 0);
+            channel.force(true);
+            finished = true;
+        }
+
+        private void flush()
+                throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            position += buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void endSegment()
+                throws IOException {
+            flush();
+            if (table.remaining() < SEGMENT_ENTRY_BYTES)
+                table = grow(table, SEGMENT_ENTRY_BYTES);
+            table.putLong(segmentStart);
+            table.putLong(position - segmentStart);
+            table.putInt(segmentAccounts);
+            table.putInt((int) crc.getValue());
+            crc.reset();
+            segmentStart = position;
+            segmentAccounts = 0;
+        }
+
+        /**
+         * Closes the file and, if the snapshot was finished, moves it over the
+         * target and forces the directory to disk; otherwise deletes it.
+         *
+         * @throws IOException if the file cannot be closed or moved
+         */
+        @Override
+        public void close()
+                throws IOException {
+            try {
+                channel.close();
+            } finally {
+                if (finished) {
+                    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    try (FileChannel directory = FileChannel.open(temporary.toAbsolutePath().getParent(),
+                            StandardOpenOption.READ)) {
+                        directory.force(true);
+                    }
+                } else {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds a series of checkpoints into a base snapshot, writing the result as
+     * a new base snapshot.
+     * <p>
+     * The checkpoints are read into memory, later ones overriding earlier ones,
+     * and the base is then streamed through once, so memory use grows with the
+     * size of the checkpoints rather than of the base.
+     * </p>
+     *
+     * @param base        the base snapshot
+     * @param checkpoints the checkpoints to fold in, oldest first
+     * @param output      the new base snapshot
+     * @throws IOException if a file cannot be read or written
+     */
+    static void compact(Path base, List<Path> checkpoints, Path output)
+            throws IOException {
+        Map<String, long[]> changed = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>();
+        Header header = readHeader(base);
+        for (Path checkpoint : checkpoints) {
+            header = visit(checkpoint, holder -> {
+                changed.remove(holder);
+                removed.add(holder);
+            }, (holder, balance, loanBalance) -> {
+                removed.remove(holder);
+                changed.put(holder, new long[] { balance, loanBalance });
+            });
+        }
+
+        try (Writer writer = new Writer(output)) {
+            visit(base, holder -> {
+            }, (holder, balance, loanBalance) -> {
+                long[] balances = changed.remove(holder);
+                if (balances != null)
+                    writer.addAccount(holder, balances[0], balances[1]);
+                else if (!removed.contains(holder))
+                    writer.addAccount(holder, balance, loanBalance);
+            });
+            for (Map.Entry<String, long[]> entry : changed.entrySet())
+                writer.addAccount(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            writer.finish(header);
+        }
+    }
+
+    /**
+     * Reads a snapshot or checkpoint into an account store, removing its
+     * tombstoned accounts first and then loading its segments in parallel.
+     * Loaded accounts replace any existing account with the same holder and are
+     * marked clean.
+     *
+     * @param path     the snapshot file
+     * @param accounts the store to update
+     * @return the snapshot header
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    static Header read(Path path, AccountStore accounts)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Layout layout = readLayout(channel, path);
+            readTombstones(channel, layout, holder -> Bank.removeAccountIfPresent(accounts, holder));
+
+            ByteBuffer table = readTable(channel, layout);
+            try {
+                IntStream.range(0, layout.segmentCount()).parallel().forEach(segment -> {
+                    try {
+                        readSegment(channel, table, segment, (holder, balance, loanBalance) -> Bank
+                                .putAccount(accounts, holder, balance, loanBalance).markClean());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return layout.header();
+        }
+    }
+
+    /**
+     * Reads only the header of a snapshot.
+     *
+     * @param path the snapshot file
+     * @return the snapshot header
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    static Header readHeader(Path path)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readLayout(channel, path).header();
+        }
+    }
+
+    /**
+     * Reads a snapshot sequentially, passing its tombstones and then its account
+     * records to the visitors.
+     *
+     * @return the snapshot header
+     */
+    private static Header visit(Path path, TombstoneVisitor tombstoneVisitor, RecordVisitor recordVisitor)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Layout layout = readLayout(channel, path);
+            readTombstones(channel, layout, tombstoneVisitor);
+            ByteBuffer table = readTable(channel, layout);
+            for (int segment = 0; segment < layout.segmentCount(); segment++)
+                readSegment(channel, table, segment, recordVisitor);
+            return layout.header();
+        }
+    }
+
+    @FunctionalInterface
+    private interface TombstoneVisitor {
+        void visit(String accountHolder);
+    }
+
+    /**
+     * The contents of a snapshot's header.
+     */
+    private record Layout(Header header, long tableOffset, long tombstoneOffset, int segmentCount,
+            int tombstoneCount, int tombstoneChecksum) {
+    }
+
+    private static Layout readLayout(FileChannel channel, Path path)
+            throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, head, 0);
+        head.flip();
+        if (head.getInt() != MAGIC)
+            throw new IOException("Not a bank snapshot: " + path);
+        int version = head.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        CRC32C crc = new CRC32C();
+        crc.update(head.array(), 0, HEADER_BYTES - 4);
+        if ((int) crc.getValue() != head.getInt(HEADER_BYTES - 4))
+            throw new IOException("Snapshot header is corrupt: " + path);
+        Header header = new Header(head.getLong(), head.getLong(), head.getLong(), head.getLong(), head.getLong());
+        head.getLong();
+        return new Layout(header, head.getLong(), head.getLong(), head.getInt(), head.getInt(), head.getInt());
+    }
+
+    private static ByteBuffer readTable(FileChannel channel, Layout layout)
+            throws IOException {
+        ByteBuffer table = ByteBuffer.allocate(layout.segmentCount() * SEGMENT_ENTRY_BYTES);
+        readFully(channel, table, layout.tableOffset());
+        return table.flip();
+    }
+
+    private static void readTombstones(FileChannel channel, Layout layout, TombstoneVisitor visitor)
+            throws IOException {
+        if (layout.tombstoneCount() == 0)
+            return;
+        ByteBuffer tombstones = ByteBuffer.allocate((int) (channel.size() - layout.tombstoneOffset()));
+        readFully(channel, tombstones, layout.tombstoneOffset());
+        tombstones.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(tombstones.duplicate());
+        if ((int) crc.getValue() != layout.tombstoneChecksum())
+            throw new IOException("Snapshot tombstones are corrupt");
+        for (int i = 0; i < layout.tombstoneCount(); i++) {
+            byte[] holder = new byte[Short.toUnsignedInt(tombstones.getShort())];
+            tombstones.get(holder);
+            visitor.visit(new String(holder, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void readSegment(FileChannel channel, ByteBuffer table, int segment, RecordVisitor visitor)
+            throws IOException {
+        int entry = segment * SEGMENT_ENTRY_BYTES;
+        long start = table.getLong(entry);
+        MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, start, table.getLong(entry + 8));
+        CRC32C crc = new CRC32C();
+        crc.update(records.duplicate());
+        if ((int) crc.getValue() != table.getInt(entry + 20))
+            throw new IOException("Snapshot segment at " + start + " is corrupt");
+
+        int accountCount = table.getInt(entry + 16);
+        byte[] holder = new byte[MAX_HOLDER_BYTES];
+        for (int i = 0; i < accountCount; i++) {
+            int holderLength = Short.toUnsignedInt(records.getShort());
+            records.get(holder, 0, holderLength);
+            visitor.visit(new String(holder, 0, holderLength, StandardCharsets.UTF_8), records.getLong(),
+                    records.getLong());
+        }
+    }
+
+    private static byte[] encode(String accountHolder) {
+        byte[] holder = accountHolder.getBytes(StandardCharsets.UTF_8);
+        if (holder.length > MAX_HOLDER_BYTES)
+            throw new IllegalArgumentException("Account holder too long for a snapshot: " + holder.length + " bytes");
+        return holder;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, position + written);
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Snapshot is truncated");
+            position += read;
+        }
+    }
+
+}
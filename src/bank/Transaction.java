@@ -0,0 +1,155 @@
+package bank;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of deposits, withdrawals, loans and repayments, on any number of a
+ * {@link Bank}'s accounts, that is applied as one unit or not at all. A
+ * transaction is started with {@link Bank#transaction()}.
+ * <p>
+ * Operations added to a transaction are only buffered; nothing in the bank
+ * changes until {@link #commit()}. Commit locks every account the transaction
+ * touches, in the same order as every other operation that locks more than
+ * one account, and then checks the whole transaction against the bank's
+ * limits, the accounts' balances and the reserves, running the operations in
+ * the order they were added. Only if every operation passes is the
+ * transaction appended to the bank's {@link bank.journal.MutationLog} as one
+ * unit and are the net changes written to the accounts and the reserves,
+ * before the locks are released. If any operation fails, the buffer is simply
+ * discarded, so there is nothing to undo. Transactions on different accounts
+ * take different locks and do not wait for each other.
+ * </p>
+ * <p>
+ * A transaction is used by one thread at a time and finishes with
+ * {@link #commit()}, {@link #rollback()} or {@link #close()}, after which it
+ * cannot be used again. Closing a transaction that has not been committed
+ * rolls it back, so a transaction can be held in a try-with-resources
+ * statement. All amounts are in cents.
+ * </p>
+ */
+public final class Transaction implements AutoCloseable {
+
+    private final Bank bank;
+    private final List<Operation> operations = new ArrayList<>();
+    private boolean finished;
+
+    /**
+     * Constructs an empty transaction on a bank.
+     *
+     * @param bank the bank to commit to
+     */
+    Transaction(Bank bank) {
+        this.bank = bank;
+    }
+
+    /**
+     * Adds a deposit into an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the deposit amount, in cents
+     * @return this transaction
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public Transaction deposit(String accountHolder, long amount) {
+        return add(Operation.deposit(accountHolder, amount));
+    }
+
+    /**
+     * Adds a withdrawal from an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the withdrawal amount, in cents
+     * @return this transaction
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public Transaction withdraw(String accountHolder, long amount) {
+        return add(Operation.withdrawal(accountHolder, amount));
+    }
+
+    /**
+     * Adds a loan approval for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the loan amount, in cents
+     * @return this transaction
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public Transaction approveLoan(String accountHolder, long amount) {
+        return add(Operation.loan(accountHolder, amount));
+    }
+
+    /**
+     * Adds a loan repayment for an account.
+     *
+     * @param accountHolder the account holder's name
+     * @param amount        the repayment amount, in cents
+     * @return this transaction
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public Transaction repayLoan(String accountHolder, long amount) {
+        return add(Operation.repayment(accountHolder, amount));
+    }
+
+    /**
+     * Adds an operation.
+     *
+     * @param operation the operation to add
+     * @return this transaction
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public Transaction add(Operation operation) {
+        checkNotFinished();
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * Retrieves the number of operations added so far.
+     *
+     * @return the number of operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Applies every operation in the transaction, or none of them.
+     *
+     * @return {@link OperationResult#OK} if the transaction was applied,
+     *         otherwise the reason the first operation that could not be
+     *         applied was rejected
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public OperationResult commit() {
+        checkNotFinished();
+        finished = true;
+        return bank.commit(operations);
+    }
+
+    /**
+     * Discards every operation in the transaction without applying any.
+     *
+     * @throws IllegalStateException if the transaction has finished
+     */
+    public void rollback() {
+        checkNotFinished();
+        finished = true;
+        operations.clear();
+    }
+
+    /**
+     * Rolls the transaction back if it has not yet finished.
+     */
+    @Override
+    public void close() {
+        if (!finished)
+            rollback();
+    }
+
+    private void checkNotFinished() {
+        if (finished)
+            throw new IllegalStateException("Transaction has already finished");
+    }
+
+}
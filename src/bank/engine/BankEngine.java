@@ -0,0 +1,357 @@
+package bank.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+
+/**
+ * Applies deposits, withdrawals, loans and repayments to a {@link Bank} from a
+ * single writer thread, in the order they were submitted.
+ * <p>
+ * Callers submit {@link Operation}s with
+ * {@link #submit(Operation, ResultListener)}, which copies each one into the
+ * next command of a ring buffer allocated when the engine is created, and
+ * returns at once with the command's sequence number. The writer thread takes commands from the ring in sequence order and
+ * applies each one to the bank through its {@code try} methods, such as
+ * {@link Bank#tryDeposit(String, long)}. A second thread then hands each result
+ * to the command's listener and frees the command for reuse, so slow
+ * listeners hold back neither the writer nor, until the ring fills, the
+ * callers. Other changes, such as transfers, can be submitted in the same
+ * order as an {@link Action} run on the writer thread.
+ * </p>
+ * <p>
+ * Because only the writer thread changes the bank, the locks taken by the
+ * bank are never contended, commands are applied in one total order given by
+ * their sequence numbers, and a {@link bank.journal.MutationLog} set on the
+ * bank records them in that order. A journal used this way should be
+ * {@link bank.journal.Journal.Durability#ASYNC}, so that the writer does not
+ * wait for each record to be forced. The bank can still be read, and even
+ * changed, directly by other threads; such changes are simply not ordered
+ * against the engine's.
+ * </p>
+ * <p>
+ * A command that throws, such as an {@link Action} with a bug or an operation
+ * whose journal append fails, is reported to its listener's
+ * {@link ResultListener#onFailure(long, Throwable)} and the writer carries on
+ * with the next command.
+ * </p>
+ * <p>
+ * When the ring is full, {@link #submit(Operation, ResultListener)} waits for a
+ * command to be freed. Idle threads spin briefly, then yield, then sleep for
+ * short periods, so an idle engine costs little CPU and needs no signalling
+ * on the hot path.
+ * </p>
+ */
+public final class BankEngine implements AutoCloseable {
+
+    private static final long CLOSED = Long.MIN_VALUE;
+    private static final int MAX_RUN = 256;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Receives the result of a command submitted to the engine. Listeners are
+     * called on the engine's publishing thread, in sequence order, and should
+     * return quickly; an exception thrown by a listener is passed to the
+     * thread's uncaught exception handler and does not stop the engine.
+     */
+    @FunctionalInterface
+    public interface ResultListener {
+
+        /**
+         * Receives the result of a command.
+         *
+         * @param sequence the command's sequence number
+         * @param result   the result of applying the command
+         */
+        void onResult(long sequence, OperationResult result);
+
+        /**
+         * Receives the exception thrown while applying a command, such as a
+         * journal that could not be written, in place of a result. The command
+         * may have been partly applied. By default the exception is passed to
+         * the publishing thread's uncaught exception handler.
+         *
+         * @param sequence the command's sequence number
+         * @param failure  the exception thrown by the command
+         */
+        default void onFailure(long sequence, Throwable failure) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+        }
+    }
+
+    /**
+     * An action on the bank that is not a single {@link Operation}, such as a
+     * transfer, submitted with {@link BankEngine#submit(Action, ResultListener)}.
+     */
+    @FunctionalInterface
+    public interface Action {
+
+        /**
+         * Applies the action on the writer thread.
+         *
+         * @param bank the engine's bank
+         * @return the result of the action
+         */
+        OperationResult apply(Bank bank);
+    }
+
+    /**
+     * A reusable slot of the ring buffer.
+     */
+    private static final class Command {
+
+        /**
+         * The sequence number of the command last written to this slot, set
+         * once its fields are written, or -1 before the slot is first used.
+         */
+        volatile long sequence = -1;
+
+        Action action;
+        Operation.Type type;
+        String accountHolder;
+        long amount;
+        ResultListener listener;
+        OperationResult result;
+        Throwable failure;
+    }
+
+    private final Bank bank;
+    private final Command[] ring;
+    private final int mask;
+
+    /**
+     * The number of commands claimed by callers, with {@link #CLOSED} set once
+     * the engine stops accepting commands.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long applied;
+    private volatile long released;
+
+    private final Thread writer;
+    private final Thread publisher;
+
+    /**
+     * Constructs an engine for a bank and starts its threads.
+     *
+     * @param bank     the bank to apply commands to
+     * @param capacity the number of commands the ring holds, which must be a
+     *                 power of two
+     * @throws IllegalArgumentException if the capacity is not a positive power
+     *                                  of two
+     */
+    public BankEngine(Bank bank, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        this.bank = bank;
+        this.ring = new Command[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++)
+            ring[i] = new Command();
+
+        writer = new Thread(this::runWriter, "bank-engine-writer");
+        publisher = new Thread(this::runPublisher, "bank-engine-publisher");
+        writer.setDaemon(true);
+        publisher.setDaemon(true);
+        writer.start();
+        publisher.start();
+    }
+
+    /**
+     * Submits an operation to be applied by the writer thread, waiting for
+     * room in the ring if it is full. The operation is copied, so it may be
+     * reused as soon as this returns.
+     *
+     * @param operation the operation to apply
+     * @param listener  the listener to pass the result to, or {@code null} if
+     *                  the caller does not need it
+     * @return the command's sequence number
+     * @throws IllegalStateException if the engine has been closed
+     */
+    public long submit(Operation operation, ResultListener listener) {
+        long sequence = claim();
+        Command command = ring[(int) sequence & mask];
+        command.type = operation.getType();
+        command.accountHolder = operation.getAccountHolder();
+        command.amount = operation.getAmount();
+        command.listener = listener;
+        command.sequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Submits an action to be applied by the writer thread, in sequence with
+     * the operations submitted, waiting for room in the ring if it is full.
+     *
+     * @param action   the action to apply
+     * @param listener the listener to pass the result to, or {@code null} if
+     *                 the caller does not need it
+     * @return the command's sequence number
+     * @throws IllegalStateException if the engine has been closed
+     */
+    public long submit(Action action, ResultListener listener) {
+        long sequence = claim();
+        Command command = ring[(int) sequence & mask];
+        command.action = action;
+        command.listener = listener;
+        command.sequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Claims the next sequence number and waits until its command is free.
+     */
+    private long claim() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0)
+                throw new IllegalStateException("Engine is closed");
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        for (int idle = 0; sequence - released >= ring.length; idle++) {
+            if (!publisher.isAlive())
+                throw new IllegalStateException("Engine has stopped");
+            idle(idle);
+        }
+        return sequence;
+    }
+
+    /**
+     * Retrieves the number of commands the writer thread has applied,
+     * including those that failed.
+     *
+     * @return the number of commands applied
+     */
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * Stops accepting commands, waits for every command already submitted to
+     * be applied and its result published, and stops the engine's threads.
+     */
+    @Override
+    public void close() {
+        claimed.getAndUpdate(sequence -> sequence | CLOSED);
+        try {
+            writer.join();
+            publisher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while closing the engine", e);
+        }
+    }
+
+    /**
+     * Applies commands in sequence order, publishing its progress once per run
+     * of commands that were ready together, up to {@link #MAX_RUN} at a time.
+     */
+    private void runWriter() {
+        long next = 0;
+        for (int idle = 0;; idle++) {
+            long end = next;
+            Command command;
+            while (end - next < MAX_RUN && (command = ring[(int) end & mask]).sequence == end) {
+                try {
+                    command.result = apply(command);
+                } catch (RuntimeException | Error e) {
+                    command.failure = e;
+                }
+                end++;
+            }
+            if (end != next) {
+                applied = end;
+                next = end;
+                idle = 0;
+            } else if (claimed.get() == (next | CLOSED)) {
+                return;
+            } else {
+                idle(idle);
+            }
+        }
+    }
+
+    private OperationResult apply(Command command) {
+        if (command.action != null)
+            return command.action.apply(bank);
+        return switch (command.type) {
+            case DEPOSIT -> bank.tryDeposit(command.accountHolder, command.amount);
+            case WITHDRAWAL -> bank.tryWithdraw(command.accountHolder, command.amount);
+            case LOAN -> bank.tryApproveLoan(command.accountHolder, command.amount);
+            case REPAYMENT -> bank.tryRepayLoan(command.accountHolder, command.amount);
+        };
+    }
+
+    /**
+     * Passes the results of applied commands to their listeners and frees the
+     * commands for reuse.
+     */
+    private void runPublisher() {
+        long next = 0;
+        for (int idle = 0;; idle++) {
+            boolean stopped = !writer.isAlive();
+            long end = applied;
+            if (end != next) {
+                for (; next < end; next++) {
+                    Command command = ring[(int) next & mask];
+                    ResultListener listener = command.listener;
+                    OperationResult result = command.result;
+                    Throwable failure = command.failure;
+                    command.listener = null;
+                    command.action = null;
+                    command.accountHolder = null;
+                    command.result = null;
+                    command.failure = null;
+                    if (listener != null || failure != null)
+                        notify(listener, next, result, failure);
+                }
+                released = end;
+                idle = 0;
+            } else if (stopped) {
+                return;
+            } else {
+                idle(idle);
+            }
+        }
+    }
+
+    private static void notify(ResultListener listener, long sequence, OperationResult result, Throwable failure) {
+        Thread thread = Thread.currentThread();
+        try {
+            if (failure == null)
+                listener.onResult(sequence, result);
+            else if (listener != null)
+                listener.onFailure(sequence, failure);
+            else
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+        } catch (RuntimeException e) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * Waits a little before a thread checks again for work, backing off from
+     * spinning to yielding to sleeping as it stays idle.
+     *
+     * @param idle the number of times the thread has found no work in a row,
+     *             which is negative once it has counted past the largest int
+     */
+    private static void idle(int idle) {
+        if (idle < 0)
+            LockSupport.parkNanos(PARK_NANOS);
+        else if (idle < SPIN_TRIES)
+            Thread.onSpinWait();
+        else if (idle < SPIN_TRIES + YIELD_TRIES)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+
+}
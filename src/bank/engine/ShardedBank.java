@@ -0,0 +1,349 @@
+package bank.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import bank.Bank;
+import bank.Money;
+import bank.Operation;
+import bank.OperationResult;
+import bank.exceptions.AccountNotFoundException;
+import bank.exceptions.BankException;
+import bank.exceptions.DuplicateAccountException;
+import bank.exceptions.InsufficientReservesException;
+import bank.exceptions.InvalidDepositAmountException;
+import bank.exceptions.InvalidLoanAmountException;
+
+/**
+ * A bank split into independent {@link Bank} partitions, or shards, each
+ * owned by the writer thread of its own {@link BankEngine}.
+ * <p>
+ * Every account holder is hashed onto one shard, which holds the account and
+ * applies every operation on it. Operations on different shards therefore
+ * run in parallel with nothing shared between them, and operations on one
+ * shard are applied one at a time by its owning thread. Every change to a
+ * shard, including opening and closing accounts and adding to the reserves,
+ * is submitted to that thread, so the shard's account locks are only ever
+ * taken by one writer; readers on other threads may still take them. Each
+ * shard keeps its own slice of the reserves; {@link #getReservesCents()} adds
+ * the slices up when asked.
+ * </p>
+ * <p>
+ * A transfer between two accounts on the same shard is applied by that
+ * shard's thread as a single {@link Bank#tryTransfer(String, String, long)}.
+ * A transfer between shards is applied in steps, each on the thread owning
+ * the account it changes. The amount is first moved out of the source
+ * account with {@link Bank#tryTransferOut(String, long)}, which checks the
+ * source shard's withdrawal limit and the account's funds and takes the same
+ * amount out of that shard's reserves, and is then paid into the destination
+ * account with {@link Bank#tryTransferIn(String, long)}, which adds it to the
+ * destination shard's reserves. The money therefore moves with its slice of
+ * the reserves, so a transfer is never declined for want of reserves on
+ * either shard, and the total of the reserves never changes. If the
+ * destination account cannot be credited, the amount is paid back into the
+ * source account the same way. In between the steps the amount is in neither
+ * account, and each shard's journal records the steps as a withdrawal and a
+ * deposit.
+ * </p>
+ * <p>
+ * All amounts are in cents.
+ * </p>
+ */
+public final class ShardedBank implements AutoCloseable {
+
+    private final Bank[] shards;
+    private final BankEngine[] engines;
+
+    /**
+     * Constructs a sharded bank with the same limits on every shard and starts
+     * each shard's engine.
+     *
+     * @param shardCount    the number of shards
+     * @param maxDeposit    the maximum allowable deposit amount
+     * @param maxWithdrawal the maximum allowable withdrawal amount
+     * @param maxLoan       the maximum allowable loan amount
+     * @param ringCapacity  the ring capacity of each shard's engine, which must
+     *                      be a power of two
+     * @throws IllegalArgumentException if the shard count is not positive or
+     *                                  the ring capacity is not a power of two
+     */
+    public ShardedBank(int shardCount, double maxDeposit, double maxWithdrawal, double maxLoan, int ringCapacity) {
+        if (shardCount <= 0)
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        shards = new Bank[shardCount];
+        engines = new BankEngine[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Bank(maxDeposit, maxWithdrawal, maxLoan);
+            engines[i] = new BankEngine(shards[i], ringCapacity);
+        }
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Retrieves the shard that holds an account holder's account.
+     *
+     * @param accountHolder the account holder's name
+     * @return the index of the shard
+     */
+    public int shardOf(String accountHolder) {
+        int h = accountHolder.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return Math.floorMod(h, shards.length);
+    }
+
+    /**
+     * Retrieves a shard, for reading its accounts and reserves. Changes should
+     * be made through the sharded bank, so that they are applied by the
+     * shard's owning thread.
+     *
+     * @param shard the index of the shard
+     * @return the shard's bank
+     */
+    public Bank getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * Retrieves the total reserves of every shard.
+     *
+     * @return the total reserves, in cents
+     */
+    public long getReservesCents() {
+        long total = 0;
+        for (Bank shard : shards)
+            total += shard.getReservesCents();
+        return total;
+    }
+
+    /**
+     * Adds to the reserves, spreading the amount evenly over the shards, and
+     * waits for every shard to have added its share.
+     *
+     * @param amount the amount to add, in cents
+     * @throws IllegalStateException if the bank has been closed
+     * @throws CompletionException   if a shard could not add its share, with
+     *                               the exception it threw as its cause
+     */
+    public void addToReservesCents(long amount) {
+        long share = amount / shards.length;
+        List<CompletableFuture<OperationResult>> results = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            long shardAmount = i == 0 ? amount - share * (shards.length - 1) : share;
+            results.add(submit(i, bank -> {
+                bank.addToReservesCents(shardAmount);
+                return OperationResult.OK;
+            }));
+        }
+        for (CompletableFuture<OperationResult> result : results)
+            result.join();
+    }
+
+    /**
+     * Opens an account on its account holder's shard and waits for it to be
+     * opened.
+     *
+     * @param accountHolder  the account holder's name
+     * @param initialDeposit the initial deposit, in cents
+     * @throws InvalidDepositAmountException if the initial deposit is invalid
+     * @throws DuplicateAccountException     if the account holder already has
+     *                                       an account
+     * @throws IllegalStateException         if the bank has been closed
+     * @throws CompletionException           if opening the account threw an
+     *                                       unchecked exception, with that
+     *                                       exception as its cause
+     */
+    public void addAccountCents(String accountHolder, long initialDeposit)
+            throws InvalidDepositAmountException,
+            DuplicateAccountException {
+        BankException failure = call(shardOf(accountHolder),
+                bank -> bank.addAccountCents(accountHolder, initialDeposit));
+        if (failure instanceof InvalidDepositAmountException)
+            throw (InvalidDepositAmountException) failure;
+        if (failure instanceof DuplicateAccountException)
+            throw (DuplicateAccountException) failure;
+        if (failure != null)
+            throw new IllegalStateException(failure);
+    }
+
+    /**
+     * Closes an account on its account holder's shard and waits for it to be
+     * closed.
+     *
+     * @param accountHolder the account holder's name
+     * @throws AccountNotFoundException      if the account does not exist
+     * @throws InvalidLoanAmountException    if the account has a loan balance
+     * @throws InsufficientReservesException if the shard's reserves cannot
+     *                                       pay out the balance
+     * @throws IllegalStateException         if the bank has been closed
+     * @throws CompletionException           if closing the account threw an
+     *                                       unchecked exception, with that
+     *                                       exception as its cause
+     */
+    public void removeAccount(String accountHolder)
+            throws AccountNotFoundException,
+            InvalidLoanAmountException,
+            InsufficientReservesException {
+        BankException failure = call(shardOf(accountHolder), bank -> bank.removeAccount(accountHolder));
+        if (failure instanceof AccountNotFoundException)
+            throw (AccountNotFoundException) failure;
+        if (failure instanceof InvalidLoanAmountException)
+            throw (InvalidLoanAmountException) failure;
+        if (failure instanceof InsufficientReservesException)
+            throw (InsufficientReservesException) failure;
+        if (failure != null)
+            throw new IllegalStateException(failure);
+    }
+
+    /**
+     * Retrieves the balance of an account.
+     *
+     * @param accountHolder the account holder's name
+     * @return the balance, in cents
+     * @throws AccountNotFoundException if the account does not exist
+     */
+    public long getAccountBalanceCents(String accountHolder)
+            throws AccountNotFoundException {
+        return shards[shardOf(accountHolder)].getAccountBalanceCents(accountHolder);
+    }
+
+    /**
+     * Submits an operation to the engine of its account holder's shard without
+     * waiting for it to be applied.
+     *
+     * @param operation the operation to apply
+     * @param listener  the listener to pass the result to, or {@code null} if
+     *                  the caller does not need it
+     * @return the command's sequence number on its shard
+     * @throws IllegalStateException if the bank has been closed
+     */
+    public long submit(Operation operation, BankEngine.ResultListener listener) {
+        return engines[shardOf(operation.getAccountHolder())].submit(operation, listener);
+    }
+
+    /**
+     * Applies an operation on its account holder's shard and waits for the
+     * result.
+     *
+     * @param operation the operation to apply
+     * @return the result of the operation
+     * @throws IllegalStateException if the bank has been closed
+     * @throws CompletionException   if applying the operation threw, with
+     *                               that exception as its cause
+     */
+    public OperationResult apply(Operation operation) {
+        CompletableFuture<OperationResult> result = new CompletableFuture<>();
+        submit(operation, completing(result));
+        return result.join();
+    }
+
+    /**
+     * Transfers an amount between two accounts and waits for the result. See
+     * the class description for how transfers between shards are applied.
+     *
+     * @param fromAccountHolder the account holder to debit
+     * @param toAccountHolder   the account holder to credit
+     * @param amount            the amount to transfer, in cents
+     * @return the result of the transfer
+     * @throws IllegalStateException if the bank has been closed, or if a
+     *                               transfer between shards was declined by
+     *                               the destination and the amount could not
+     *                               be returned to the source account
+     */
+    public OperationResult transfer(String fromAccountHolder, String toAccountHolder, long amount) {
+        int source = shardOf(fromAccountHolder);
+        int target = shardOf(toAccountHolder);
+        if (source == target)
+            return apply(source, bank -> bank.tryTransfer(fromAccountHolder, toAccountHolder, amount));
+
+        if (amount > 0 && amount > Money.toCents(shards[target].getMaxDeposit()))
+            return OperationResult.LIMIT_EXCEEDED;
+        OperationResult result = apply(source, bank -> bank.tryTransferOut(fromAccountHolder, amount));
+        if (result != OperationResult.OK)
+            return result;
+        result = apply(target, bank -> bank.tryTransferIn(toAccountHolder, amount));
+        if (result != OperationResult.OK) {
+            OperationResult refund = apply(source, bank -> bank.tryTransferIn(fromAccountHolder, amount));
+            if (refund != OperationResult.OK)
+                throw new IllegalStateException("Transfer of " + amount + " cents from " + fromAccountHolder
+                        + " was declined (" + result + ") and could not be returned (" + refund + ")");
+        }
+        return result;
+    }
+
+    /**
+     * Stops every shard's engine once the commands already submitted have been
+     * applied.
+     */
+    @Override
+    public void close() {
+        for (BankEngine engine : engines)
+            engine.close();
+    }
+
+    private OperationResult apply(int shard, BankEngine.Action action) {
+        return submit(shard, action).join();
+    }
+
+    private CompletableFuture<OperationResult> submit(int shard, BankEngine.Action action) {
+        CompletableFuture<OperationResult> result = new CompletableFuture<>();
+        engines[shard].submit(action, completing(result));
+        return result;
+    }
+
+    /**
+     * A change to a shard that reports a declined request by throwing, such
+     * as opening or closing an account.
+     */
+    @FunctionalInterface
+    private interface ShardTask {
+        void run(Bank bank) throws BankException;
+    }
+
+    /**
+     * Runs a task on a shard's owning thread and waits for it, returning the
+     * {@link BankException} it threw, if any, for the caller to rethrow.
+     */
+    private BankException call(int shard, ShardTask task) {
+        BankException[] failure = new BankException[1];
+        apply(shard, bank -> {
+            try {
+                task.run(bank);
+            } catch (BankException e) {
+                failure[0] = e;
+            }
+            return OperationResult.OK;
+        });
+        return failure[0];
+    }
+
+    /**
+     * Creates a listener that completes a future with a command's result, or
+     * exceptionally with the exception it threw.
+     */
+    private static BankEngine.ResultListener completing(CompletableFuture<OperationResult> result) {
+        return new BankEngine.ResultListener() {
+            @Override
+            public void onResult(long sequence, OperationResult outcome) {
+                result.complete(outcome);
+            }
+
+            @Override
+            public void onFailure(long sequence, Throwable failure) {
+                result.completeExceptionally(failure);
+            }
+        };
+    }
+
+}
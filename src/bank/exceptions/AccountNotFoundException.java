@@ -1,7 +1,14 @@
 package bank.exceptions;
 
-public class AccountNotFoundException extends Exception {
+public class AccountNotFoundException extends BankException {
+    private final String accountHolder;
+
     public AccountNotFoundException(String accountHolder) {
-        super("No account found for account holder: " + accountHolder);
+        this.accountHolder = accountHolder;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "No account found for account holder: " + accountHolder;
     }
 }
@@ -0,0 +1,32 @@
+package bank.exceptions;
+
+/**
+ * Base class of the exceptions thrown when a bank operation is rejected.
+ * <p>
+ * Rejections are a normal outcome of bank operations rather than a sign of a
+ * programming error, so the cost of creating these exceptions is kept low.
+ * Their messages are only formatted when {@link #getMessage()} is called, and
+ * when the {@code bank.exceptions.stackless} system property is set to
+ * {@code true} they do not capture a stack trace.
+ * </p>
+ */
+public abstract class BankException extends Exception {
+
+    private static final boolean STACKLESS = Boolean.getBoolean("bank.exceptions.stackless");
+
+    protected BankException() {
+        super(null, null, true, !STACKLESS);
+    }
+
+    @Override
+    public String getMessage() {
+        return formatMessage();
+    }
+
+    /**
+     * Formats the detail message of this exception.
+     *
+     * @return the detail message
+     */
+    protected abstract String formatMessage();
+}
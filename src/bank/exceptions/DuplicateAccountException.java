@@ -1,8 +1,15 @@
 package bank.exceptions;
 
-public class DuplicateAccountException extends Exception {
+public class DuplicateAccountException extends BankException {
+    private final String accountHolder;
+
     public DuplicateAccountException(String accountHolder) {
-        super("An account with these details already exits: " + accountHolder);
+        this.accountHolder = accountHolder;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "An account with these details already exits: " + accountHolder;
     }
 
 }
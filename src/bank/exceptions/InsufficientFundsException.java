@@ -1,8 +1,17 @@
 package bank.exceptions;
 
-public class InsufficientFundsException extends Exception {
+public class InsufficientFundsException extends BankException {
+    private final double withdrawalAmount;
+    private final double availableBalance;
+
     public InsufficientFundsException(double withdrawalAmount, double availableBalance) {
-        super("Insufficient funds for withdrawal. Requested: " + withdrawalAmount
-                + ", Available: " + availableBalance);
+        this.withdrawalAmount = withdrawalAmount;
+        this.availableBalance = availableBalance;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "Insufficient funds for withdrawal. Requested: " + withdrawalAmount
+                + ", Available: " + availableBalance;
     }
 }
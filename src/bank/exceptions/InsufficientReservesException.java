@@ -1,7 +1,16 @@
 package bank.exceptions;
 
-public class InsufficientReservesException extends Exception {
+public class InsufficientReservesException extends BankException {
+    private final double requestedAmount;
+    private final double availableReserves;
+
     public InsufficientReservesException(double requestedAmount, double availableReserves) {
-        super("Insufficient reserves. Requested: " + requestedAmount + ", Available: " + availableReserves);
+        this.requestedAmount = requestedAmount;
+        this.availableReserves = availableReserves;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "Insufficient reserves. Requested: " + requestedAmount + ", Available: " + availableReserves;
     }
 }
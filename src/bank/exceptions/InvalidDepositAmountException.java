@@ -1,7 +1,16 @@
 package bank.exceptions;
 
-public class InvalidDepositAmountException extends Exception {
+public class InvalidDepositAmountException extends BankException {
+    private final double amount;
+    private final String reason;
+
     public InvalidDepositAmountException(double amount, String reason) {
-        super("Invalid deposit amount: " + amount + ". Reason: " + reason);
+        this.amount = amount;
+        this.reason = reason;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "Invalid deposit amount: " + amount + ". Reason: " + reason;
     }
 }
@@ -1,7 +1,16 @@
 package bank.exceptions;
 
-public class InvalidLoanAmountException extends Exception {
+public class InvalidLoanAmountException extends BankException {
+    private final double amount;
+    private final String reason;
+
     public InvalidLoanAmountException(double amount, String reason) {
-        super("Invalid loan amount: " + amount + ". Reason: " + reason);
+        this.amount = amount;
+        this.reason = reason;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "Invalid loan amount: " + amount + ". Reason: " + reason;
     }
 }
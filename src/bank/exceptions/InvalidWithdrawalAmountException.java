@@ -1,7 +1,16 @@
 package bank.exceptions;
 
-public class InvalidWithdrawalAmountException extends Exception {
+public class InvalidWithdrawalAmountException extends BankException {
+    private final double amount;
+    private final String reason;
+
     public InvalidWithdrawalAmountException(double amount, String reason) {
-        super("Invalid withdrawal amount: " + amount + ". Reason: " + reason);
+        this.amount = amount;
+        this.reason = reason;
+    }
+
+    @Override
+    protected String formatMessage() {
+        return "Invalid withdrawal amount: " + amount + ". Reason: " + reason;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,426 @@
+package bank.journal;
+
+import bank.Operation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * A binary write-ahead journal of bank mutations, appended to a file through a
+ * {@link FileChannel}.
+ * <p>
+ * Each record is framed by the length of its payload and a CRC32C checksum of
+ * the payload. The payload holds a sequence number, the kind of mutation, the
+ * amount in cents, and the length-prefixed UTF-8 account holder and
+ * counterparty. The payload of a {@link Mutation#TRANSACTION} record goes on
+ * to hold the kind, amount and account holder of each of its operations, so
+ * one checksum covers the whole transaction. Records are read back by
+ * {@link JournalReader}.
+ * </p>
+ * <p>
+ * How soon an appended record is forced to disk depends on the journal's
+ * {@link Durability}. With group commit, records appended by many threads are
+ * written and forced together by a background thread, and each appending
+ * thread waits until its own record is durable, so the cost of a force is
+ * shared by the whole group.
+ * </p>
+ * <p>
+ * Opening an existing journal continues it after its last valid record; any
+ * torn record left at its end by a crash is truncated first.
+ * </p>
+ */
+public final class Journal implements MutationLog, Closeable {
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum Durability {
+
+        /**
+         * Each append writes and forces its record before returning.
+         */
+        SYNC,
+
+        /**
+         * Appends are forced together once a group of records has built up or
+         * the oldest unforced record has waited long enough, and each append
+         * waits until its record has been forced.
+         */
+        GROUP,
+
+        /**
+         * Appends are forced together as with {@link #GROUP}, but return without
+         * waiting, so a crash may lose the most recent records.
+         */
+        ASYNC
+    }
+
+    static final int FRAME_HEADER_BYTES = 8;
+    static final int MIN_PAYLOAD_BYTES = 8 + 1 + 8 + 4 + 4;
+    static final int OPERATION_BYTES = 1 + 8 + 4;
+    static final int MAX_PAYLOAD_BYTES = 1 << 18;
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int DEFAULT_GROUP_SIZE = 1_024;
+    private static final long DEFAULT_GROUP_DELAY_MICROS = 0;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final int groupSize;
+    private final long groupDelayNanos;
+    private final Thread flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long sequence;
+    private long durableSequence;
+    private int pendingCount;
+    private long firstPendingNanos;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens a journal with the default group size and no group delay.
+     *
+     * @param path       the journal file, created if it does not exist
+     * @param durability when appended records are forced to disk
+     * @throws IOException if the file cannot be opened
+     */
+    public Journal(Path path, Durability durability)
+            throws IOException {
+        this(path, durability, DEFAULT_GROUP_SIZE, DEFAULT_GROUP_DELAY_MICROS);
+    }
+
+    /**
+     * Opens a journal.
+     *
+     * @param path             the journal file, created if it does not exist
+     * @param durability       when appended records are forced to disk
+     * @param groupSize        the number of records that triggers a group
+     *                         commit
+     * @param groupDelayMicros the longest time a record waits for a group commit,
+     *                         in microseconds; with zero, each group is forced
+     *                         as soon as the previous force completes, so a
+     *                         group holds whatever was appended meanwhile
+     * @throws IOException if the file cannot be opened
+     */
+    public Journal(Path path, Durability durability, int groupSize, long groupDelayMicros)
+            throws IOException {
+        this.durability = durability;
+        this.groupSize = groupSize;
+        this.groupDelayNanos = TimeUnit.MICROSECONDS.toNanos(groupDelayMicros);
+
+        long validLength = 0;
+        if (path.toFile().exists()) {
+            try (JournalReader reader = new JournalReader(path)) {
+                while (reader.next())
+                    sequence = reader.getSequence();
+                validLength = reader.getValidLength();
+            }
+        }
+        durableSequence = sequence;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+
+        if (durability == Durability.SYNC) {
+            flusher = null;
+        } else {
+            flusher = new Thread(this::runFlusher, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last record appended.
+     *
+     * @return the last sequence number, or zero if nothing has been appended
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a mutation to the journal, returning once it is as durable as the
+     * journal's {@link Durability} requires.
+     *
+     * @throws UncheckedIOException if the journal cannot be written or has
+     *                              been closed
+     */
+    @Override
+    public void append(Mutation mutation, String accountHolder, String counterparty, long amount) {
+        byte[] holderBytes = accountHolder == null ? null : accountHolder.getBytes(StandardCharsets.UTF_8);
+        byte[] counterpartyBytes = counterparty == null ? null : counterparty.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = MIN_PAYLOAD_BYTES
+                + (holderBytes == null ? 0 : holderBytes.length)
+                + (counterpartyBytes == null ? 0 : counterpartyBytes.length);
+        appendRecord(mutation, amount, holderBytes, counterpartyBytes, null, null, payloadLength);
+    }
+
+    /**
+     * Appends a committed transaction to the journal as a single
+     * {@link Mutation#TRANSACTION} record, so that a crash keeps either every
+     * operation or none, returning once it is as durable as the journal's
+     * {@link Durability} requires.
+     *
+     * @throws IllegalArgumentException if the transaction is too large for one
+     *                                  record
+     * @throws UncheckedIOException     if the journal cannot be written or has
+     *                                  been closed
+     */
+    @Override
+    public void appendTransaction(List<Operation> operations) {
+        byte[][] holderBytes = new byte[operations.size()][];
+        int payloadLength = MIN_PAYLOAD_BYTES;
+        for (int i = 0; i < holderBytes.length; i++) {
+            holderBytes[i] = operations.get(i).getAccountHolder().getBytes(StandardCharsets.UTF_8);
+            payloadLength += OPERATION_BYTES + holderBytes[i].length;
+            if (payloadLength > MAX_PAYLOAD_BYTES)
+                break;
+        }
+        appendRecord(Mutation.TRANSACTION, operations.size(), null, null, operations, holderBytes, payloadLength);
+    }
+
+    /**
+     * Appends a record, followed by the operations of a transaction if it has
+     * any.
+     */
+    private void appendRecord(Mutation mutation, long amount, byte[] holderBytes, byte[] counterpartyBytes,
+                              List<Operation> operations, byte[][] operationHolderBytes, int payloadLength) {
+        if (payloadLength > MAX_PAYLOAD_BYTES)
+            throw new IllegalArgumentException("Journal record too large: " + payloadLength + " bytes");
+
+        lock.lock();
+        try {
+            while (active.remaining() < FRAME_HEADER_BYTES + payloadLength) {
+                checkUsable();
+                if (durability == Durability.SYNC)
+                    writeActive();
+                else
+                    awaitFlush();
+            }
+            checkUsable();
+
+            long recordSequence = ++sequence;
+            int start = active.position();
+            int payloadStart = start + FRAME_HEADER_BYTES;
+            active.position(payloadStart);
+            active.putLong(recordSequence);
+            active.put(mutation.getCode());
+            active.putLong(amount);
+            putBytes(holderBytes);
+            putBytes(counterpartyBytes);
+            if (operations != null) {
+                for (int i = 0; i < operations.size(); i++) {
+                    Operation operation = operations.get(i);
+                    active.put(Mutation.of(operation.getType()).getCode());
+                    active.putLong(operation.getAmount());
+                    putBytes(operationHolderBytes[i]);
+                }
+            }
+            int end = active.position();
+
+            active.position(payloadStart).limit(end);
+            crc.reset();
+            crc.update(active);
+            active.limit(active.capacity());
+            active.putInt(start, payloadLength);
+            active.putInt(start + 4, (int) crc.getValue());
+
+            switch (durability) {
+                case SYNC -> {
+                    writeActive();
+                    channel.force(false);
+                    durableSequence = recordSequence;
+                }
+                case GROUP -> {
+                    notePending();
+                    while (durableSequence < recordSequence) {
+                        if (failure != null)
+                            throw new IOException("Journal could not be written", failure);
+                        flushed.await();
+                    }
+                }
+                case ASYNC -> notePending();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putBytes(byte[] bytes) {
+        if (bytes == null) {
+            active.putInt(-1);
+        } else {
+            active.putInt(bytes.length);
+            active.put(bytes);
+        }
+    }
+
+    /**
+     * Records that a record is waiting for the flusher, waking it once a full
+     * group has built up. Must be called while holding the lock.
+     */
+    private void notePending() {
+        if (pendingCount++ == 0)
+            firstPendingNanos = System.nanoTime();
+        if (pendingCount == 1 || pendingCount >= groupSize)
+            flushNeeded.signal();
+    }
+
+    /**
+     * Waits for the flusher to drain the active buffer. Must be called while
+     * holding the lock.
+     */
+    private void awaitFlush()
+            throws InterruptedException {
+        long target = sequence;
+        pendingCount = Math.max(pendingCount, groupSize);
+        flushNeeded.signal();
+        while (durableSequence < target && failure == null && !closed)
+            flushed.await();
+    }
+
+    /**
+     * Writes the active buffer to the channel. Must be called while holding the
+     * lock.
+     */
+    private void writeActive()
+            throws IOException {
+        active.flip();
+        while (active.hasRemaining())
+            channel.write(active);
+        active.clear();
+    }
+
+    /**
+     * Checks that records can still be appended. Finding the journal closed is
+     * reported directly rather than as an {@link IOException}, so that an
+     * append racing with {@link #close()} is not recorded as a write failure.
+     */
+    private void checkUsable()
+            throws IOException {
+        if (failure != null)
+            throw new IOException("Journal is unusable after an earlier failure", failure);
+        if (closed)
+            throw new UncheckedIOException(new IOException("Journal is closed"));
+    }
+
+    /**
+     * Runs the background thread that writes and forces groups of records.
+     */
+    private void runFlusher() {
+        lock.lock();
+        try {
+            while (true) {
+                if (active.position() == 0) {
+                    if (closed)
+                        return;
+                    flushNeeded.await();
+                    continue;
+                }
+                long remaining = firstPendingNanos + groupDelayNanos - System.nanoTime();
+                if (!closed && pendingCount < groupSize && remaining > 0) {
+                    flushNeeded.awaitNanos(remaining);
+                    continue;
+                }
+
+                ByteBuffer toWrite = active;
+                active = spare;
+                spare = toWrite;
+                long upTo = sequence;
+                pendingCount = 0;
+
+                lock.unlock();
+                try {
+                    toWrite.flip();
+                    while (toWrite.hasRemaining())
+                        channel.write(toWrite);
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    toWrite.clear();
+                    lock.lock();
+                }
+                if (failure == null)
+                    durableSequence = upTo;
+                flushed.signalAll();
+                if (failure != null)
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces every appended record to disk and closes the journal.
+     *
+     * @throws IOException if the remaining records cannot be written
+     */
+    @Override
+    public void close()
+            throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (flusher != null)
+                flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            flushed.signalAll();
+            if (failure != null)
+                throw new IOException("Journal could not be written", failure);
+            if (active.position() > 0)
+                writeActive();
+            channel.force(true);
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package bank.journal;
+
+import bank.Operation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the records of a journal written by {@link Journal}, in the order they
+ * were written.
+ * <p>
+ * Each record is framed by its payload length and a CRC32C checksum of the
+ * payload. Reading stops cleanly at the first record that is incomplete, fails
+ * its checksum or cannot be decoded, which is how a record torn by a crash
+ * part-way through a write shows up. {@link #getValidLength()} then gives the
+ * length of the journal up to the end of the last valid record. A
+ * transaction is a single record, so it is read whole or not at all.
+ * </p>
+ */
+public final class JournalReader implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 22;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private boolean endOfFile;
+    private long validLength;
+
+    private long sequence;
+    private Mutation mutation;
+    private String accountHolder;
+    private String counterparty;
+    private long amount;
+    private List<Operation> operations = List.of();
+
+    /**
+     * Opens a journal for reading.
+     *
+     * @param path the journal file
+     * @throws IOException if the file cannot be opened
+     */
+    public JournalReader(Path path)
+            throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.limit(0);
+    }
+
+    /**
+     * Reads the next record, making its fields available through the getters.
+     *
+     * @return {@code true} if a valid record was read, {@code false} at the end
+     *         of the journal or at the first invalid record
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next()
+            throws IOException {
+        if (!fill(Journal.FRAME_HEADER_BYTES))
+            return false;
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if (length < Journal.MIN_PAYLOAD_BYTES || length > Journal.MAX_PAYLOAD_BYTES)
+            return false;
+        if (!fill(Journal.FRAME_HEADER_BYTES + length))
+            return false;
+        start = buffer.position();
+        int payloadStart = start + Journal.FRAME_HEADER_BYTES;
+        int end = payloadStart + length;
+
+        int limit = buffer.limit();
+        buffer.position(payloadStart).limit(end);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(limit).position(payloadStart);
+        if ((int) crc.getValue() != checksum) {
+            buffer.position(start);
+            return false;
+        }
+
+        long recordSequence = buffer.getLong();
+        Mutation recordMutation = Mutation.fromCode(buffer.get());
+        long recordAmount = buffer.getLong();
+        String recordAccountHolder = readString(end);
+        String recordCounterparty = readString(end);
+        List<Operation> recordOperations = recordMutation == Mutation.TRANSACTION
+                ? readOperations(recordAmount, end)
+                : List.of();
+        if (recordMutation == null || recordOperations == null || buffer.position() != end) {
+            buffer.position(start);
+            return false;
+        }
+
+        sequence = recordSequence;
+        mutation = recordMutation;
+        amount = recordAmount;
+        accountHolder = recordAccountHolder;
+        counterparty = recordCounterparty;
+        operations = recordOperations;
+        validLength += Journal.FRAME_HEADER_BYTES + length;
+        return true;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the current record, where a
+     * length of -1 stands for {@code null}.
+     *
+     * @param end the end of the current record's payload
+     * @return the string read, or {@code null}
+     */
+    private String readString(int end) {
+        if (end - buffer.position() < 4)
+            return null;
+        int length = buffer.getInt();
+        if (length < 0 || length > end - buffer.position())
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the operations of a transaction from the current record.
+     *
+     * @param count the number of operations
+     * @param end   the end of the current record's payload
+     * @return the operations read, or {@code null} if they cannot be decoded
+     */
+    private List<Operation> readOperations(long count, int end) {
+        if (count < 0 || count > (end - buffer.position()) / Journal.OPERATION_BYTES)
+            return null;
+        List<Operation> recordOperations = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            if (end - buffer.position() < Journal.OPERATION_BYTES)
+                return null;
+            Mutation operationMutation = Mutation.fromCode(buffer.get());
+            long operationAmount = buffer.getLong();
+            String operationAccountHolder = readString(end);
+            if (operationMutation == null || operationAccountHolder == null)
+                return null;
+            Operation operation = switch (operationMutation) {
+                case DEPOSIT -> Operation.deposit(operationAccountHolder, operationAmount);
+                case WITHDRAWAL -> Operation.withdrawal(operationAccountHolder, operationAmount);
+                case LOAN -> Operation.loan(operationAccountHolder, operationAmount);
+                case REPAYMENT -> Operation.repayment(operationAccountHolder, operationAmount);
+                default -> null;
+            };
+            if (operation == null)
+                return null;
+            recordOperations.add(operation);
+        }
+        return recordOperations;
+    }
+
+    /**
+     * Ensures that at least the specified number of bytes are buffered,
+     * reading more of the file if needed.
+     *
+     * @param bytes the number of bytes needed
+     * @return {@code false} if the file ends before that many bytes
+     * @throws IOException if the file cannot be read
+     */
+    private boolean fill(int bytes)
+            throws IOException {
+        if (buffer.remaining() >= bytes)
+            return true;
+        buffer.compact();
+        while (!endOfFile && buffer.position() < bytes) {
+            if (channel.read(buffer) < 0)
+                endOfFile = true;
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    /**
+     * Retrieves the length of the journal up to the end of the last valid record
+     * read.
+     *
+     * @return the valid length, in bytes
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * Retrieves the sequence number of the current record.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the kind of mutation recorded by the current record.
+     *
+     * @return the kind of mutation
+     */
+    public Mutation getMutation() {
+        return mutation;
+    }
+
+    /**
+     * Retrieves the account holder of the current record.
+     *
+     * @return the account holder, or {@code null} for changes to the reserves
+     */
+    public String getAccountHolder() {
+        return accountHolder;
+    }
+
+    /**
+     * Retrieves the counterparty of the current record.
+     *
+     * @return the account holder credited by a transfer, otherwise {@code null}
+     */
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Retrieves the amount of the current record in cents.
+     *
+     * @return the amount, in cents
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Retrieves the operations of the current record if it is a
+     * {@link Mutation#TRANSACTION}.
+     *
+     * @return the transaction's operations, in the order they were applied,
+     *         or an empty list for any other record
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public void close()
+            throws IOException {
+        channel.close();
+    }
+
+}
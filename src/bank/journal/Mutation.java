@@ -0,0 +1,116 @@
+package bank.journal;
+
+import bank.Operation;
+
+/**
+ * The kinds of state change made to a {@link bank.Bank} that are recorded in
+ * its {@link MutationLog}.
+ * <p>
+ * Each mutation is recorded as a self-contained change: its amount is applied
+ * to the reserves as well as to the account, so that replaying a log gives the
+ * same reserves whatever order concurrent mutations were recorded in. Each
+ * kind has a fixed code used in the binary journal format.
+ * </p>
+ */
+public enum Mutation {
+
+    /**
+     * An account was added; the amount is its initial deposit.
+     */
+    ACCOUNT_ADDED(1),
+
+    /**
+     * An account was removed; the amount is its balance when it was closed.
+     */
+    ACCOUNT_REMOVED(2),
+
+    /**
+     * An amount was deposited into an account.
+     */
+    DEPOSIT(3),
+
+    /**
+     * An amount was withdrawn from an account.
+     */
+    WITHDRAWAL(4),
+
+    /**
+     * A loan was approved for an account.
+     */
+    LOAN(5),
+
+    /**
+     * An amount of a loan was repaid.
+     */
+    REPAYMENT(6),
+
+    /**
+     * An amount was added directly to the reserves.
+     */
+    RESERVES_ADDED(7),
+
+    /**
+     * An amount was subtracted directly from the reserves.
+     */
+    RESERVES_SUBTRACTED(8),
+
+    /**
+     * An amount was transferred from an account to its counterparty.
+     */
+    TRANSFER(9),
+
+    /**
+     * A committed transaction; the amount is its number of operations. Each
+     * operation is recorded as the deposit, withdrawal, loan or repayment it
+     * makes, and all of them are applied or none are.
+     */
+    TRANSACTION(10);
+
+    private static final Mutation[] BY_CODE = new Mutation[16];
+
+    static {
+        for (Mutation mutation : values())
+            BY_CODE[mutation.code] = mutation;
+    }
+
+    private final byte code;
+
+    Mutation(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * Retrieves the code identifying this kind of mutation in the journal.
+     *
+     * @return the journal code
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Retrieves the kind of mutation recorded for an operation.
+     *
+     * @param type the kind of operation
+     * @return the kind of mutation
+     */
+    public static Mutation of(Operation.Type type) {
+        return switch (type) {
+            case DEPOSIT -> DEPOSIT;
+            case WITHDRAWAL -> WITHDRAWAL;
+            case LOAN -> LOAN;
+            case REPAYMENT -> REPAYMENT;
+        };
+    }
+
+    /**
+     * Retrieves the kind of mutation with the specified journal code.
+     *
+     * @param code the journal code
+     * @return the kind of mutation, or {@code null} if the code is not known
+     */
+    public static Mutation fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+}
@@ -0,0 +1,53 @@
+package bank.journal;
+
+import bank.Operation;
+
+import java.util.List;
+
+/**
+ * Receives every state change made to a {@link bank.Bank}, in the order the
+ * changes are made to each account.
+ * <p>
+ * A bank appends to its log while it still holds the lock of the account being
+ * changed, and before the operation returns to its caller, so an operation is
+ * only acknowledged once its log has accepted it.
+ * </p>
+ */
+@FunctionalInterface
+public interface MutationLog {
+
+    /**
+     * A log that discards everything appended to it.
+     */
+    MutationLog NONE = (mutation, accountHolder, counterparty, amount) -> {
+    };
+
+    /**
+     * Appends a state change to the log.
+     *
+     * @param mutation      the kind of change
+     * @param accountHolder the account holder the change applies to, or
+     *                      {@code null} for changes to the reserves alone
+     * @param counterparty  the account holder credited by a
+     *                      {@link Mutation#TRANSFER}, otherwise {@code null}
+     * @param amount        the amount of the change, in cents
+     */
+    void append(Mutation mutation, String accountHolder, String counterparty, long amount);
+
+    /**
+     * Appends the operations of a committed transaction to the log.
+     * <p>
+     * By default each operation is appended in turn as its own change. A log
+     * that is replayed after a crash should record the transaction as a single
+     * {@link Mutation#TRANSACTION}, so that it is kept whole or lost whole.
+     * </p>
+     *
+     * @param operations the transaction's operations, in the order they were
+     *                   applied
+     */
+    default void appendTransaction(List<Operation> operations) {
+        for (Operation operation : operations)
+            append(Mutation.of(operation.getType()), operation.getAccountHolder(), null, operation.getAmount());
+    }
+
+}
@@ -0,0 +1,283 @@
+package bank.store;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A {@link SlotAccountStore} that keeps balances and loan balances in primitive
+ * {@code long} columns, with account holder names in a separate table indexed
+ * by the same slot.
+ * <p>
+ * Each column is a list of fixed-size chunks, so it grows without copying the
+ * values already stored, and a sweep over the book is a linear pass over a few
+ * large arrays rather than a walk over one object per account. Account holders
+ * are found through an open-addressing hash table of slot numbers, which finds
+ * a holder without taking a lock unless an insert or removal is in progress.
+ * </p>
+ */
+public final class ColumnarAccountStore extends SlotAccountStore {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+    private static final int MIN_INDEX_SIZE = 16;
+
+    private volatile long[][] balances = new long[0][];
+    private volatile long[][] loanBalances = new long[0][];
+    private volatile String[][] holders = new String[0][];
+    private volatile boolean[][] published = new boolean[0][];
+
+    private final StampedLock indexLock = new StampedLock();
+    private int[] index = new int[MIN_INDEX_SIZE];
+    private int indexUsed;
+    private int[] freeSlots = new int[MIN_INDEX_SIZE];
+    private int freeCount;
+    private volatile int size;
+    private volatile int slotLimit;
+
+    @Override
+    public int find(String accountHolder) {
+        int hash = hash(accountHolder);
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0) {
+            int slot = probe(accountHolder, hash);
+            if (indexLock.validate(stamp))
+                return slot;
+        }
+        stamp = indexLock.readLock();
+        try {
+            return probe(accountHolder, hash);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks an account holder up in the index. Outside the index lock this may
+     * see the index part-way through a change, so it guards every access and
+     * its result must then be validated.
+     *
+     * @return the slot, or {@link #NO_SLOT}
+     */
+    private int probe(String accountHolder, int hash) {
+        int[] table = index;
+        String[][] names = holders;
+        int mask = table.length - 1;
+        for (int i = hash & mask, probes = 0; probes < table.length; i = (i + 1) & mask, probes++) {
+            int entry = table[i];
+            if (entry == EMPTY)
+                return NO_SLOT;
+            if (entry == REMOVED)
+                continue;
+            int slot = entry - 1;
+            int chunk = slot >>> CHUNK_BITS;
+            if (chunk < names.length && accountHolder.equals(names[chunk][slot & CHUNK_MASK]))
+                return slot;
+        }
+        return NO_SLOT;
+    }
+
+    @Override
+    public int allocate(String accountHolder, long balance, long loanBalance) {
+        long stamp = indexLock.writeLock();
+        try {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                slot = slotLimit;
+                if (slot >>> CHUNK_BITS == holders.length)
+                    addChunk();
+                slotLimit = slot + 1;
+            }
+            balances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = balance;
+            loanBalances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = loanBalance;
+            holders[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = accountHolder;
+            return slot;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean publish(int slot) {
+        long stamp = indexLock.writeLock();
+        try {
+            String accountHolder = getAccountHolder(slot);
+            int hash = hash(accountHolder);
+            if (probe(accountHolder, hash) != NO_SLOT) {
+                free(slot);
+                return false;
+            }
+            if ((indexUsed + 1) * 2 > index.length)
+                rebuildIndex();
+
+            int mask = index.length - 1;
+            int i = hash & mask;
+            while (index[i] > EMPTY)
+                i = (i + 1) & mask;
+            if (index[i] == EMPTY)
+                indexUsed++;
+            index[i] = slot + 1;
+            published[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = true;
+            size++;
+            return true;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void remove(int slot) {
+        long stamp = indexLock.writeLock();
+        try {
+            String accountHolder = getAccountHolder(slot);
+            if (accountHolder == null)
+                return;
+            retire(slot);
+            int mask = index.length - 1;
+            for (int i = hash(accountHolder) & mask; index[i] != EMPTY; i = (i + 1) & mask) {
+                if (index[i] == slot + 1) {
+                    index[i] = REMOVED;
+                    size--;
+                    break;
+                }
+            }
+            free(slot);
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Clears a slot and adds it to the free list. Must be called while holding
+     * the index write lock.
+     */
+    private void free(int slot) {
+        balances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = 0;
+        loanBalances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = 0;
+        holders[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = null;
+        published[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = false;
+        if (freeCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Adds a chunk to every column. Must be called while holding the index
+     * write lock.
+     */
+    private void addChunk() {
+        int chunks = holders.length;
+        long[][] newBalances = Arrays.copyOf(balances, chunks + 1);
+        long[][] newLoanBalances = Arrays.copyOf(loanBalances, chunks + 1);
+        String[][] newHolders = Arrays.copyOf(holders, chunks + 1);
+        boolean[][] newPublished = Arrays.copyOf(published, chunks + 1);
+        newBalances[chunks] = new long[CHUNK_SLOTS];
+        newLoanBalances[chunks] = new long[CHUNK_SLOTS];
+        newHolders[chunks] = new String[CHUNK_SLOTS];
+        newPublished[chunks] = new boolean[CHUNK_SLOTS];
+        balances = newBalances;
+        loanBalances = newLoanBalances;
+        holders = newHolders;
+        published = newPublished;
+    }
+
+    /**
+     * Rebuilds the index without its removed entries, doubling it if it is
+     * more than a quarter full of live entries. Slots that are allocated but
+     * not yet published stay out of it. Must be called while holding the index
+     * write lock.
+     */
+    private void rebuildIndex() {
+        int length = index.length;
+        while (size * 4 >= length)
+            length *= 2;
+        int[] table = new int[Math.max(MIN_INDEX_SIZE, length)];
+        int mask = table.length - 1;
+        for (int entry : index) {
+            if (entry <= EMPTY)
+                continue;
+            int slot = entry - 1;
+            int i = hash(holders[slot >>> CHUNK_BITS][slot & CHUNK_MASK]) & mask;
+            while (table[i] != EMPTY)
+                i = (i + 1) & mask;
+            table[i] = entry;
+        }
+        index = table;
+        indexUsed = size;
+    }
+
+    private static int hash(String accountHolder) {
+        int h = accountHolder.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    @Override
+    public String getAccountHolder(int slot) {
+        return holders[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public boolean isPublished(int slot) {
+        return published[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public long getBalance(int slot) {
+        return balances[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public void setBalance(int slot, long balance) {
+        balances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = balance;
+    }
+
+    @Override
+    public long getLoanBalance(int slot) {
+        return loanBalances[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public void setLoanBalance(int slot, long loanBalance) {
+        loanBalances[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = loanBalance;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int slotLimit() {
+        return slotLimit;
+    }
+
+    @Override
+    public long totalBalance() {
+        return sum(balances);
+    }
+
+    @Override
+    public long totalLoanBalance() {
+        return sum(loanBalances);
+    }
+
+    /**
+     * Sums a column chunk by chunk. Free and unused slots hold zero, so whole
+     * chunks can be summed without checking which slots are in use.
+     */
+    private static long sum(long[][] column) {
+        long total = 0;
+        for (long[] chunk : column)
+            for (long value : chunk)
+                total += value;
+        return total;
+    }
+
+}
@@ -0,0 +1,483 @@
+package bank.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A {@link SlotAccountStore} that keeps each account as a fixed-size record in
+ * byte buffers, and finds account holders through an open-addressing hash
+ * table of slot numbers held in a byte buffer of its own.
+ * <p>
+ * Each record is {@value #SLOT_BYTES} bytes holding the account's balance,
+ * loan balance, the hash of its account holder's name and the name's UTF-8
+ * bytes, which may be at most {@value #MAX_HOLDER_BYTES} bytes long, with a
+ * flag marking it published. Records are held in chunks of
+ * {@value #CHUNK_SLOTS} slots, and the index is rebuilt from the published
+ * records alone. Free records are chained
+ * through their hash field, so no bookkeeping is kept outside the buffers but
+ * a few counts, which subclasses can save with {@link #countsChanged()}.
+ * </p>
+ * <p>
+ * Subclasses decide where the buffers live by supplying new record chunks and
+ * index tables. Account holders are found without taking a lock unless an
+ * insert or removal is in progress.
+ * </p>
+ */
+abstract class FixedSlotAccountStore extends SlotAccountStore {
+
+    /**
+     * The size of each account record, in bytes.
+     */
+    public static final int SLOT_BYTES = 64;
+
+    /**
+     * The longest account holder name that can be stored, in UTF-8 bytes.
+     */
+    public static final int MAX_HOLDER_BYTES = 42;
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+    static final int CHUNK_BYTES = CHUNK_SLOTS * SLOT_BYTES;
+
+    static final int MIN_INDEX_SIZE = 16;
+    static final int MAX_INDEX_SIZE = 1 << 28;
+
+    private static final int BALANCE = 0;
+    private static final int LOAN_BALANCE = 8;
+    private static final int HASH = 16;
+    private static final int LENGTH = 20;
+    private static final int HOLDER = 22;
+
+    private static final int PUBLISHED = 0x8000;
+    private static final int LENGTH_MASK = 0x7FFF;
+
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    private volatile ByteBuffer[] chunks;
+
+    private final StampedLock indexLock = new StampedLock();
+    private ByteBuffer index;
+    private int indexUsed;
+    private int freeHead;
+    private volatile int size;
+    private volatile int slotLimit;
+
+    /**
+     * Constructs a store over existing records and index.
+     *
+     * @param chunks    the record chunks
+     * @param index     the index table
+     * @param size      the number of accounts held
+     * @param slotLimit one more than the highest slot ever used
+     * @param freeHead  the first free slot below the slot limit, or
+     *                  {@link #NO_SLOT}
+     * @param indexUsed the number of index entries that are not empty
+     */
+    FixedSlotAccountStore(ByteBuffer[] chunks, ByteBuffer index, int size, int slotLimit, int freeHead,
+            int indexUsed) {
+        this.chunks = chunks;
+        this.index = index;
+        this.size = size;
+        this.slotLimit = slotLimit;
+        this.freeHead = freeHead;
+        this.indexUsed = indexUsed;
+    }
+
+    /**
+     * Supplies a new, zeroed record chunk.
+     *
+     * @param chunk the number of the chunk
+     * @return the chunk, holding {@value #CHUNK_BYTES} bytes
+     * @throws IllegalStateException if the store can hold no more chunks
+     */
+    abstract ByteBuffer newChunk(int chunk);
+
+    /**
+     * Supplies a new, zeroed index table, which replaces the current one once
+     * it has been filled.
+     *
+     * @param entries the number of entries, a power of two
+     * @return the table, holding four bytes per entry
+     * @throws IllegalStateException if the store can hold no larger index
+     */
+    abstract ByteBuffer newIndex(int entries);
+
+    /**
+     * Called while holding the index write lock after an insert or removal has
+     * changed the store's counts.
+     */
+    void countsChanged() {
+    }
+
+    ByteBuffer[] chunks() {
+        return chunks;
+    }
+
+    int freeHead() {
+        return freeHead;
+    }
+
+    int indexUsed() {
+        return indexUsed;
+    }
+
+    @Override
+    public int find(String accountHolder) {
+        int hash = hash(accountHolder);
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0) {
+            int slot = probe(accountHolder, hash);
+            if (indexLock.validate(stamp))
+                return slot;
+        }
+        stamp = indexLock.readLock();
+        try {
+            return probe(accountHolder, hash);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks an account holder up in the index. Outside the index lock this may
+     * see the index part-way through a change, so it guards every access and
+     * its result must then be validated.
+     *
+     * @return the slot, or {@link #NO_SLOT}
+     */
+    private int probe(String accountHolder, int hash) {
+        ByteBuffer table = index;
+        ByteBuffer[] records = chunks;
+        int length = table.capacity() / Integer.BYTES;
+        int mask = length - 1;
+        for (int i = hash & mask, probes = 0; probes < length; i = (i + 1) & mask, probes++) {
+            int entry = table.getInt(i * Integer.BYTES);
+            if (entry == EMPTY)
+                return NO_SLOT;
+            if (entry == REMOVED)
+                continue;
+            int slot = entry - 1;
+            int chunk = slot >>> CHUNK_BITS;
+            if (chunk >= records.length)
+                continue;
+            ByteBuffer record = records[chunk];
+            int offset = offset(slot);
+            if (record.getInt(offset + HASH) == hash && matches(record, offset, accountHolder))
+                return slot;
+        }
+        return NO_SLOT;
+    }
+
+    /**
+     * Compares the account holder in a record with a name, without decoding the
+     * record unless the name has non-ASCII characters.
+     */
+    private static boolean matches(ByteBuffer record, int offset, String accountHolder) {
+        int length = (record.getShort(offset + LENGTH) & LENGTH_MASK) - 1;
+        int chars = accountHolder.length();
+        if (length < chars || length > MAX_HOLDER_BYTES)
+            return false;
+        for (int i = 0; i < chars; i++) {
+            char c = accountHolder.charAt(i);
+            if (c >= 0x80)
+                return Arrays.equals(accountHolder.getBytes(StandardCharsets.UTF_8),
+                        holderBytes(record, offset, length));
+            if (record.get(offset + HOLDER + i) != c)
+                return false;
+        }
+        return length == chars;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the account holder's name is longer
+     *                                  than {@value #MAX_HOLDER_BYTES} bytes
+     * @throws IllegalStateException    if the store is full
+     */
+    @Override
+    public int allocate(String accountHolder, long balance, long loanBalance) {
+        byte[] bytes = accountHolder.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_HOLDER_BYTES)
+            throw new IllegalArgumentException("Account holder is longer than " + MAX_HOLDER_BYTES + " bytes");
+        long stamp = indexLock.writeLock();
+        try {
+            int slot;
+            if (freeHead != NO_SLOT) {
+                slot = freeHead;
+                freeHead = record(slot).getInt(offset(slot) + HASH);
+            } else {
+                slot = slotLimit;
+                if (slot >>> CHUNK_BITS == chunks.length)
+                    addChunk();
+                slotLimit = slot + 1;
+            }
+            ByteBuffer record = record(slot);
+            int offset = offset(slot);
+            record.putLong(offset + BALANCE, balance);
+            record.putLong(offset + LOAN_BALANCE, loanBalance);
+            record.putInt(offset + HASH, hash(accountHolder));
+            record.put(offset + HOLDER, bytes);
+            record.putShort(offset + LENGTH, (short) (bytes.length + 1));
+            countsChanged();
+            return slot;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the index cannot grow any further
+     */
+    @Override
+    public boolean publish(int slot) {
+        long stamp = indexLock.writeLock();
+        try {
+            ByteBuffer record = record(slot);
+            int offset = offset(slot);
+            String accountHolder = getAccountHolder(slot);
+            int hash = record.getInt(offset + HASH);
+            if (probe(accountHolder, hash) != NO_SLOT) {
+                free(record, slot, freeHead);
+                freeHead = slot;
+                countsChanged();
+                return false;
+            }
+            int length = index.capacity() / Integer.BYTES;
+            if ((long) (indexUsed + 1) * 4 > (long) length * 3)
+                rebuildIndex(length);
+
+            if (addToIndex(index, hash, slot))
+                indexUsed++;
+            record.putShort(offset + LENGTH, (short) (record.getShort(offset + LENGTH) | PUBLISHED));
+            size++;
+            countsChanged();
+            return true;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void remove(int slot) {
+        long stamp = indexLock.writeLock();
+        try {
+            ByteBuffer record = record(slot);
+            int offset = offset(slot);
+            short length = record.getShort(offset + LENGTH);
+            if (length == 0)
+                return;
+            retire(slot);
+            if ((length & PUBLISHED) != 0) {
+                int mask = index.capacity() / Integer.BYTES - 1;
+                int i = record.getInt(offset + HASH) & mask;
+                while (index.getInt(i * Integer.BYTES) != slot + 1)
+                    i = (i + 1) & mask;
+                index.putInt(i * Integer.BYTES, REMOVED);
+                size--;
+            }
+            free(record, slot, freeHead);
+            freeHead = slot;
+            countsChanged();
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds a chunk of records. Must be called while holding the index write
+     * lock.
+     */
+    private void addChunk() {
+        ByteBuffer[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+        newChunks[chunks.length] = newChunk(chunks.length);
+        chunks = newChunks;
+    }
+
+    /**
+     * Rebuilds the index without its removed entries, growing it until it is
+     * less than three-eighths full. Must be called while holding the index
+     * write lock.
+     */
+    private void rebuildIndex(long length) {
+        while ((long) size * 8 >= length * 3)
+            length *= 2;
+        if (length > MAX_INDEX_SIZE)
+            throw new IllegalStateException("Account store is full");
+        index = buildIndex(newIndex((int) length));
+        indexUsed = size;
+    }
+
+    /**
+     * Fills an empty index table with every published account.
+     *
+     * @param table the table to fill
+     * @return the table
+     */
+    final ByteBuffer buildIndex(ByteBuffer table) {
+        for (int slot = 0; slot < slotLimit; slot++) {
+            ByteBuffer record = record(slot);
+            int offset = offset(slot);
+            if ((record.getShort(offset + LENGTH) & PUBLISHED) != 0)
+                addToIndex(table, record.getInt(offset + HASH), slot);
+        }
+        return table;
+    }
+
+    /**
+     * Adds a slot to an index at the first empty or removed entry for its hash.
+     *
+     * @return {@code true} if an empty entry was used
+     */
+    private static boolean addToIndex(ByteBuffer table, int hash, int slot) {
+        int mask = table.capacity() / Integer.BYTES - 1;
+        int i = hash & mask;
+        while (table.getInt(i * Integer.BYTES) > EMPTY)
+            i = (i + 1) & mask;
+        boolean empty = table.getInt(i * Integer.BYTES) == EMPTY;
+        table.putInt(i * Integer.BYTES, slot + 1);
+        return empty;
+    }
+
+    private static int hash(String accountHolder) {
+        int h = accountHolder.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private ByteBuffer record(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    private static int offset(int slot) {
+        return (slot & CHUNK_MASK) * SLOT_BYTES;
+    }
+
+    private static byte[] holderBytes(ByteBuffer record, int offset, int length) {
+        byte[] bytes = new byte[length];
+        record.get(offset + HOLDER, bytes);
+        return bytes;
+    }
+
+    /**
+     * Checks whether a record holds a published account.
+     *
+     * @param chunk the record's chunk
+     * @param slot  the record's slot
+     * @return {@code true} if the record is in use and published
+     */
+    static boolean isPublished(ByteBuffer chunk, int slot) {
+        return (chunk.getShort(offset(slot) + LENGTH) & PUBLISHED) != 0;
+    }
+
+    /**
+     * Checks whether a record that is not in use holds nothing.
+     *
+     * @param chunk the record's chunk
+     * @param slot  the record's slot
+     * @return {@code true} if the record's balances and name length are zero
+     */
+    static boolean isClear(ByteBuffer chunk, int slot) {
+        int offset = offset(slot);
+        return chunk.getLong(offset + BALANCE) == 0 && chunk.getLong(offset + LOAN_BALANCE) == 0
+                && chunk.getShort(offset + LENGTH) == 0;
+    }
+
+    /**
+     * Clears a record and links it to the next free slot.
+     *
+     * @param chunk the record's chunk
+     * @param slot  the record's slot
+     * @param next  the next free slot, or {@link #NO_SLOT}
+     */
+    static void free(ByteBuffer chunk, int slot, int next) {
+        int offset = offset(slot);
+        chunk.putLong(offset + BALANCE, 0);
+        chunk.putLong(offset + LOAN_BALANCE, 0);
+        chunk.putShort(offset + LENGTH, (short) 0);
+        chunk.putInt(offset + HASH, next);
+    }
+
+    @Override
+    public String getAccountHolder(int slot) {
+        ByteBuffer record = record(slot);
+        int offset = offset(slot);
+        int length = (record.getShort(offset + LENGTH) & LENGTH_MASK) - 1;
+        if (length < 0)
+            return null;
+        return new String(holderBytes(record, offset, length), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean holds(int slot, String accountHolder) {
+        ByteBuffer record = record(slot);
+        int offset = offset(slot);
+        return record.getInt(offset + HASH) == hash(accountHolder) && matches(record, offset, accountHolder);
+    }
+
+    @Override
+    public boolean isPublished(int slot) {
+        return isPublished(record(slot), slot);
+    }
+
+    @Override
+    public long getBalance(int slot) {
+        return record(slot).getLong(offset(slot) + BALANCE);
+    }
+
+    @Override
+    public void setBalance(int slot, long balance) {
+        record(slot).putLong(offset(slot) + BALANCE, balance);
+    }
+
+    @Override
+    public long getLoanBalance(int slot) {
+        return record(slot).getLong(offset(slot) + LOAN_BALANCE);
+    }
+
+    @Override
+    public void setLoanBalance(int slot, long loanBalance) {
+        record(slot).putLong(offset(slot) + LOAN_BALANCE, loanBalance);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int slotLimit() {
+        return slotLimit;
+    }
+
+    @Override
+    public long totalBalance() {
+        return sum(BALANCE);
+    }
+
+    @Override
+    public long totalLoanBalance() {
+        return sum(LOAN_BALANCE);
+    }
+
+    /**
+     * Sums a field of every record chunk by chunk. Free and unused records hold
+     * zero balances, so whole chunks can be summed without checking which
+     * records are in use.
+     */
+    private long sum(int field) {
+        long total = 0;
+        for (ByteBuffer chunk : chunks)
+            for (int offset = field; offset < CHUNK_BYTES; offset += SLOT_BYTES)
+                total += chunk.getLong(offset);
+        return total;
+    }
+
+}
@@ -0,0 +1,387 @@
+package bank.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SlotAccountStore} whose account records and index live in a
+ * memory-mapped file, so that balance updates are plain stores into mapped
+ * memory and the operating system's page cache keeps them.
+ * <p>
+ * The file holds a header, the index and a fixed number of
+ * {@value #SLOT_BYTES}-byte account records, laid out as in
+ * {@link OffHeapAccountStore}. Its capacity is fixed when the file is created.
+ * Reopening a file that was closed cleanly only maps it, so a restart takes
+ * the same time however many accounts the file holds, and pages are read in as
+ * accounts are used. A file that was not closed cleanly is scanned once on
+ * opening to rebuild its index, free list and counts.
+ * </p>
+ * <p>
+ * Every update reaches the file if the process exits, but survives an
+ * operating system crash or power loss only once it has been forced to disk.
+ * The {@link ForcePolicy} chooses when that happens; {@link #force()} may also
+ * be called at any time. Account holder names may be at most
+ * {@value #MAX_HOLDER_BYTES} bytes of UTF-8.
+ * </p>
+ */
+public final class MappedAccountStore extends FixedSlotAccountStore implements Closeable {
+
+    /**
+     * When updates are forced to disk.
+     */
+    public enum ForcePolicy {
+        /**
+         * Updates are forced only by {@link MappedAccountStore#force()} and
+         * when the store is closed.
+         */
+        ON_CLOSE,
+        /**
+         * Updates are also forced by a background thread at a fixed period.
+         */
+        PERIODIC
+    }
+
+    private static final int MAGIC = 0x424B4D46;
+    private static final int VERSION = 2;
+    private static final long DEFAULT_FORCE_PERIOD_MILLIS = 1_000;
+
+    private static final int HEADER_BYTES = 4096;
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int SLOT_BYTES_AT = 8;
+    private static final int CAPACITY_AT = 12;
+    private static final int INDEX_ENTRIES_AT = 16;
+    private static final int SIZE_AT = 20;
+    private static final int SLOT_LIMIT_AT = 24;
+    private static final int FREE_HEAD_AT = 28;
+    private static final int INDEX_USED_AT = 32;
+    private static final int CLEAN_AT = 36;
+
+    private static final int MIN_INDEX_ENTRIES = HEADER_BYTES / Integer.BYTES;
+
+    /**
+     * The largest capacity a file may have, which keeps its index within the
+     * size a single buffer can map.
+     */
+    public static final int MAX_CAPACITY = (MAX_INDEX_SIZE / 8 * 3 - 1) / CHUNK_SLOTS * CHUNK_SLOTS;
+
+    /**
+     * An opened file, ready to be handed to the constructor.
+     */
+    private record Mapping(FileChannel channel, MappedByteBuffer header, MappedByteBuffer index,
+            ByteBuffer[] chunks, int capacity, boolean recovered) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer index;
+    private final int capacity;
+    private final ScheduledExecutorService forcer;
+    private boolean closed;
+
+    /**
+     * Opens a mapped account file, creating it with the specified capacity if
+     * it does not exist. Updates are forced only on {@link #force()} and
+     * {@link #close()}.
+     *
+     * @param file     the account file
+     * @param capacity the number of accounts a new file can hold, rounded up
+     *                 to a multiple of {@value #CHUNK_SLOTS}; an existing file
+     *                 keeps its own capacity
+     * @throws IOException if the file cannot be opened or is not a valid
+     *                     account file
+     */
+    public MappedAccountStore(Path file, int capacity)
+            throws IOException {
+        this(file, capacity, ForcePolicy.ON_CLOSE, DEFAULT_FORCE_PERIOD_MILLIS);
+    }
+
+    /**
+     * Opens a mapped account file, creating it with the specified capacity if
+     * it does not exist.
+     *
+     * @param file              the account file
+     * @param capacity          the number of accounts a new file can hold,
+     *                          rounded up to a multiple of
+     *                          {@value #CHUNK_SLOTS}; an existing file keeps
+     *                          its own capacity
+     * @param forcePolicy       when updates are forced to disk
+     * @param forcePeriodMillis the period between forces under
+     *                          {@link ForcePolicy#PERIODIC}, in milliseconds
+     * @throws IOException if the file cannot be opened or is not a valid
+     *                     account file
+     */
+    public MappedAccountStore(Path file, int capacity, ForcePolicy forcePolicy, long forcePeriodMillis)
+            throws IOException {
+        this(open(file, capacity), forcePolicy, forcePeriodMillis);
+    }
+
+    private MappedAccountStore(Mapping mapping, ForcePolicy forcePolicy, long forcePeriodMillis) {
+        super(mapping.chunks(), mapping.index(), mapping.header().getInt(SIZE_AT),
+                mapping.header().getInt(SLOT_LIMIT_AT), mapping.header().getInt(FREE_HEAD_AT),
+                mapping.header().getInt(INDEX_USED_AT));
+        channel = mapping.channel();
+        header = mapping.header();
+        index = mapping.index();
+        capacity = mapping.capacity();
+        if (mapping.recovered())
+            buildIndex(index);
+
+        header.putInt(CLEAN_AT, 0);
+        header.force();
+
+        if (forcePolicy == ForcePolicy.PERIODIC) {
+            forcer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "account-store-forcer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            forcer.scheduleWithFixedDelay(this::force, forcePeriodMillis, forcePeriodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            forcer = null;
+        }
+    }
+
+    /**
+     * Opens or creates the file and maps its header, index and the record
+     * chunks in use, recovering the counts if it was not closed cleanly.
+     */
+    private static Mapping open(Path file, int capacity)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0)
+                create(channel, capacity);
+            if (channel.size() < HEADER_BYTES)
+                throw new IOException("Not a mapped account file: " + file);
+
+            MappedByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getInt(MAGIC_AT) != MAGIC)
+                throw new IOException("Not a mapped account file: " + file);
+            int version = header.getInt(VERSION_AT);
+            if (version != VERSION)
+                throw new IOException("Unsupported mapped account file version " + version + ": " + file);
+            if (header.getInt(SLOT_BYTES_AT) != SLOT_BYTES)
+                throw new IOException("Unsupported account record size " + header.getInt(SLOT_BYTES_AT) + ": " + file);
+            int fileCapacity = header.getInt(CAPACITY_AT);
+            int indexEntries = header.getInt(INDEX_ENTRIES_AT);
+            if (fileCapacity <= 0 || fileCapacity % CHUNK_SLOTS != 0 || indexEntries != indexEntries(fileCapacity)
+                    || channel.size() != length(fileCapacity))
+                throw new IOException("Mapped account file is corrupt: " + file);
+
+            MappedByteBuffer index = map(channel, HEADER_BYTES, (long) indexEntries * Integer.BYTES);
+            boolean recovered = header.getInt(CLEAN_AT) != 1;
+            ByteBuffer[] chunks;
+            if (recovered) {
+                chunks = recover(channel, header, index, fileCapacity);
+            } else {
+                chunks = new ByteBuffer[(header.getInt(SLOT_LIMIT_AT) + CHUNK_SLOTS - 1) / CHUNK_SLOTS];
+                for (int chunk = 0; chunk < chunks.length; chunk++)
+                    chunks[chunk] = mapChunk(channel, fileCapacity, chunk);
+            }
+            return new Mapping(channel, header, index, chunks, fileCapacity, recovered);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sizes a new, empty file and writes its header.
+     */
+    private static void create(FileChannel channel, int capacity)
+            throws IOException {
+        if (capacity <= 0 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+        int rounded = (capacity + CHUNK_SLOTS - 1) / CHUNK_SLOTS * CHUNK_SLOTS;
+        channel.write(ByteBuffer.allocate(1), length(rounded) - 1);
+
+        MappedByteBuffer header = map(channel, 0, HEADER_BYTES);
+        header.putInt(MAGIC_AT, MAGIC);
+        header.putInt(VERSION_AT, VERSION);
+        header.putInt(SLOT_BYTES_AT, SLOT_BYTES);
+        header.putInt(CAPACITY_AT, rounded);
+        header.putInt(INDEX_ENTRIES_AT, indexEntries(rounded));
+        header.putInt(SIZE_AT, 0);
+        header.putInt(SLOT_LIMIT_AT, 0);
+        header.putInt(FREE_HEAD_AT, NO_SLOT);
+        header.putInt(INDEX_USED_AT, 0);
+        header.putInt(CLEAN_AT, 1);
+        header.force();
+    }
+
+    /**
+     * Scans every record of a file that was not closed cleanly, clearing any
+     * record left part-written or never published, and rebuilds the counts
+     * and free list in the header. The index is cleared for the constructor to
+     * rebuild.
+     *
+     * @return the record chunks in use
+     */
+    private static ByteBuffer[] recover(FileChannel channel, MappedByteBuffer header, MappedByteBuffer index,
+            int capacity)
+            throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[capacity / CHUNK_SLOTS];
+        int size = 0;
+        int slotLimit = 0;
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = mapChunk(channel, capacity, chunk);
+            for (int i = 0; i < CHUNK_SLOTS; i++) {
+                if (isPublished(chunks[chunk], i)) {
+                    size++;
+                    slotLimit = chunk * CHUNK_SLOTS + i + 1;
+                }
+            }
+        }
+        int freeHead = NO_SLOT;
+        for (int slot = slotLimit - 1; slot >= 0; slot--) {
+            ByteBuffer chunk = chunks[slot / CHUNK_SLOTS];
+            if (!isPublished(chunk, slot)) {
+                free(chunk, slot, freeHead);
+                freeHead = slot;
+            }
+        }
+        for (int slot = slotLimit; slot < capacity; slot++)
+            if (!isClear(chunks[slot / CHUNK_SLOTS], slot))
+                free(chunks[slot / CHUNK_SLOTS], slot, NO_SLOT);
+        for (int offset = 0; offset < index.capacity(); offset += Long.BYTES)
+            index.putLong(offset, 0);
+
+        header.putInt(SIZE_AT, size);
+        header.putInt(SLOT_LIMIT_AT, slotLimit);
+        header.putInt(FREE_HEAD_AT, freeHead);
+        header.putInt(INDEX_USED_AT, size);
+        return Arrays.copyOf(chunks, (slotLimit + CHUNK_SLOTS - 1) / CHUNK_SLOTS);
+    }
+
+    /**
+     * Computes the index size for a capacity: the smallest power of two that
+     * keeps the index less than three-eighths full when the file is full.
+     */
+    private static int indexEntries(int capacity) {
+        int entries = MIN_INDEX_ENTRIES;
+        while ((long) capacity * 8 >= (long) entries * 3)
+            entries *= 2;
+        return entries;
+    }
+
+    private static long length(int capacity) {
+        return HEADER_BYTES + (long) indexEntries(capacity) * Integer.BYTES + (long) capacity * SLOT_BYTES;
+    }
+
+    private static MappedByteBuffer mapChunk(FileChannel channel, int capacity, int chunk)
+            throws IOException {
+        long records = HEADER_BYTES + (long) indexEntries(capacity) * Integer.BYTES;
+        return map(channel, records + (long) chunk * CHUNK_BYTES, CHUNK_BYTES);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size)
+            throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the file is full
+     */
+    @Override
+    ByteBuffer newChunk(int chunk) {
+        if ((long) (chunk + 1) * CHUNK_SLOTS > capacity)
+            throw new IllegalStateException("Mapped account file is full");
+        try {
+            return mapChunk(channel, capacity, chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Clears the file's index for it to be rebuilt in place. The index never
+     * needs to grow, since it is sized for a full file.
+     */
+    @Override
+    ByteBuffer newIndex(int entries) {
+        if (entries * Integer.BYTES != index.capacity())
+            throw new IllegalStateException("Mapped account file is full");
+        for (int offset = 0; offset < index.capacity(); offset += Long.BYTES)
+            index.putLong(offset, 0);
+        return index;
+    }
+
+    @Override
+    void countsChanged() {
+        header.putInt(SIZE_AT, size());
+        header.putInt(SLOT_LIMIT_AT, slotLimit());
+        header.putInt(FREE_HEAD_AT, freeHead());
+        header.putInt(INDEX_USED_AT, indexUsed());
+    }
+
+    /**
+     * Retrieves the number of accounts the file can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Forces every update made so far to disk. Updates made while this runs
+     * may or may not be included.
+     *
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public void force() {
+        for (ByteBuffer chunk : chunks())
+            ((MappedByteBuffer) chunk).force();
+        index.force();
+        header.force();
+    }
+
+    /**
+     * Forces every update to disk, marks the file as closed cleanly and closes
+     * it. The store must not be used afterwards.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close()
+            throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (forcer != null) {
+            forcer.shutdown();
+            try {
+                forcer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            force();
+            header.putInt(CLEAN_AT, 1);
+            header.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package bank.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link SlotAccountStore} that keeps its accounts, and the index used to
+ * find them, in direct memory outside the Java heap.
+ * <p>
+ * Each account is a fixed-size record of {@value #SLOT_BYTES} bytes holding
+ * its balance, loan balance and the UTF-8 bytes of its account holder's name,
+ * which may be at most {@value #MAX_HOLDER_BYTES} bytes long. Records are
+ * allocated in chunks, and the index is an open-addressing hash table of slot
+ * numbers in a direct buffer of its own. The heap therefore holds a few dozen
+ * objects however many accounts are stored, and the garbage collector has
+ * nothing per account to trace.
+ * </p>
+ * <p>
+ * As in {@link ColumnarAccountStore}, account holders are found without taking
+ * a lock unless an insert or removal is in progress.
+ * </p>
+ */
+public final class OffHeapAccountStore extends FixedSlotAccountStore {
+
+    /**
+     * Constructs an empty store.
+     */
+    public OffHeapAccountStore() {
+        super(new ByteBuffer[0], allocate(MIN_INDEX_SIZE * Integer.BYTES), 0, 0, NO_SLOT, 0);
+    }
+
+    @Override
+    ByteBuffer newChunk(int chunk) {
+        return allocate(CHUNK_BYTES);
+    }
+
+    @Override
+    ByteBuffer newIndex(int entries) {
+        return allocate(entries * Integer.BYTES);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+}
@@ -0,0 +1,465 @@
+package bank.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Holds accounts as records in numbered slots rather than as separate
+ * {@link bank.Account} objects.
+ * <p>
+ * Each account holder is given a dense slot number when the account is
+ * inserted, and the account's balance and loan balance are read and written by
+ * slot. Slots freed by {@link #remove(int)} are reused by later inserts, so
+ * callers that looked up a slot must check under its lock that it still holds
+ * the same account holder before using it. Each removal also advances the
+ * slot's {@link #generation(int)}, so a caller that kept the generation can
+ * tell a slot given to a new account, even for the same account holder, from
+ * the one it looked up.
+ * </p>
+ * <p>
+ * Slots are guarded by a fixed set of striped locks, returned by
+ * {@link #lock(int)}. A caller must hold the lock of a slot while it reads or
+ * writes the slot's balances or removes it. When locking two slots, callers
+ * take the locks in increasing {@link #lockIndex(int)} order, and only once if
+ * both slots share a lock. Finding an account holder needs no slot lock, and
+ * {@link #insert(String, long, long)} takes the new slot's lock itself.
+ * </p>
+ * <p>
+ * A single slot can also be read without its lock. A writer brackets each
+ * change to a slot's balances with {@link #beginChange(int)} and
+ * {@link #endChange(int)}, which make the slot's version odd and then even
+ * again, as in a seqlock. A reader takes the version with
+ * {@link #readVersion(int)}, reads the balances, and keeps them only if
+ * {@link #validate(int, int)} finds the version even and unchanged.
+ * </p>
+ * <p>
+ * Whole-book sweeps, such as {@link #totalBalance()}, run straight through the
+ * storage in slot order without taking the slot locks. They are exact while
+ * no writer is active; run alongside writers, they see each slot at some
+ * point during the sweep.
+ * </p>
+ * <p>
+ * All amounts are in cents.
+ * </p>
+ */
+public abstract class SlotAccountStore {
+
+    /**
+     * The slot number returned when there is no matching slot.
+     */
+    public static final int NO_SLOT = -1;
+
+    private static final int LOCK_STRIPES = 1 << 10;
+    private static final int GENERATION_CHUNK_BITS = 12;
+    private static final int GENERATION_CHUNK_MASK = (1 << GENERATION_CHUNK_BITS) - 1;
+    private static final VarHandle VERSION = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Receives the accounts visited by
+     * {@link SlotAccountStore#forEach(SlotVisitor)}.
+     */
+    @FunctionalInterface
+    public interface SlotVisitor {
+
+        /**
+         * Visits an account.
+         *
+         * @param slot          the account's slot
+         * @param accountHolder the account holder
+         * @param balance       the account balance, in cents
+         * @param loanBalance   the loan balance, in cents
+         */
+        void visit(int slot, String accountHolder, long balance, long loanBalance);
+    }
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * The generation of each slot, in chunks created when a slot in them is
+     * first removed. The array is copied, under {@link #chunkLock}, to
+     * add a chunk; each count is changed under its slot's lock.
+     */
+    private volatile int[][] generations = new int[0][];
+
+    /**
+     * Whether each slot's account is unchanged since it was last written to a
+     * snapshot, in chunks created when a slot in them is first marked clean,
+     * so a slot starts out changed. Chunks are added like
+     * {@link #generations}, and each flag is changed under its slot's lock.
+     */
+    private volatile boolean[][] cleanSlots = new boolean[0][];
+
+    /**
+     * The version of each slot's balances, in chunks created when a slot in
+     * them is first changed, so an unchanged slot is at version zero. Chunks
+     * are added like {@link #generations}; each version is written under its
+     * slot's lock, with ordered writes, and read without it.
+     */
+    private volatile int[][] versions = new int[0][];
+    private final Object chunkLock = new Object();
+
+    /**
+     * Constructs a store with its striped slot locks.
+     */
+    protected SlotAccountStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * Finds the slot of an account holder.
+     *
+     * @param accountHolder the account holder's name
+     * @return the slot, or {@link #NO_SLOT} if the account holder has no account
+     */
+    public abstract int find(String accountHolder);
+
+    /**
+     * Inserts an account into a free slot.
+     *
+     * @param accountHolder the account holder's name
+     * @param balance       the initial balance, in cents
+     * @param loanBalance   the initial loan balance, in cents
+     * @return the slot, or {@link #NO_SLOT} if the account holder already has an
+     *         account
+     */
+    public int insert(String accountHolder, long balance, long loanBalance) {
+        if (find(accountHolder) != NO_SLOT)
+            return NO_SLOT;
+        int slot = allocate(accountHolder, balance, loanBalance);
+        synchronized (lock(slot)) {
+            return publish(slot) ? slot : NO_SLOT;
+        }
+    }
+
+    /**
+     * Writes an account into a free slot without making it visible to
+     * {@link #find(String)}, so that the caller can take the slot's lock before
+     * publishing it with {@link #publish(int)}. Whole-book sweeps may already
+     * see the account.
+     *
+     * @param accountHolder the account holder's name
+     * @param balance       the initial balance, in cents
+     * @param loanBalance   the initial loan balance, in cents
+     * @return the slot
+     */
+    public abstract int allocate(String accountHolder, long balance, long loanBalance);
+
+    /**
+     * Makes an account written by {@link #allocate(String, long, long)} visible
+     * to {@link #find(String)}, unless its account holder already has an
+     * account, in which case the slot is freed. The caller must hold the
+     * slot's lock.
+     *
+     * @param slot the allocated slot
+     * @return {@code true} if the account was published, {@code false} if the
+     *         account holder already has an account
+     */
+    public abstract boolean publish(int slot);
+
+    /**
+     * Removes the account in a slot, freeing the slot for reuse and advancing
+     * its generation. The caller must hold the slot's lock.
+     *
+     * @param slot the slot to free
+     */
+    public abstract void remove(int slot);
+
+    /**
+     * Retrieves the number of times the account in a slot has been removed.
+     * The caller must hold the slot's lock.
+     *
+     * @param slot the slot
+     * @return the slot's generation
+     */
+    public final int generation(int slot) {
+        int[][] chunks = generations;
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        if (chunk >= chunks.length || chunks[chunk] == null)
+            return 0;
+        return chunks[chunk][slot & GENERATION_CHUNK_MASK];
+    }
+
+    /**
+     * Advances a slot's generation and marks the slot changed, so the next
+     * account given the slot is written by the next checkpoint.
+     * Implementations call this from {@link #remove(int)} whenever a slot
+     * holding an account is freed, while the caller holds the slot's lock.
+     *
+     * @param slot the slot being freed
+     */
+    protected final void retire(int slot) {
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        int[][] chunks = generations;
+        if (chunk >= chunks.length || chunks[chunk] == null) {
+            synchronized (chunkLock) {
+                chunks = generations;
+                if (chunk >= chunks.length || chunks[chunk] == null) {
+                    chunks = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+                    chunks[chunk] = new int[1 << GENERATION_CHUNK_BITS];
+                    generations = chunks;
+                }
+            }
+        }
+        chunks[chunk][slot & GENERATION_CHUNK_MASK]++;
+        markDirty(slot);
+    }
+
+    /**
+     * Checks whether the account in a slot has changed since the slot was last
+     * marked clean. An account starts out changed, and so does every account
+     * later given a slot that was freed. The caller must hold the slot's lock.
+     *
+     * @param slot the slot
+     * @return {@code true} if the account has changed
+     */
+    public final boolean isDirty(int slot) {
+        boolean[][] chunks = cleanSlots;
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        return chunk >= chunks.length || chunks[chunk] == null || !chunks[chunk][slot & GENERATION_CHUNK_MASK];
+    }
+
+    /**
+     * Records that the account in a slot has changed. Callers that change a
+     * slot's balances call this while they still hold the slot's lock.
+     *
+     * @param slot the slot
+     */
+    public final void markDirty(int slot) {
+        boolean[][] chunks = cleanSlots;
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        if (chunk < chunks.length && chunks[chunk] != null)
+            chunks[chunk][slot & GENERATION_CHUNK_MASK] = false;
+    }
+
+    /**
+     * Records that the account in a slot is unchanged, once it has been
+     * written to or loaded from a snapshot. The caller must hold the slot's
+     * lock.
+     *
+     * @param slot the slot
+     */
+    public final void markClean(int slot) {
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        boolean[][] chunks = cleanSlots;
+        if (chunk >= chunks.length || chunks[chunk] == null) {
+            synchronized (chunkLock) {
+                chunks = cleanSlots;
+                if (chunk >= chunks.length || chunks[chunk] == null) {
+                    chunks = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+                    chunks[chunk] = new boolean[1 << GENERATION_CHUNK_BITS];
+                    cleanSlots = chunks;
+                }
+            }
+        }
+        chunks[chunk][slot & GENERATION_CHUNK_MASK] = true;
+    }
+
+    /**
+     * Marks a slot's balances as being changed, before the first write to them.
+     * The caller must hold the slot's lock and call {@link #endChange(int)}
+     * once the balances are written.
+     *
+     * @param slot the slot about to be changed
+     */
+    public final void beginChange(int slot) {
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        int[][] chunks = versions;
+        if (chunk >= chunks.length || chunks[chunk] == null) {
+            synchronized (chunkLock) {
+                chunks = versions;
+                if (chunk >= chunks.length || chunks[chunk] == null) {
+                    chunks = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+                    chunks[chunk] = new int[1 << GENERATION_CHUNK_BITS];
+                    versions = chunks;
+                }
+            }
+        }
+        int index = slot & GENERATION_CHUNK_MASK;
+        VERSION.setOpaque(chunks[chunk], index, chunks[chunk][index] + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Marks a change begun with {@link #beginChange(int)} as complete. The
+     * caller must hold the slot's lock.
+     *
+     * @param slot the slot that was changed
+     */
+    public final void endChange(int slot) {
+        int[] chunk = versions[slot >>> GENERATION_CHUNK_BITS];
+        int index = slot & GENERATION_CHUNK_MASK;
+        VERSION.setRelease(chunk, index, chunk[index] + 1);
+    }
+
+    /**
+     * Reads a slot's version without its lock, ordered before any later reads
+     * of its balances. The version is odd while the balances are being
+     * changed.
+     *
+     * @param slot the slot
+     * @return the slot's version
+     */
+    public final int readVersion(int slot) {
+        int[][] chunks = versions;
+        int chunk = slot >>> GENERATION_CHUNK_BITS;
+        if (chunk >= chunks.length || chunks[chunk] == null)
+            return 0;
+        return (int) VERSION.getAcquire(chunks[chunk], slot & GENERATION_CHUNK_MASK);
+    }
+
+    /**
+     * Checks that the balances read from a slot since {@link #readVersion(int)}
+     * returned a version were not changed while they were read.
+     *
+     * @param slot    the slot
+     * @param version the version read before the balances
+     * @return {@code true} if the version was even and is unchanged, so the
+     *         balances read are consistent
+     */
+    public final boolean validate(int slot, int version) {
+        VarHandle.loadLoadFence();
+        return (version & 1) == 0 && readVersion(slot) == version;
+    }
+
+    /**
+     * Retrieves the account holder in a slot.
+     *
+     * @param slot the slot
+     * @return the account holder, or {@code null} if the slot is free
+     */
+    public abstract String getAccountHolder(int slot);
+
+    /**
+     * Checks whether a slot holds the specified account holder, which callers
+     * use to confirm a slot found earlier once they hold its lock.
+     *
+     * @param slot          the slot
+     * @param accountHolder the account holder's name
+     * @return {@code true} if the slot holds the account holder
+     */
+    public boolean holds(int slot, String accountHolder) {
+        return accountHolder.equals(getAccountHolder(slot));
+    }
+
+    /**
+     * Checks whether a slot holds an account that has been published, as
+     * opposed to a free slot or one still between
+     * {@link #allocate(String, long, long)} and {@link #publish(int)}. The
+     * answer only stays true while the caller holds the slot's lock.
+     *
+     * @param slot the slot
+     * @return {@code true} if the slot holds a published account
+     */
+    public boolean isPublished(int slot) {
+        String accountHolder = getAccountHolder(slot);
+        return accountHolder != null && find(accountHolder) == slot;
+    }
+
+    /**
+     * Retrieves the balance in a slot. The caller must hold the slot's lock.
+     *
+     * @param slot the slot
+     * @return the balance, in cents
+     */
+    public abstract long getBalance(int slot);
+
+    /**
+     * Sets the balance in a slot. The caller must hold the slot's lock.
+     *
+     * @param slot    the slot
+     * @param balance the new balance, in cents
+     */
+    public abstract void setBalance(int slot, long balance);
+
+    /**
+     * Retrieves the loan balance in a slot. The caller must hold the slot's
+     * lock.
+     *
+     * @param slot the slot
+     * @return the loan balance, in cents
+     */
+    public abstract long getLoanBalance(int slot);
+
+    /**
+     * Sets the loan balance in a slot. The caller must hold the slot's lock.
+     *
+     * @param slot        the slot
+     * @param loanBalance the new loan balance, in cents
+     */
+    public abstract void setLoanBalance(int slot, long loanBalance);
+
+    /**
+     * Retrieves the number of accounts held.
+     *
+     * @return the number of accounts
+     */
+    public abstract int size();
+
+    /**
+     * Retrieves one more than the highest slot that has ever been used, which
+     * bounds the slots a sweep has to visit.
+     *
+     * @return the slot limit
+     */
+    public abstract int slotLimit();
+
+    /**
+     * Retrieves the lock guarding a slot.
+     *
+     * @param slot the slot
+     * @return the lock to synchronize on
+     */
+    public final Object lock(int slot) {
+        return locks[lockIndex(slot)];
+    }
+
+    /**
+     * Retrieves the position of a slot's lock in the order locks are taken.
+     *
+     * @param slot the slot
+     * @return the lock's index
+     */
+    public final int lockIndex(int slot) {
+        return slot & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Sums the balances of every account in a single sweep.
+     *
+     * @return the total balance, in cents
+     */
+    public long totalBalance() {
+        long total = 0;
+        for (int slot = 0, limit = slotLimit(); slot < limit; slot++)
+            total += getBalance(slot);
+        return total;
+    }
+
+    /**
+     * Sums the loan balances of every account in a single sweep.
+     *
+     * @return the total loan balance, in cents
+     */
+    public long totalLoanBalance() {
+        long total = 0;
+        for (int slot = 0, limit = slotLimit(); slot < limit; slot++)
+            total += getLoanBalance(slot);
+        return total;
+    }
+
+    /**
+     * Visits every account in slot order.
+     *
+     * @param visitor the visitor to pass each account to
+     */
+    public void forEach(SlotVisitor visitor) {
+        for (int slot = 0, limit = slotLimit(); slot < limit; slot++) {
+            String accountHolder = getAccountHolder(slot);
+            if (accountHolder != null)
+                visitor.visit(slot, accountHolder, getBalance(slot), getLoanBalance(slot));
+        }
+    }
+
+}
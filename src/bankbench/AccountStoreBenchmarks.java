@@ -0,0 +1,107 @@
+package bankbench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.Account;
+import bank.AccountCursor;
+import bank.AccountStore;
+import bank.Bank;
+import bank.OperationResult;
+import bank.store.ColumnarAccountStore;
+import bank.store.MappedAccountStore;
+import bank.store.OffHeapAccountStore;
+
+/**
+ * Compares a bank over each {@link AccountStore} backend: a hash table, a
+ * sorted table, a {@link ColumnarAccountStore}, an {@link OffHeapAccountStore}
+ * and a {@link MappedAccountStore}. For each account count in
+ * {@code bench.accounts} and thread count in {@code bench.threads}, this
+ * measures balance lookups, deposits and transfers between random accounts,
+ * and a sweep over every account, both through the copy returned by
+ * {@link Bank#getAccounts()} and through an {@link AccountCursor}.
+ * <p>
+ * Backend names may be given as arguments to run a subset. The mapped store's
+ * file is created in the directory given by the {@code bench.mappedDir} system
+ * property, which defaults to the system temporary directory, and the
+ * off-heap store needs {@code -XX:MaxDirectMemorySize} to be at least
+ * {@value OffHeapAccountStore#SLOT_BYTES} bytes per account, plus the index.
+ * </p>
+ */
+public class AccountStoreBenchmarks {
+
+    private static final List<String> BACKENDS = List.of("hashed", "sorted", "columnar", "offheap", "mapped");
+
+    public static void main(String[] args)
+            throws Exception {
+        List<String> backends = args.length == 0 ? BACKENDS : List.of(args);
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1," + Runtime.getRuntime().availableProcessors());
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000,1000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+            for (String backend : backends) {
+                Path file = Path.of(System.getProperty("bench.mappedDir", System.getProperty("java.io.tmpdir")))
+                        .resolve("bench-store-" + accounts + ".mapped");
+                Files.deleteIfExists(file);
+                MappedAccountStore mapped = backend.equals("mapped") ? new MappedAccountStore(file, accounts) : null;
+                try {
+                    run(backend, BankBenchmarks.populatedBank(holders, createStore(backend, mapped)), holders,
+                            threadCounts);
+                } finally {
+                    if (mapped != null)
+                        mapped.close();
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void run(String backend, Bank bank, String[] holders, int[] threadCounts)
+            throws Exception {
+        String suffix = " " + backend + " accounts=" + holders.length;
+        for (int threads : threadCounts) {
+            BenchmarkRunner.run("getAccountBalance" + suffix, threads, (thread, iteration) -> bank
+                    .getAccountBalanceCents(BankBenchmarks.randomHolder(holders)));
+            BenchmarkRunner.run("deposit" + suffix, threads, (thread, iteration) -> {
+                if (bank.tryDeposit(BankBenchmarks.randomHolder(holders), 1) != OperationResult.OK)
+                    throw new IllegalStateException("Deposit declined");
+            });
+            BenchmarkRunner.run("transfer" + suffix, threads, (thread, iteration) -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                String from = holders[random.nextInt(holders.length)];
+                String to = holders[random.nextInt(holders.length)];
+                if (bank.tryTransfer(from, to, 1) != OperationResult.OK)
+                    throw new IllegalStateException("Transfer declined");
+            });
+        }
+        BenchmarkRunner.run("sweep" + suffix, 1, holders.length, (thread, iteration) -> {
+            long total = 0;
+            for (Account account : bank.getAccounts())
+                total += account.getAccountBalanceCents();
+            if (total <= 0)
+                throw new IllegalStateException("Sweep found no money");
+        });
+        BenchmarkRunner.run("cursor sweep" + suffix, 1, holders.length, (thread, iteration) -> {
+            long total = 0;
+            AccountCursor cursor = bank.accountCursor();
+            while (cursor.next())
+                total += cursor.getBalanceCents();
+            if (total <= 0)
+                throw new IllegalStateException("Sweep found no money");
+        });
+    }
+
+    private static AccountStore createStore(String backend, MappedAccountStore mapped) {
+        return switch (backend) {
+            case "hashed" -> AccountStore.hashed();
+            case "sorted" -> AccountStore.sorted();
+            case "columnar" -> AccountStore.of(new ColumnarAccountStore());
+            case "offheap" -> AccountStore.of(new OffHeapAccountStore());
+            case "mapped" -> AccountStore.of(mapped);
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+    }
+
+}
@@ -0,0 +1,131 @@
+package bankbench;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.AccountStore;
+import bank.Bank;
+
+/**
+ * Benchmarks for the hot paths of {@link Bank}: deposits, withdrawals, loan
+ * approvals and repayments, account lookup, and account creation and removal.
+ * <p>
+ * Every benchmark is run for each combination of the account counts in the
+ * {@code bench.accounts} system property and the thread counts in the
+ * {@code bench.threads} system property. Operations pick a random account on
+ * each call. The benchmarks to run can be named on the command line; with no
+ * arguments all of them are run.
+ * </p>
+ */
+public class BankBenchmarks {
+
+    private static final double LIMIT = 1_000_000_000.0;
+    private static final double INITIAL_DEPOSIT = 1_000_000.0;
+    private static final double INITIAL_LOAN = 1_000_000.0;
+    private static final double AMOUNT = 0.01;
+
+    /**
+     * A benchmark scenario, created for a bank that has already been populated.
+     */
+    private interface Scenario {
+        BenchmarkRunner.Operation create(Bank bank, String[] holders) throws Exception;
+    }
+
+    private static final Map<String, Scenario> SCENARIOS = new LinkedHashMap<>();
+
+    static {
+        SCENARIOS.put("deposit", (bank, holders) -> (thread, iteration) -> bank.deposit(randomHolder(holders), AMOUNT));
+        SCENARIOS.put("withdraw", (bank, holders) -> (thread, iteration) -> bank.withdraw(randomHolder(holders), AMOUNT));
+        SCENARIOS.put("approveLoan",
+                (bank, holders) -> (thread, iteration) -> bank.approveLoan(randomHolder(holders), AMOUNT));
+        SCENARIOS.put("repayLoan", (bank, holders) -> {
+            for (String holder : holders)
+                bank.approveLoan(holder, INITIAL_LOAN);
+            return (thread, iteration) -> bank.repayLoan(randomHolder(holders), AMOUNT);
+        });
+        SCENARIOS.put("getAccount", (bank, holders) -> (thread, iteration) -> bank.getAccount(randomHolder(holders)));
+        SCENARIOS.put("addAccount+removeAccount", (bank, holders) -> (thread, iteration) -> {
+            String holder = "new-" + thread + "-" + iteration;
+            bank.addAccount(holder, INITIAL_DEPOSIT);
+            bank.removeAccount(holder);
+        });
+    }
+
+    public static void main(String[] args)
+            throws Exception {
+        List<String> selected = args.length == 0 ? List.copyOf(SCENARIOS.keySet()) : Arrays.asList(args);
+        int[] accountCounts = BenchmarkRunner.intList("bench.accounts", "1000,100000,1000000");
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1," + Runtime.getRuntime().availableProcessors());
+
+        for (String name : selected) {
+            Scenario scenario = SCENARIOS.get(name);
+            if (scenario == null)
+                throw new IllegalArgumentException("Unknown benchmark: " + name + ", expected one of "
+                        + SCENARIOS.keySet());
+            for (int accounts : accountCounts) {
+                for (int threads : threadCounts) {
+                    String[] holders = holders(accounts);
+                    Bank bank = populatedBank(holders);
+                    BenchmarkRunner.run(name + " accounts=" + accounts, threads, scenario.create(bank, holders));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the names of the specified number of account holders.
+     *
+     * @param count the number of account holders
+     * @return the names of the account holders
+     */
+    static String[] holders(int count) {
+        String[] holders = new String[count];
+        for (int i = 0; i < count; i++)
+            holders[i] = "holder-" + i;
+        return holders;
+    }
+
+    /**
+     * Creates a bank with generous limits and reserves holding an account for
+     * each of the specified account holders.
+     *
+     * @param holders the account holders
+     * @return the populated bank
+     */
+    static Bank populatedBank(String[] holders)
+            throws Exception {
+        return populatedBank(holders, AccountStore.hashed());
+    }
+
+    /**
+     * Creates a bank over the specified store, with generous limits and
+     * reserves, holding an account for each of the specified account holders.
+     *
+     * @param holders  the account holders
+     * @param accounts the empty store to hold the accounts in
+     * @return the populated bank
+     */
+    static Bank populatedBank(String[] holders, AccountStore accounts)
+            throws Exception {
+        Bank bank = new Bank(LIMIT, LIMIT, LIMIT, accounts);
+        bank.addToReserves(LIMIT);
+        for (String holder : holders)
+            bank.addAccount(holder, INITIAL_DEPOSIT);
+        return bank;
+    }
+
+    /**
+     * Picks a random account holder.
+     *
+     * @param holders the account holders to pick from
+     * @return the chosen account holder
+     */
+    static String randomHolder(String[] holders) {
+        return holders[ThreadLocalRandom.current().nextInt(holders.length)];
+    }
+
+}
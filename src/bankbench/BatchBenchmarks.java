@@ -0,0 +1,48 @@
+package bankbench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+
+/**
+ * Compares bulk ingest of deposits through {@link Bank#applyBatch(List)} with
+ * the same deposits made one call at a time through
+ * {@link Bank#tryDeposit(String, long)}. Throughput is reported in deposits
+ * per second for both.
+ * <p>
+ * The batch size is read from the {@code bench.batchSize} system property.
+ * </p>
+ */
+public class BatchBenchmarks {
+
+    private static final int BATCH_SIZE = Integer.getInteger("bench.batchSize", 1_000);
+
+    public static void main(String[] args)
+            throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000,1000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            List<List<Operation>> batches = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                List<Operation> batch = new ArrayList<>();
+                for (int i = 0; i < BATCH_SIZE; i++)
+                    batch.add(Operation.deposit(BankBenchmarks.randomHolder(holders), 1));
+                batches.add(batch);
+            }
+
+            BenchmarkRunner.run("tryDeposit per call accounts=" + accounts, threads, BATCH_SIZE,
+                    (thread, iteration) -> {
+                        for (Operation operation : batches.get(thread))
+                            if (bank.tryDeposit(operation.getAccountHolder(), operation.getAmount()) != OperationResult.OK)
+                                throw new IllegalStateException("Deposit declined");
+                    });
+            BenchmarkRunner.run("applyBatch accounts=" + accounts, threads, BATCH_SIZE,
+                    (thread, iteration) -> bank.applyBatch(batches.get(thread)));
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package bankbench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a benchmark operation on a number of threads and reports its throughput,
+ * latency percentiles and allocation rate.
+ * <p>
+ * Each run has a warm-up phase, whose results are discarded, followed by a
+ * measurement phase. The length of each phase is read from the
+ * {@code bench.warmupMillis} and {@code bench.measureMillis} system
+ * properties. Latency is sampled on every sixteenth operation, and allocation
+ * is measured per thread through the HotSpot thread MX bean.
+ * </p>
+ */
+public final class BenchmarkRunner {
+
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 1_000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 2_000);
+
+    private static final int SAMPLE_MASK = 15;
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private static final int WARMUP = 0;
+    private static final int MEASURE = 1;
+    private static final int STOP = 2;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * A single benchmarked operation.
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @param thread    the index of the calling thread
+         * @param iteration the number of operations the calling thread has run
+         *                  before this one
+         * @throws Exception if the operation fails, which aborts the benchmark
+         */
+        void run(int thread, long iteration) throws Exception;
+    }
+
+    /**
+     * The measurements taken by one benchmark run.
+     *
+     * @param name         the name of the benchmark
+     * @param threads      the number of threads that ran the operation
+     * @param operations   the number of operations, or items, run while measuring
+     * @param opsPerSecond the combined throughput of all threads
+     * @param p50          the median latency, in nanoseconds
+     * @param p99          the 99th percentile latency, in nanoseconds
+     * @param p999         the 99.9th percentile latency, in nanoseconds
+     * @param bytesPerOp   the number of bytes allocated per operation
+     */
+    public record Result(String name, int threads, long operations, double opsPerSecond,
+            long p50, long p99, long p999, double bytesPerOp) {
+
+        @Override
+        public String toString() {
+            return String.format("%-48s %3d threads %,16.0f ops/s  p50 %,8d ns  p99 %,8d ns  p99.9 %,9d ns  %8.1f B/op",
+                    name, threads, opsPerSecond, p50, p99, p999, bytesPerOp);
+        }
+    }
+
+    /**
+     * State recorded by each benchmark thread.
+     */
+    private static final class Worker extends Thread {
+        private final int index;
+        private final Operation operation;
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int sampleCount;
+        private long operations;
+        private long allocatedBytes;
+        private Exception failure;
+
+        Worker(int index, Operation operation) {
+            this.index = index;
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long iteration = 0;
+                while (phase == WARMUP)
+                    operation.run(index, iteration++);
+                long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId());
+                while (phase == MEASURE) {
+                    if ((iteration & SAMPLE_MASK) == 0 && sampleCount < MAX_SAMPLES) {
+                        long start = System.nanoTime();
+                        operation.run(index, iteration);
+                        samples[sampleCount++] = System.nanoTime() - start;
+                    } else {
+                        operation.run(index, iteration);
+                    }
+                    iteration++;
+                    operations++;
+                }
+                allocatedBytes = THREADS.getThreadAllocatedBytes(threadId()) - allocatedBefore;
+            } catch (Exception e) {
+                failure = e;
+                phase = STOP;
+            }
+        }
+    }
+
+    private static volatile int phase;
+
+    /**
+     * Runs an operation on the specified number of threads.
+     *
+     * @param name      the name to report the benchmark under
+     * @param threads   the number of threads to run the operation on
+     * @param operation the operation to run
+     * @return the measurements taken
+     * @throws Exception if the operation failed on any thread
+     */
+    public static Result run(String name, int threads, Operation operation)
+            throws Exception {
+        return run(name, threads, 1, operation);
+    }
+
+    /**
+     * Runs an operation that processes several items per call, such as a batch,
+     * on the specified number of threads. Throughput and allocation are reported
+     * per item, and latency per call.
+     *
+     * @param name              the name to report the benchmark under
+     * @param threads           the number of threads to run the operation on
+     * @param itemsPerOperation the number of items processed by each call
+     * @param operation         the operation to run
+     * @return the measurements taken
+     * @throws Exception if the operation failed on any thread
+     */
+    public static Result run(String name, int threads, int itemsPerOperation, Operation operation)
+            throws Exception {
+        phase = WARMUP;
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+            workers.add(new Worker(i, operation));
+        for (Worker worker : workers)
+            worker.start();
+
+        Thread.sleep(WARMUP_MILLIS);
+        long start = System.nanoTime();
+        phase = MEASURE;
+        Thread.sleep(MEASURE_MILLIS);
+        phase = STOP;
+        long elapsed = System.nanoTime() - start;
+
+        long operations = 0;
+        long allocatedBytes = 0;
+        int sampleCount = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            if (worker.failure != null)
+                throw worker.failure;
+            operations += worker.operations * itemsPerOperation;
+            allocatedBytes += worker.allocatedBytes;
+            sampleCount += worker.sampleCount;
+        }
+
+        long[] samples = new long[sampleCount];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.samples, 0, samples, offset, worker.sampleCount);
+            offset += worker.sampleCount;
+        }
+        Arrays.sort(samples);
+
+        Result result = new Result(name, threads, operations, operations * 1e9 / elapsed,
+                percentile(samples, 0.50), percentile(samples, 0.99), percentile(samples, 0.999),
+                operations == 0 ? 0 : (double) allocatedBytes / operations);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    /**
+     * Parses a comma separated list of integers from a system property.
+     *
+     * @param property     the name of the system property
+     * @param defaultValue the value to use if the property is not set
+     * @return the parsed integers
+     */
+    public static int[] intList(String property, String defaultValue) {
+        return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+}
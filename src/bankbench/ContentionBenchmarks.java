@@ -0,0 +1,149 @@
+package bankbench;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import bank.Account;
+import bank.Bank;
+import bank.OperationResult;
+import bank.exceptions.InsufficientFundsException;
+
+/**
+ * Measures deposits and withdrawals on a single hot account hammered by every
+ * thread, comparing the compare-and-set updates of {@link Account} with the
+ * same balance guarded by a {@code synchronized} block and by a
+ * {@link ReentrantLock}, and with {@link Bank#tryDeposit(String, long)} and
+ * {@link Bank#tryWithdraw(String, long)} on one account, for each thread count
+ * in {@code -Dbench.threads}.
+ * <p>
+ * Each thread alternates a deposit of one cent with a checked withdrawal of
+ * one cent, so every withdrawal must validate the balance it reduces.
+ * </p>
+ */
+public class ContentionBenchmarks {
+
+    private static final long INITIAL = 1_000_000_000L;
+
+    /**
+     * A balance guarded by its own monitor.
+     */
+    private static final class SynchronizedBalance {
+
+        private long balance = INITIAL;
+
+        synchronized void deposit(long amount) {
+            balance += amount;
+        }
+
+        synchronized boolean tryWithdraw(long amount) {
+            if (balance < amount)
+                return false;
+            balance -= amount;
+            return true;
+        }
+
+        synchronized long get() {
+            return balance;
+        }
+    }
+
+    /**
+     * A balance guarded by a {@link ReentrantLock}.
+     */
+    private static final class LockedBalance {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private long balance = INITIAL;
+
+        void deposit(long amount) {
+            lock.lock();
+            try {
+                balance += amount;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean tryWithdraw(long amount) {
+            lock.lock();
+            try {
+                if (balance < amount)
+                    return false;
+                balance -= amount;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long get() {
+            lock.lock();
+            try {
+                return balance;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args)
+            throws Exception {
+        for (int threads : BenchmarkRunner.intList("bench.threads", "1,2,4,8,16")) {
+            Account account = new Account("Hot", 0);
+            account.depositCents(INITIAL);
+            BenchmarkRunner.Result result = BenchmarkRunner.run("account CAS", threads, (thread, iteration) -> {
+                if ((iteration & 1) == 0) {
+                    account.depositCents(1);
+                } else {
+                    try {
+                        account.withdrawCents(1);
+                    } catch (InsufficientFundsException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            check(result, account.getAccountBalanceCents());
+
+            SynchronizedBalance synchronizedBalance = new SynchronizedBalance();
+            result = BenchmarkRunner.run("synchronized", threads, (thread, iteration) -> {
+                if ((iteration & 1) == 0)
+                    synchronizedBalance.deposit(1);
+                else if (!synchronizedBalance.tryWithdraw(1))
+                    throw new IllegalStateException("Expected the withdrawal to be accepted");
+            });
+            check(result, synchronizedBalance.get());
+
+            LockedBalance lockedBalance = new LockedBalance();
+            result = BenchmarkRunner.run("ReentrantLock", threads, (thread, iteration) -> {
+                if ((iteration & 1) == 0)
+                    lockedBalance.deposit(1);
+                else if (!lockedBalance.tryWithdraw(1))
+                    throw new IllegalStateException("Expected the withdrawal to be accepted");
+            });
+            check(result, lockedBalance.get());
+
+            Bank bank = new Bank(INITIAL, INITIAL, INITIAL);
+            bank.addAccountCents("Hot", INITIAL);
+            bank.addToReservesCents(INITIAL);
+            result = BenchmarkRunner.run("bank one account", threads, (thread, iteration) -> {
+                OperationResult outcome = (iteration & 1) == 0
+                        ? bank.tryDeposit("Hot", 1)
+                        : bank.tryWithdraw("Hot", 1);
+                if (outcome != OperationResult.OK)
+                    throw new IllegalStateException("Expected " + outcome + " to be OK");
+            });
+            check(result, bank.getAccountBalanceCents("Hot"));
+        }
+    }
+
+    /**
+     * Checks that no update was lost: each thread's iterations alternate
+     * deposits and withdrawals, so the balance can only have grown by at most
+     * one cent per thread.
+     */
+    private static void check(BenchmarkRunner.Result result, long balance) {
+        if (balance < INITIAL || balance > INITIAL + result.threads())
+            throw new IllegalStateException(result.name() + ": balance " + balance + " is not " + INITIAL
+                    + " plus at most one cent per thread");
+    }
+
+}
@@ -0,0 +1,69 @@
+package bankbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+import bank.engine.BankEngine;
+
+/**
+ * Measures deposits and withdrawals on random accounts submitted to a
+ * {@link BankEngine}, against the same operations called directly on a
+ * {@link Bank}, for each account count in {@code bench.accounts} and
+ * submitting thread count in {@code bench.threads}.
+ * <p>
+ * Submissions do not wait for their results, so once the ring fills the
+ * submission rate is the rate at which the engine applies commands. The ring
+ * size is read from {@code bench.ringSize}. Each run checks afterwards that
+ * every command was applied and none was declined.
+ * </p>
+ */
+public class EngineBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        int ringSize = Integer.getInteger("bench.ringSize", 1 << 16);
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1," + Runtime.getRuntime().availableProcessors());
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000,1000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+            Operation[] deposits = new Operation[accounts];
+            Operation[] withdrawals = new Operation[accounts];
+            for (int i = 0; i < accounts; i++) {
+                deposits[i] = Operation.deposit(holders[i], 1);
+                withdrawals[i] = Operation.withdrawal(holders[i], 1);
+            }
+
+            for (int threads : threadCounts) {
+                Bank bank = BankBenchmarks.populatedBank(holders);
+                BenchmarkRunner.run("direct deposit/withdraw accounts=" + accounts, threads,
+                        (thread, iteration) -> {
+                            String holder = BankBenchmarks.randomHolder(holders);
+                            OperationResult result = (iteration & 1) == 0 ? bank.tryDeposit(holder, 1)
+                                    : bank.tryWithdraw(holder, 1);
+                            if (result != OperationResult.OK)
+                                throw new IllegalStateException("Operation declined: " + result);
+                        });
+
+                BankEngine engine = new BankEngine(bank, ringSize);
+                long before = engine.getAppliedCount();
+                long[] declined = new long[1];
+                BankEngine.ResultListener listener = (sequence, result) -> {
+                    if (result != OperationResult.OK)
+                        declined[0]++;
+                };
+                BenchmarkRunner.Result result = BenchmarkRunner.run("engine deposit/withdraw accounts=" + accounts,
+                        threads, (thread, iteration) -> {
+                            int account = ThreadLocalRandom.current().nextInt(accounts);
+                            engine.submit((iteration & 1) == 0 ? deposits[account] : withdrawals[account],
+                                    listener);
+                        });
+                engine.close();
+                if (declined[0] != 0 || engine.getAppliedCount() - before < result.operations())
+                    throw new IllegalStateException("Engine declined or lost commands");
+            }
+        }
+    }
+
+}
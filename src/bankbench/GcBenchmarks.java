@@ -0,0 +1,120 @@
+package bankbench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import bank.Bank;
+import bank.store.ColumnarAccountStore;
+import bank.store.OffHeapAccountStore;
+import bank.store.SlotAccountStore;
+
+/**
+ * Measures how the heap and garbage collection pauses grow with the number of
+ * accounts held by a bank's {@link bank.Account} objects, a
+ * {@link ColumnarAccountStore} and an {@link OffHeapAccountStore}, for each
+ * account count in {@code bench.accounts}.
+ * <p>
+ * For each store this reports the heap in use after a full collection, the
+ * length of that collection, and the number and longest pause of the
+ * collections run while random deposits are made, each of which builds its
+ * account holder's name as a request would. Store names may be given as
+ * arguments to run a subset. The off-heap store needs
+ * {@code -XX:MaxDirectMemorySize} to be at least
+ * {@value OffHeapAccountStore#SLOT_BYTES} bytes per account, plus the index.
+ * </p>
+ */
+public class GcBenchmarks {
+
+    private static final List<String> STORES = List.of("objects", "columnar", "offheap");
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final AtomicLong COLLECTIONS = new AtomicLong();
+    private static final AtomicLong LONGEST_PAUSE = new AtomicLong();
+
+    public static void main(String[] args)
+            throws Exception {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification.getUserData());
+                COLLECTIONS.incrementAndGet();
+                LONGEST_PAUSE.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+            }, null, null);
+
+        List<String> stores = args.length == 0 ? STORES : List.of(args);
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000000,10000000")) {
+            for (String store : stores)
+                measure(store, accounts);
+        }
+    }
+
+    /**
+     * Measures one store. The store is only reachable from this method, so it
+     * is collected before the next is measured.
+     */
+    private static void measure(String store, int accounts)
+            throws Exception {
+        Deposit deposit = populate(store, accounts);
+
+        long start = System.nanoTime();
+        long heap = usedHeap();
+        long fullCollection = System.nanoTime() - start;
+
+        COLLECTIONS.set(0);
+        LONGEST_PAUSE.set(0);
+        BenchmarkRunner.run(store + " deposit accounts=" + accounts, 1,
+                (thread, iteration) -> deposit.deposit("holder-" + ThreadLocalRandom.current().nextInt(accounts)));
+        System.out.printf("%-48s heap %,7d MB  full gc %,6d ms  collections %,5d  longest %,5d ms%n",
+                store + " accounts=" + accounts, heap >> 20, fullCollection / 1_000_000, COLLECTIONS.get(),
+                LONGEST_PAUSE.get());
+    }
+
+    /**
+     * Deposits one cent into an account.
+     */
+    private interface Deposit {
+        void deposit(String accountHolder) throws Exception;
+    }
+
+    /**
+     * Fills the named store with the specified number of accounts, each
+     * holding one dollar, and returns a deposit into it.
+     */
+    private static Deposit populate(String store, int accounts)
+            throws Exception {
+        if (store.equals("objects")) {
+            Bank bank = BankBenchmarks.populatedBank(BankBenchmarks.holders(accounts));
+            return accountHolder -> bank.depositCents(accountHolder, 1);
+        }
+        SlotAccountStore slots = switch (store) {
+            case "columnar" -> new ColumnarAccountStore();
+            case "offheap" -> new OffHeapAccountStore();
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        for (int i = 0; i < accounts; i++)
+            slots.insert("holder-" + i, 100, 0);
+        return accountHolder -> {
+            int slot = slots.find(accountHolder);
+            synchronized (slots.lock(slot)) {
+                slots.setBalance(slot, slots.getBalance(slot) + 1);
+            }
+        };
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+}
@@ -0,0 +1,89 @@
+package bankbench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.Bank;
+import bank.OperationResult;
+import bank.journal.Journal;
+import bank.journal.MutationLog;
+
+/**
+ * Measures journaled deposits under each {@link Journal.Durability} on
+ * increasing numbers of threads, against an unjournaled baseline, and the rate
+ * at which a journal of {@code bench.replayRecords} records is replayed.
+ * <p>
+ * The journal is written to a temporary file in the directory given by the
+ * {@code bench.journalDir} system property, which defaults to the system
+ * temporary directory; point it at the disk being measured.
+ * </p>
+ */
+public class JournalBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        int accounts = BenchmarkRunner.intList("bench.accounts", "1000")[0];
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1,4,16," + Runtime.getRuntime().availableProcessors());
+        Path directory = Path.of(System.getProperty("bench.journalDir", System.getProperty("java.io.tmpdir")));
+        String[] holders = BankBenchmarks.holders(accounts);
+
+        for (int threads : threadCounts) {
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            BenchmarkRunner.run("deposit unjournaled", threads, deposit(bank, holders));
+
+            for (Journal.Durability durability : Journal.Durability.values()) {
+                Path file = Files.createTempFile(directory, "bench", ".journal");
+                try (Journal journal = new Journal(file, durability)) {
+                    bank.setMutationLog(journal);
+                    BenchmarkRunner.run("deposit journal=" + durability, threads, deposit(bank, holders));
+                    bank.setMutationLog(MutationLog.NONE);
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        replay(directory, holders, Long.getLong("bench.replayRecords", 10_000_000));
+    }
+
+    /**
+     * Journals the specified number of deposits, then times replaying them into
+     * a fresh bank.
+     */
+    private static void replay(Path directory, String[] holders, long records)
+            throws Exception {
+        Path file = Files.createTempFile(directory, "bench", ".journal");
+        try {
+            Bank bank = new Bank(1e9, 1e9, 1e9);
+            try (Journal journal = new Journal(file, Journal.Durability.ASYNC)) {
+                bank.setMutationLog(journal);
+                for (String holder : holders)
+                    bank.addAccountCents(holder, 1);
+                for (long i = holders.length; i < records; i++)
+                    bank.tryDeposit(holders[(int) (i % holders.length)], 1);
+            }
+
+            long start = System.nanoTime();
+            Bank recovered = new Bank(1e9, 1e9, 1e9);
+            long replayed = recovered.replayJournal(file, 0);
+            long elapsed = System.nanoTime() - start;
+            if (recovered.getReservesCents() != bank.getReservesCents())
+                throw new IllegalStateException("Replay rebuilt different reserves");
+            System.out.printf("%-48s %,d records in %,d ms  %,16.0f records/s  %,d bytes%n", "replay",
+                    replayed, elapsed / 1_000_000, replayed * 1e9 / elapsed, Files.size(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static BenchmarkRunner.Operation deposit(Bank bank, String[] holders) {
+        return (thread, iteration) -> {
+            String holder = holders[ThreadLocalRandom.current().nextInt(holders.length)];
+            if (bank.tryDeposit(holder, 1) != OperationResult.OK)
+                throw new IllegalStateException("Deposit declined");
+        };
+    }
+
+}
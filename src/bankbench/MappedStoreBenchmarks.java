@@ -0,0 +1,65 @@
+package bankbench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.store.MappedAccountStore;
+
+/**
+ * Measures reopening a {@link MappedAccountStore} file that was closed cleanly,
+ * and random deposits into it, for each account count in
+ * {@code bench.accounts}.
+ * <p>
+ * The file is created in the directory given by the {@code bench.mappedDir}
+ * system property, which defaults to the system temporary directory. Each
+ * reopen is repeated {@code bench.repeats} times and the fastest is reported,
+ * along with the time of the first lookup after it.
+ * </p>
+ */
+public class MappedStoreBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        Path directory = Path.of(System.getProperty("bench.mappedDir", System.getProperty("java.io.tmpdir")));
+        int repeats = Integer.getInteger("bench.repeats", 3);
+
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000000,10000000")) {
+            Path file = directory.resolve("bench-" + accounts + ".mapped");
+            Files.deleteIfExists(file);
+            try {
+                try (MappedAccountStore store = new MappedAccountStore(file, accounts)) {
+                    for (int i = 0; i < accounts; i++)
+                        store.insert("holder-" + i, 100, 0);
+                }
+
+                long bestOpen = Long.MAX_VALUE;
+                long bestFind = Long.MAX_VALUE;
+                for (int i = 0; i < repeats; i++) {
+                    long start = System.nanoTime();
+                    try (MappedAccountStore store = new MappedAccountStore(file, accounts)) {
+                        long opened = System.nanoTime();
+                        if (store.find("holder-" + (accounts - 1)) == MappedAccountStore.NO_SLOT)
+                            throw new IllegalStateException("Account missing after reopen");
+                        bestFind = Math.min(bestFind, System.nanoTime() - opened);
+                        bestOpen = Math.min(bestOpen, opened - start);
+                    }
+                }
+                System.out.printf("%-48s open %,7d us  first find %,7d us  %,d bytes%n",
+                        "reopen accounts=" + accounts, bestOpen / 1_000, bestFind / 1_000, Files.size(file));
+
+                try (MappedAccountStore store = new MappedAccountStore(file, accounts)) {
+                    BenchmarkRunner.run("mapped deposit accounts=" + accounts, 1, (thread, iteration) -> {
+                        int slot = store.find("holder-" + ThreadLocalRandom.current().nextInt(accounts));
+                        synchronized (store.lock(slot)) {
+                            store.setBalance(slot, store.getBalance(slot) + 1);
+                        }
+                    });
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+}
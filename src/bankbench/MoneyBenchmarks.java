@@ -0,0 +1,43 @@
+package bankbench;
+
+import java.math.BigDecimal;
+
+/**
+ * Compares the cost of keeping a balance as a {@code double}, as {@code long}
+ * cents, and as a {@link BigDecimal}, by applying the same sequence of
+ * deposits and withdrawals of one cent to each representation.
+ */
+public class MoneyBenchmarks {
+
+    private static final BigDecimal ONE_CENT = new BigDecimal("0.01");
+
+    /**
+     * Per-thread balances, so that threads do not share a cache line.
+     */
+    private static final class Balances {
+        double doubleBalance;
+        long centsBalance;
+        BigDecimal decimalBalance = BigDecimal.ZERO;
+    }
+
+    private static final ThreadLocal<Balances> BALANCES = ThreadLocal.withInitial(Balances::new);
+
+    public static void main(String[] args)
+            throws Exception {
+        BenchmarkRunner.run("money double", 1, (thread, iteration) -> {
+            Balances balances = BALANCES.get();
+            balances.doubleBalance += 0.01;
+            balances.doubleBalance -= 0.01;
+        });
+        BenchmarkRunner.run("money long cents", 1, (thread, iteration) -> {
+            Balances balances = BALANCES.get();
+            balances.centsBalance += 1;
+            balances.centsBalance -= 1;
+        });
+        BenchmarkRunner.run("money BigDecimal", 1, (thread, iteration) -> {
+            Balances balances = BALANCES.get();
+            balances.decimalBalance = balances.decimalBalance.add(ONE_CENT).subtract(ONE_CENT);
+        });
+    }
+
+}
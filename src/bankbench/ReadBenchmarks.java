@@ -0,0 +1,53 @@
+package bankbench;
+
+import bank.Bank;
+import bank.OperationResult;
+
+/**
+ * Measures balance, loan balance and reserve reads mixed with deposits and
+ * withdrawals, four reads to every write, on increasing numbers of threads,
+ * against the same reads and writes run alone.
+ */
+public class ReadBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1,2,4," + Runtime.getRuntime().availableProcessors());
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000,1000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            for (int threads : threadCounts) {
+                BenchmarkRunner.run("read only accounts=" + accounts, threads,
+                        (thread, iteration) -> read(bank, holders, iteration));
+                BenchmarkRunner.run("write only accounts=" + accounts, threads,
+                        (thread, iteration) -> write(bank, holders, iteration));
+                BenchmarkRunner.run("80% reads accounts=" + accounts, threads, (thread, iteration) -> {
+                    if (iteration % 5 == 4)
+                        write(bank, holders, iteration);
+                    else
+                        read(bank, holders, iteration);
+                });
+            }
+        }
+    }
+
+    private static void read(Bank bank, String[] holders, long iteration)
+            throws Exception {
+        switch ((int) (iteration % 3)) {
+            case 0 -> bank.getAccountBalanceCents(BankBenchmarks.randomHolder(holders));
+            case 1 -> bank.getLoanBalanceCents(BankBenchmarks.randomHolder(holders));
+            default -> bank.getReservesCents();
+        }
+    }
+
+    private static void write(Bank bank, String[] holders, long iteration) {
+        String holder = BankBenchmarks.randomHolder(holders);
+        OperationResult result = (iteration & 1) == 0
+                ? bank.tryDeposit(holder, 1)
+                : bank.tryWithdraw(holder, 1);
+        if (result != OperationResult.OK && result != OperationResult.INSUFFICIENT_FUNDS)
+            throw new IllegalStateException("Unexpected " + result);
+    }
+
+}
@@ -0,0 +1,43 @@
+package bankbench;
+
+import bank.Bank;
+import bank.Money;
+import bank.OperationResult;
+import bank.exceptions.InsufficientFundsException;
+
+/**
+ * Measures the cost of declined withdrawals, comparing the throwing
+ * {@link Bank#withdraw(String, double)} with the non-throwing
+ * {@link Bank#tryWithdraw(String, long)}, against accepted withdrawals.
+ * <p>
+ * Run with {@code -Dbank.exceptions.stackless=true} to measure the throwing
+ * path without stack trace capture.
+ * </p>
+ */
+public class RejectionBenchmarks {
+
+    private static final double OVERDRAFT = 10_000_000.0;
+
+    public static void main(String[] args)
+            throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String[] holders = BankBenchmarks.holders(100_000);
+        Bank bank = BankBenchmarks.populatedBank(holders);
+
+        BenchmarkRunner.run("withdraw accepted", threads,
+                (thread, iteration) -> bank.withdraw(BankBenchmarks.randomHolder(holders), 0.01));
+        BenchmarkRunner.run("withdraw declined (exception)", threads, (thread, iteration) -> {
+            try {
+                bank.withdraw(BankBenchmarks.randomHolder(holders), OVERDRAFT);
+            } catch (InsufficientFundsException e) {
+                // expected
+            }
+        });
+        long overdraft = Money.toCents(OVERDRAFT);
+        BenchmarkRunner.run("withdraw declined (result code)", threads, (thread, iteration) -> {
+            if (bank.tryWithdraw(BankBenchmarks.randomHolder(holders), overdraft) != OperationResult.INSUFFICIENT_FUNDS)
+                throw new IllegalStateException("Expected the withdrawal to be declined");
+        });
+    }
+
+}
@@ -0,0 +1,76 @@
+package bankbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.Operation;
+import bank.OperationResult;
+import bank.engine.ShardedBank;
+
+/**
+ * Measures a {@link ShardedBank} for each shard count in {@code bench.shards},
+ * with one submitting thread per shard: random deposits and withdrawals
+ * submitted without waiting, and transfers between random accounts, which
+ * wait for their result, split into transfers within a shard and transfers
+ * between shards. The number of accounts is read from {@code bench.accounts}.
+ * Each run checks afterwards that the reserves still match the balances.
+ */
+public class ShardedBankBenchmarks {
+
+    private static final long INITIAL_DEPOSIT = 100_000_000;
+
+    public static void main(String[] args)
+            throws Exception {
+        int accounts = BenchmarkRunner.intList("bench.accounts", "100000")[0];
+        String[] holders = BankBenchmarks.holders(accounts);
+        Operation[] deposits = new Operation[accounts];
+        Operation[] withdrawals = new Operation[accounts];
+        for (int i = 0; i < accounts; i++) {
+            deposits[i] = Operation.deposit(holders[i], 1);
+            withdrawals[i] = Operation.withdrawal(holders[i], 1);
+        }
+
+        for (int shards : BenchmarkRunner.intList("bench.shards",
+                "1,2,4," + Runtime.getRuntime().availableProcessors())) {
+            ShardedBank bank = new ShardedBank(shards, 1_000_000_000.0, 1_000_000_000.0, 1_000_000_000.0, 1 << 14);
+            try {
+                bank.addToReservesCents(INITIAL_DEPOSIT * accounts);
+                for (String holder : holders)
+                    bank.addAccountCents(holder, INITIAL_DEPOSIT);
+                String suffix = " shards=" + shards;
+
+                BenchmarkRunner.run("deposit/withdraw" + suffix, shards, (thread, iteration) -> {
+                    int account = ThreadLocalRandom.current().nextInt(accounts);
+                    bank.submit((iteration & 1) == 0 ? deposits[account] : withdrawals[account], null);
+                });
+                BenchmarkRunner.run("transfer same shard" + suffix, shards, (thread, iteration) -> {
+                    String from = BankBenchmarks.randomHolder(holders);
+                    String to;
+                    do
+                        to = BankBenchmarks.randomHolder(holders);
+                    while (bank.shardOf(to) != bank.shardOf(from));
+                    if (bank.transfer(from, to, 1) != OperationResult.OK)
+                        throw new IllegalStateException("Transfer declined");
+                });
+                if (shards > 1)
+                    BenchmarkRunner.run("transfer cross shard" + suffix, shards, (thread, iteration) -> {
+                        String from = BankBenchmarks.randomHolder(holders);
+                        String to;
+                        do
+                            to = BankBenchmarks.randomHolder(holders);
+                        while (bank.shardOf(to) == bank.shardOf(from));
+                        if (bank.transfer(from, to, 1) != OperationResult.OK)
+                            throw new IllegalStateException("Transfer declined");
+                    });
+            } finally {
+                bank.close();
+            }
+
+            long total = 0;
+            for (String holder : holders)
+                total += bank.getAccountBalanceCents(holder);
+            if (bank.getReservesCents() != total + INITIAL_DEPOSIT * accounts)
+                throw new IllegalStateException("Balances and reserves no longer agree");
+        }
+    }
+
+}
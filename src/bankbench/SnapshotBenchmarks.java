@@ -0,0 +1,69 @@
+package bankbench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import bank.Bank;
+
+/**
+ * Measures writing a snapshot of a bank and cold-starting a new bank from it,
+ * for each account count in {@code bench.accounts}, and writing an incremental
+ * checkpoint after {@code bench.changedPercent} percent of the accounts have
+ * changed.
+ * <p>
+ * Snapshots are written to a temporary file in the directory given by the
+ * {@code bench.snapshotDir} system property, which defaults to the system
+ * temporary directory. Each measurement is repeated {@code bench.repeats}
+ * times and the fastest is reported.
+ * </p>
+ */
+public class SnapshotBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        Path directory = Path.of(System.getProperty("bench.snapshotDir", System.getProperty("java.io.tmpdir")));
+        int repeats = Integer.getInteger("bench.repeats", 3);
+        int changedPercent = Integer.getInteger("bench.changedPercent", 2);
+
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000000,10000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            Path file = Files.createTempFile(directory, "bench", ".snapshot");
+            Path checkpoint = Files.createTempFile(directory, "bench", ".checkpoint");
+            try {
+                long bestWrite = Long.MAX_VALUE;
+                long bestLoad = Long.MAX_VALUE;
+                for (int i = 0; i < repeats; i++) {
+                    long start = System.nanoTime();
+                    bank.writeSnapshot(file, 0);
+                    bestWrite = Math.min(bestWrite, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    Bank loaded = new Bank(1, 1, 1);
+                    loaded.loadSnapshot(file);
+                    bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+                    if (loaded.getReservesCents() != bank.getReservesCents())
+                        throw new IllegalStateException("Snapshot loaded different reserves");
+                }
+                System.out.printf("%-48s write %,7d ms  load %,7d ms  %,d bytes%n", "snapshot accounts=" + accounts,
+                        bestWrite / 1_000_000, bestLoad / 1_000_000, Files.size(file));
+
+                long bestCheckpoint = Long.MAX_VALUE;
+                for (int i = 0; i < repeats; i++) {
+                    for (int j = 0; j < holders.length; j += 100 / changedPercent)
+                        bank.depositCents(holders[j], 1);
+                    long start = System.nanoTime();
+                    bank.writeCheckpoint(checkpoint, 0);
+                    bestCheckpoint = Math.min(bestCheckpoint, System.nanoTime() - start);
+                }
+                System.out.printf("%-48s write %,7d ms  %,d bytes%n",
+                        "checkpoint accounts=" + accounts + " changed=" + changedPercent + "%",
+                        bestCheckpoint / 1_000_000, Files.size(checkpoint));
+            } finally {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(checkpoint);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package bankbench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import bank.Account;
+import bank.Bank;
+import bank.store.ColumnarAccountStore;
+import bank.store.SlotAccountStore;
+
+/**
+ * Compares a full-book sweep, summing every balance as a reserve
+ * reconciliation would, over a bank's {@link Account} objects and over a
+ * {@link ColumnarAccountStore} holding the same accounts, for each account
+ * count in {@code bench.accounts}. Throughput is reported in accounts swept per
+ * second.
+ * <p>
+ * The heap used per account by each, measured after a garbage collection, is
+ * reported alongside.
+ * </p>
+ */
+public class StoreBenchmarks {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args)
+            throws Exception {
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000000,10000000")) {
+            String[] holders = BankBenchmarks.holders(accounts);
+
+            long before = usedHeap();
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            long bankBytes = usedHeap() - before;
+            BenchmarkRunner.run("bank sweep accounts=" + accounts, 1, accounts, (thread, iteration) -> {
+                long total = 0;
+                for (Account account : bank.getAccounts())
+                    total += account.getAccountBalanceCents();
+                if (total <= 0)
+                    throw new IllegalStateException("Sweep found no money");
+            });
+            System.out.printf("%-48s %,d bytes per account%n", "bank accounts=" + accounts, bankBytes / accounts);
+
+            before = usedHeap();
+            SlotAccountStore store = populatedStore(holders, bank);
+            long storeBytes = usedHeap() - before;
+            BenchmarkRunner.run("columnar sweep accounts=" + accounts, 1, accounts, (thread, iteration) -> {
+                if (store.totalBalance() <= 0)
+                    throw new IllegalStateException("Sweep found no money");
+            });
+            System.out.printf("%-48s %,d bytes per account%n", "columnar accounts=" + accounts,
+                    storeBytes / accounts);
+        }
+    }
+
+    /**
+     * Creates a columnar store holding the same accounts as a bank.
+     */
+    private static SlotAccountStore populatedStore(String[] holders, Bank bank)
+            throws Exception {
+        SlotAccountStore store = new ColumnarAccountStore();
+        for (String holder : holders)
+            store.insert(holder, bank.getAccountBalanceCents(holder), bank.getLoanBalanceCents(holder));
+        return store;
+    }
+
+    /**
+     * Measures the heap in use after a garbage collection. The holder names are
+     * shared by the bank and the store, so neither is charged for them.
+     */
+    private static long usedHeap() {
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+}
@@ -0,0 +1,124 @@
+package bankbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import bank.Bank;
+import bank.OperationResult;
+
+/**
+ * Measures {@link bank.Transaction}s of one withdrawal and two deposits over
+ * three accounts, for each thread count in {@code -Dbench.threads}:
+ * <ul>
+ * <li>on accounts owned by the committing thread alone, so that transactions
+ * never touch the same account;</li>
+ * <li>on accounts drawn from a hot set shared by every thread, for each hot
+ * set size in {@code -Dbench.hotAccounts}, reporting the conflict rate: the
+ * share of commits that touched an account another thread's commit was using
+ * at the same time, and so may have waited for its lock;</li>
+ * <li>committed against rejected by their last operation, which is the cost
+ * of an abort, since a rejected transaction still locks and checks all its
+ * accounts.</li>
+ * </ul>
+ * The total balance is checked after each run.
+ */
+public class TransactionBenchmarks {
+
+    private static final int ACCOUNTS_PER_THREAD = 1_000;
+    private static final long OVERDRAFT = 1_000_000_000L;
+
+    public static void main(String[] args)
+            throws Exception {
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1,2,4," + Runtime.getRuntime().availableProcessors());
+        int[] hotCounts = BenchmarkRunner.intList("bench.hotAccounts", "4,64,4096");
+        for (int threads : threadCounts) {
+            int accounts = ACCOUNTS_PER_THREAD * threads;
+            for (int hot : hotCounts)
+                accounts = Math.max(accounts, hot);
+            String[] holders = BankBenchmarks.holders(accounts);
+            Bank bank = BankBenchmarks.populatedBank(holders);
+            long total = totalBalance(bank, holders);
+
+            BenchmarkRunner.run("disjoint accounts", threads, 3, (thread, iteration) -> {
+                int offset = thread * ACCOUNTS_PER_THREAD;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                commit(bank, holders[offset + random.nextInt(ACCOUNTS_PER_THREAD)],
+                        holders[offset + random.nextInt(ACCOUNTS_PER_THREAD)],
+                        holders[offset + random.nextInt(ACCOUNTS_PER_THREAD)], 2);
+            });
+            check(bank, holders, total);
+
+            for (int hot : hotCounts) {
+                AtomicIntegerArray inUse = new AtomicIntegerArray(hot);
+                LongAdder commits = new LongAdder();
+                LongAdder conflicts = new LongAdder();
+                BenchmarkRunner.Result result = BenchmarkRunner.run("hot accounts=" + hot, threads, 3,
+                        (thread, iteration) -> {
+                            ThreadLocalRandom random = ThreadLocalRandom.current();
+                            int from = random.nextInt(hot);
+                            int first = random.nextInt(hot);
+                            int second = random.nextInt(hot);
+                            boolean conflict = inUse.getAndIncrement(from) != 0;
+                            conflict |= first != from && inUse.getAndIncrement(first) != 0;
+                            conflict |= second != from && second != first && inUse.getAndIncrement(second) != 0;
+                            try {
+                                commit(bank, holders[from], holders[first], holders[second], 2);
+                            } finally {
+                                inUse.decrementAndGet(from);
+                                if (first != from)
+                                    inUse.decrementAndGet(first);
+                                if (second != from && second != first)
+                                    inUse.decrementAndGet(second);
+                            }
+                            if (conflict)
+                                conflicts.increment();
+                            commits.increment();
+                        });
+                System.out.printf("  %s: conflict rate %.2f%%%n", result.name(),
+                        100.0 * conflicts.sum() / Math.max(1, commits.sum()));
+                check(bank, holders, total);
+            }
+
+            BenchmarkRunner.run("commit", threads, 3, (thread, iteration) ->
+                    commit(bank, BankBenchmarks.randomHolder(holders), BankBenchmarks.randomHolder(holders),
+                            BankBenchmarks.randomHolder(holders), 2));
+            BenchmarkRunner.run("abort", threads, 3, (thread, iteration) -> {
+                OperationResult outcome = bank.transaction()
+                        .deposit(BankBenchmarks.randomHolder(holders), 1)
+                        .deposit(BankBenchmarks.randomHolder(holders), 1)
+                        .withdraw(BankBenchmarks.randomHolder(holders), OVERDRAFT)
+                        .commit();
+                if (outcome != OperationResult.INSUFFICIENT_FUNDS)
+                    throw new IllegalStateException("Expected the transaction to be rejected, not " + outcome);
+            });
+            check(bank, holders, total);
+        }
+    }
+
+    private static void commit(Bank bank, String from, String first, String second, long amount) {
+        OperationResult outcome = bank.transaction()
+                .withdraw(from, amount)
+                .deposit(first, amount / 2)
+                .deposit(second, amount - amount / 2)
+                .commit();
+        if (outcome != OperationResult.OK)
+            throw new IllegalStateException("Transaction rejected: " + outcome);
+    }
+
+    private static void check(Bank bank, String[] holders, long total)
+            throws Exception {
+        if (totalBalance(bank, holders) != total)
+            throw new IllegalStateException("Transactions changed the total balance");
+    }
+
+    private static long totalBalance(Bank bank, String[] holders)
+            throws Exception {
+        long total = 0;
+        for (String holder : holders)
+            total += bank.getAccountBalanceCents(holder);
+        return total;
+    }
+
+}
@@ -0,0 +1,46 @@
+package bankbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import bank.Bank;
+import bank.OperationResult;
+
+/**
+ * Measures random transfers between accounts on increasing numbers of threads,
+ * and checks afterwards that no money was created or destroyed.
+ */
+public class TransferBenchmarks {
+
+    public static void main(String[] args)
+            throws Exception {
+        int[] threadCounts = BenchmarkRunner.intList("bench.threads",
+                "1,2,4," + Runtime.getRuntime().availableProcessors());
+        for (int accounts : BenchmarkRunner.intList("bench.accounts", "1000,1000000")) {
+            for (int threads : threadCounts) {
+                String[] holders = BankBenchmarks.holders(accounts);
+                Bank bank = BankBenchmarks.populatedBank(holders);
+                long total = totalBalance(bank, holders);
+
+                BenchmarkRunner.run("transfer accounts=" + accounts, threads, (thread, iteration) -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    String from = holders[random.nextInt(holders.length)];
+                    String to = holders[random.nextInt(holders.length)];
+                    if (bank.tryTransfer(from, to, 1) != OperationResult.OK)
+                        throw new IllegalStateException("Transfer declined");
+                });
+
+                if (totalBalance(bank, holders) != total)
+                    throw new IllegalStateException("Transfers changed the total balance");
+            }
+        }
+    }
+
+    private static long totalBalance(Bank bank, String[] holders)
+            throws Exception {
+        long total = 0;
+        for (String holder : holders)
+            total += bank.getAccountBalanceCents(holder);
+        return total;
+    }
+
+}
@@ -0,0 +1,400 @@
+package banktest;
+
+import bank.Account;
+import bank.AccountCursor;
+import bank.AccountStore;
+import bank.Bank;
+import bank.OperationResult;
+import bank.exceptions.*;
+import bank.store.ColumnarAccountStore;
+import bank.store.MappedAccountStore;
+import bank.store.OffHeapAccountStore;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static banktest.ConcurrentTasks.runOnThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests, derived from {@link BankTest}, that every {@link AccountStore}
+ * must pass when it backs a {@link Bank}. Each backend has a nested subclass
+ * that creates its store.
+ */
+public abstract class AccountStoreConformanceTest {
+
+    private static final double MAX_DEPOSIT = 20_000.0;
+    private static final double MAX_WITHDRAWAL = 10_000.0;
+    private static final double MAX_LOAN = 15_000.0;
+
+    private static final double INITIAL_RESERVE = 100_000.0;
+    private static final double INITIAL_DEPOSIT = 5_000.0;
+
+    private static final String ACCOUNT_HOLDER_1 = "Alice";
+    private static final String ACCOUNT_HOLDER_2 = "Bob";
+
+    private static final int ACCOUNTS = 5_000;
+    private static final int THREADS = 4;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+
+    @TempDir
+    Path directory;
+
+    private Bank bank;
+
+    /**
+     * Creates an empty store.
+     *
+     * @return the store to test
+     * @throws IOException if the store cannot be created
+     */
+    protected abstract AccountStore createStore() throws IOException;
+
+    /**
+     * Sets up a bank over an empty store, with reserves and two accounts, before
+     * each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        bank = newBank();
+        bank.addToReserves(INITIAL_RESERVE);
+        bank.addAccount(ACCOUNT_HOLDER_1, INITIAL_DEPOSIT);
+        bank.addAccount(ACCOUNT_HOLDER_2, INITIAL_DEPOSIT);
+    }
+
+    /**
+     * Verifies that added accounts can be found and are counted in the
+     * reserves.
+     */
+    @Test
+    public void testAddAndFindAccounts()
+            throws AccountNotFoundException {
+        assertEquals(2, bank.getAccounts().size());
+        assertEquals(ACCOUNT_HOLDER_1, bank.getAccount(ACCOUNT_HOLDER_1).getAccountHolder());
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+        assertEquals(INITIAL_RESERVE + 2 * INITIAL_DEPOSIT, bank.getReserves());
+        assertThrows(AccountNotFoundException.class, () -> bank.getAccount("Non Existent"));
+    }
+
+    /**
+     * Verifies that adding a duplicate account throws an exception and leaves
+     * the original account unchanged.
+     */
+    @Test
+    public void testAddDuplicateAccount()
+            throws AccountNotFoundException {
+        assertThrows(DuplicateAccountException.class, () -> bank.addAccount(ACCOUNT_HOLDER_1, 1_000.0));
+
+        assertEquals(2, bank.getAccounts().size());
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+        assertEquals(INITIAL_RESERVE + 2 * INITIAL_DEPOSIT, bank.getReserves());
+    }
+
+    /**
+     * Verifies that deposits, withdrawals and loans update the account and the
+     * reserves, and that rejected operations change nothing.
+     */
+    @Test
+    public void testAccountOperations()
+            throws Exception {
+        bank.deposit(ACCOUNT_HOLDER_1, 1_000.0);
+        bank.withdraw(ACCOUNT_HOLDER_1, 250.0);
+        bank.approveLoan(ACCOUNT_HOLDER_1, 2_000.0);
+        bank.repayLoan(ACCOUNT_HOLDER_1, 500.0);
+
+        assertEquals(INITIAL_DEPOSIT + 1_000.0 - 250.0,
+                bank.getAccountBalance(ACCOUNT_HOLDER_1));
+        assertEquals(1_500.0, bank.getLoanBalance(ACCOUNT_HOLDER_1));
+        assertEquals(INITIAL_RESERVE + 2 * INITIAL_DEPOSIT + 1_000.0 - 250.0 - 2_000.0 + 500.0,
+                bank.getReserves());
+
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS,
+                bank.tryWithdraw(ACCOUNT_HOLDER_2, 600_000));
+        assertEquals(OperationResult.ACCOUNT_NOT_FOUND, bank.tryDeposit("Non Existent", 100));
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+    }
+
+    /**
+     * Verifies that a transfer moves money between accounts without changing
+     * the reserves, and that a rejected transfer changes nothing.
+     */
+    @Test
+    public void testTransfer()
+            throws Exception {
+        double reservesBefore = bank.getReserves();
+
+        bank.transfer(ACCOUNT_HOLDER_1, ACCOUNT_HOLDER_2, 1_500.0);
+        assertThrows(InsufficientFundsException.class,
+                () -> bank.transfer(ACCOUNT_HOLDER_1, ACCOUNT_HOLDER_2, INITIAL_DEPOSIT));
+        assertThrows(AccountNotFoundException.class,
+                () -> bank.transfer(ACCOUNT_HOLDER_1, "Non Existent", 1.0));
+
+        assertEquals(INITIAL_DEPOSIT - 1_500.0, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+        assertEquals(INITIAL_DEPOSIT + 1_500.0, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+        assertEquals(reservesBefore, bank.getReserves());
+    }
+
+    /**
+     * Verifies that a removed account can no longer be found or used, and that
+     * its account holder can be given a new account.
+     */
+    @Test
+    public void testRemoveAndReAddAccount()
+            throws Exception {
+        bank.removeAccount(ACCOUNT_HOLDER_1);
+
+        assertThrows(AccountNotFoundException.class, () -> bank.getAccount(ACCOUNT_HOLDER_1));
+        assertEquals(INITIAL_RESERVE + INITIAL_DEPOSIT, bank.getReserves());
+        assertEquals(1, bank.getAccounts().size());
+        assertEquals(OperationResult.ACCOUNT_NOT_FOUND, bank.tryDeposit(ACCOUNT_HOLDER_1, 100));
+
+        bank.addAccount("Carol", 10.0);
+        bank.addAccount(ACCOUNT_HOLDER_1, 20.0);
+        assertEquals(20.0, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+        assertEquals(10.0, bank.getAccountBalance("Carol"));
+    }
+
+    /**
+     * Verifies that every account is returned once by getAccounts.
+     */
+    @Test
+    public void testGetAccountsReturnsEveryAccount()
+            throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 1 + i);
+        for (int i = 0; i < ACCOUNTS; i += 3)
+            bank.removeAccount(holder(i));
+
+        Set<String> holders = new HashSet<>();
+        long total = 0;
+        for (Account account : bank.getAccounts()) {
+            assertTrue(holders.add(account.getAccountHolder()));
+            total += account.getAccountBalanceCents();
+        }
+        assertEquals(bank.getAccounts().size(), holders.size());
+        assertEquals(bank.getReservesCents() - 100 * (long) INITIAL_RESERVE, total);
+    }
+
+    /**
+     * Verifies that an account cursor visits every account once with its
+     * balances, and is not on an account before the first or after the last.
+     */
+    @Test
+    public void testAccountCursorVisitsEveryAccount()
+            throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 1 + i);
+        bank.approveLoanCents(holder(7), 500);
+        for (int i = 0; i < ACCOUNTS; i += 3)
+            bank.removeAccount(holder(i));
+
+        AccountCursor cursor = bank.accountCursor();
+        assertThrows(IllegalStateException.class, cursor::getAccountHolder);
+        Set<String> holders = new HashSet<>();
+        while (cursor.next()) {
+            String holder = cursor.getAccountHolder();
+            assertTrue(holders.add(holder));
+            assertEquals(bank.getAccountBalanceCents(holder), cursor.getBalanceCents());
+            assertEquals(bank.getLoanBalanceCents(holder), cursor.getLoanBalanceCents());
+        }
+        assertEquals(bank.getAccounts().size(), holders.size());
+        assertFalse(cursor.next());
+        assertThrows(IllegalStateException.class, cursor::getBalanceCents);
+    }
+
+    /**
+     * Verifies that an account cursor sees every account that exists for the
+     * whole traversal exactly once while other accounts are being added and
+     * removed.
+     */
+    @Test
+    @Timeout(30)
+    public void testAccountCursorWhileAccountsChange()
+            throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 1 + i);
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int round = 0; !done.get(); round++) {
+                    String holder = "Churn " + (round % 100);
+                    bank.addAccountCents(holder, 1);
+                    bank.depositCents(holder(round % ACCOUNTS), 1);
+                    bank.withdrawCents(holder(round % ACCOUNTS), 1);
+                    bank.removeAccount(holder);
+                }
+                return null;
+            });
+            for (int pass = 0; pass < 20; pass++) {
+                Set<String> holders = new HashSet<>();
+                AccountCursor cursor = bank.accountCursor();
+                while (cursor.next()) {
+                    assertTrue(holders.add(cursor.getAccountHolder()));
+                    assertTrue(cursor.getBalanceCents() > 0);
+                }
+                for (int i = 0; i < ACCOUNTS; i++)
+                    assertTrue(holders.contains(holder(i)));
+            }
+            done.set(true);
+            writer.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies that a snapshot and checkpoint written from the bank rebuild it
+     * in a bank over another store of the same kind.
+     */
+    @Test
+    public void testSnapshotAndCheckpointRoundTrip()
+            throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 1 + i);
+        Path snapshot = directory.resolve("base.snapshot");
+        Path checkpoint = directory.resolve("checkpoint.snapshot");
+        bank.writeSnapshot(snapshot, 0);
+        bank.deposit(holder(1), 5.0);
+        bank.approveLoan(holder(2), 7.0);
+        bank.removeAccount(holder(3));
+        bank.addAccount(holder(ACCOUNTS), 9.0);
+        bank.writeCheckpoint(checkpoint, 0);
+
+        assertTrue(Files.size(checkpoint) * 100 < Files.size(snapshot));
+        Bank recovered = newBank();
+        recovered.loadSnapshot(snapshot);
+        recovered.applyCheckpoint(checkpoint);
+
+        assertEquals(bank.getReservesCents(), recovered.getReservesCents());
+        assertEquals(bank.getAccounts().size(), recovered.getAccounts().size());
+        for (Account account : bank.getAccounts()) {
+            String holder = account.getAccountHolder();
+            assertEquals(account.getAccountBalanceCents(), recovered.getAccountBalanceCents(holder));
+            assertEquals(account.getLoanBalanceCents(), recovered.getLoanBalanceCents(holder));
+        }
+        assertThrows(AccountNotFoundException.class, () -> recovered.getAccount(holder(3)));
+    }
+
+    /**
+     * Verifies that concurrent transfers between random accounts neither create
+     * nor lose money.
+     */
+    @Test
+    @Timeout(30)
+    public void testConcurrentTransfersConserveMoney()
+            throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 10_000);
+        long reserves = bank.getReservesCents();
+
+        runOnThreads(THREADS, seed -> {
+            Random random = new Random(seed);
+            for (int i = 0; i < TRANSFERS_PER_THREAD; i++)
+                bank.tryTransfer(holder(random.nextInt(ACCOUNTS)), holder(random.nextInt(ACCOUNTS)),
+                        1 + random.nextInt(5_000));
+        });
+
+        long total = 0;
+        for (Account account : bank.getAccounts())
+            total += account.getAccountBalanceCents();
+        assertEquals(reserves, bank.getReservesCents());
+        assertEquals(reserves - 100 * (long) INITIAL_RESERVE, total);
+    }
+
+    private Bank newBank()
+            throws IOException {
+        return new Bank(MAX_DEPOSIT, MAX_WITHDRAWAL, MAX_LOAN, createStore());
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+
+    /**
+     * Runs the conformance tests against {@link AccountStore#hashed()}.
+     */
+    public static class HashedTest extends AccountStoreConformanceTest {
+
+        @Override
+        protected AccountStore createStore() {
+            return AccountStore.hashed();
+        }
+    }
+
+    /**
+     * Runs the conformance tests against {@link AccountStore#sorted()}.
+     */
+    public static class SortedTest extends AccountStoreConformanceTest {
+
+        @Override
+        protected AccountStore createStore() {
+            return AccountStore.sorted();
+        }
+    }
+
+    /**
+     * Runs the conformance tests against a {@link ColumnarAccountStore}.
+     */
+    public static class ColumnarTest extends AccountStoreConformanceTest {
+
+        @Override
+        protected AccountStore createStore() {
+            return AccountStore.of(new ColumnarAccountStore());
+        }
+    }
+
+    /**
+     * Runs the conformance tests against an {@link OffHeapAccountStore}.
+     */
+    public static class OffHeapTest extends AccountStoreConformanceTest {
+
+        @Override
+        protected AccountStore createStore() {
+            return AccountStore.of(new OffHeapAccountStore());
+        }
+    }
+
+    /**
+     * Runs the conformance tests against a {@link MappedAccountStore}, with
+     * each store in its own file.
+     */
+    public static class MappedTest extends AccountStoreConformanceTest {
+
+        private final List<MappedAccountStore> stores = new ArrayList<>();
+
+        @Override
+        protected AccountStore createStore()
+                throws IOException {
+            MappedAccountStore store = new MappedAccountStore(
+                    directory.resolve("accounts-" + stores.size() + ".mapped"), 1 << 16);
+            stores.add(store);
+            return AccountStore.of(store);
+        }
+
+        /**
+         * Closes the stores after each test.
+         */
+        @AfterEach
+        public void tearDown()
+                throws IOException {
+            for (MappedAccountStore store : stores)
+                store.close();
+        }
+    }
+}
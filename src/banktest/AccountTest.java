@@ -5,6 +5,7 @@ import bank.exceptions.InsufficientFundsException;
 import bank.exceptions.InvalidLoanAmountException;
 import org.junit.jupiter.api.*;
 
+import static banktest.ConcurrentTasks.runOnThreads;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -14,6 +15,7 @@ public class AccountTest {
 
     private static final String ACCOUNT_HOLDER = "Test User";
     private static final double INITIAL_BALANCE = 10_000.0;
+    private static final int THREADS = 8;
 
     private Account account;
 
@@ -52,6 +54,16 @@ public class AccountTest {
                 "Balance should increase after deposit.");
     }
 
+    /**
+     * Tests that a deposit in cents is reflected in both balance representations.
+     */
+    @Test
+    public void testDepositCents() {
+        account.depositCents(1);
+        assertEquals(1_000_001L, account.getAccountBalanceCents(), "Balance in cents should increase by one cent.");
+        assertEquals(INITIAL_BALANCE + 0.01, account.getAccountBalance(), "Balance should increase by 0.01.");
+    }
+
     /**
      * Tests successful withdrawal updates the account balance.
      * 
@@ -182,4 +194,57 @@ public class AccountTest {
         assertDoesNotThrow(() -> account.checkAmountInLoanBalance(validRepayment),
                 "No exception should be thrown for valid repayment amount.");
     }
+
+    /**
+     * Tests that threads racing to withdraw from one account take out exactly
+     * its balance between them and never overdraw it.
+     */
+    @Test
+    @Timeout(30)
+    public void testConcurrentWithdrawalsNeverOverdraw() throws Exception {
+        long initial = account.getAccountBalanceCents();
+        long[] withdrawn = new long[THREADS];
+
+        runOnThreads(THREADS, t -> {
+            while (true) {
+                try {
+                    account.withdrawCents(7);
+                    withdrawn[t] += 7;
+                } catch (InsufficientFundsException e) {
+                    return;
+                }
+            }
+        });
+
+        long total = 0;
+        for (long amount : withdrawn)
+            total += amount;
+        assertEquals(initial - initial % 7, total, "Withdrawals should take out the whole balance.");
+        assertEquals(initial % 7, account.getAccountBalanceCents(), "Only the remainder should be left.");
+    }
+
+    /**
+     * Tests that concurrent deposits, withdrawals, loans and repayments on one
+     * account are none of them lost.
+     */
+    @Test
+    @Timeout(30)
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        int rounds = 20_000;
+        long initial = account.getAccountBalanceCents();
+
+        runOnThreads(THREADS, t -> {
+            for (int i = 0; i < rounds; i++) {
+                account.depositCents(3);
+                account.withdrawCents(2);
+                account.addToLoanBalanceCents(5);
+                account.subtractFromLoanBalanceCents(4);
+            }
+        });
+
+        assertEquals(initial + (long) THREADS * rounds, account.getAccountBalanceCents(),
+                "Every deposit and withdrawal should be applied.");
+        assertEquals((long) THREADS * rounds, account.getLoanBalanceCents(),
+                "Every loan and repayment should be applied.");
+    }
 }
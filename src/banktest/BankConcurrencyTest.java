@@ -0,0 +1,210 @@
+package banktest;
+
+import bank.Bank;
+import bank.OperationResult;
+import bank.exceptions.*;
+import org.junit.jupiter.api.*;
+
+import static banktest.ConcurrentTasks.runOnThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link Bank} class when it is shared between threads.
+ */
+public class BankConcurrencyTest {
+
+    private static final double MAX_DEPOSIT = 20_000.0;
+    private static final double MAX_WITHDRAWAL = 10_000.0;
+    private static final double MAX_LOAN = 15_000.0;
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 10_000;
+    private static final double INITIAL_DEPOSIT = 1_000.0;
+
+    private Bank bank;
+
+    /**
+     * Sets up a bank with one account per thread before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws InvalidDepositAmountException,
+            DuplicateAccountException {
+        bank = new Bank(MAX_DEPOSIT, MAX_WITHDRAWAL, MAX_LOAN);
+        for (int i = 0; i < THREADS; i++)
+            bank.addAccount(holder(i), INITIAL_DEPOSIT);
+    }
+
+    /**
+     * Verifies that concurrent deposits and withdrawals on a shared account leave
+     * both the account balance and the reserves exact.
+     */
+    @Test
+    @Timeout(10)
+    public void testConcurrentDepositsAndWithdrawalsOnSharedAccount()
+            throws Exception {
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                bank.deposit(holder(0), 1.0);
+                bank.withdraw(holder(0), 1.0);
+            }
+        });
+
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(holder(0)));
+        assertEquals(THREADS * INITIAL_DEPOSIT, bank.getReserves());
+    }
+
+    /**
+     * Verifies that concurrent operations on different accounts keep the reserves
+     * equal to the sum of the account balances.
+     */
+    @Test
+    @Timeout(10)
+    public void testConcurrentDepositsOnSeparateAccounts()
+            throws Exception {
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++)
+                bank.deposit(holder(thread), 1.0);
+        });
+
+        double total = 0;
+        for (int i = 0; i < THREADS; i++) {
+            assertEquals(INITIAL_DEPOSIT + OPERATIONS_PER_THREAD, bank.getAccountBalance(holder(i)));
+            total += bank.getAccountBalance(holder(i));
+        }
+        assertEquals(total, bank.getReserves());
+    }
+
+    /**
+     * Verifies that concurrent loans never take the reserves below zero.
+     */
+    @Test
+    @Timeout(10)
+    public void testConcurrentLoansNeverOverdrawReserves()
+            throws Exception {
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                try {
+                    bank.approveLoan(holder(thread), 1.0);
+                } catch (InsufficientReservesException e) {
+                    // expected once the reserves run out
+                }
+            }
+        });
+
+        double loans = 0;
+        for (int i = 0; i < THREADS; i++)
+            loans += bank.getLoanBalance(holder(i));
+        assertEquals(THREADS * INITIAL_DEPOSIT, loans);
+        assertEquals(0.0, bank.getReserves());
+    }
+
+    /**
+     * Verifies that transfers in opposite directions between the same accounts
+     * neither deadlock nor create or destroy money.
+     */
+    @Test
+    @Timeout(10)
+    public void testConcurrentOpposingTransfers()
+            throws Exception {
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                int from = (thread + i) % THREADS;
+                int to = (thread + i + 1) % THREADS;
+                try {
+                    if (thread % 2 == 0)
+                        bank.transfer(holder(from), holder(to), 1.0);
+                    else
+                        bank.transfer(holder(to), holder(from), 1.0);
+                } catch (InsufficientFundsException e) {
+                    // possible when one account has been drained
+                }
+            }
+        });
+
+        double total = 0;
+        for (int i = 0; i < THREADS; i++)
+            total += bank.getAccountBalance(holder(i));
+        assertEquals(THREADS * INITIAL_DEPOSIT, total);
+        assertEquals(THREADS * INITIAL_DEPOSIT, bank.getReserves());
+    }
+
+    /**
+     * Verifies that the reserves read while other threads take out and pay
+     * back loans are always a total the reserves actually held.
+     */
+    @Test
+    @Timeout(10)
+    public void testReservesReadDuringLoansAreConsistent()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+        long loan = 50_000;
+        int borrowers = THREADS / 2;
+
+        runOnThreads(THREADS, thread -> {
+            if (thread < borrowers) {
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    assertEquals(OperationResult.OK, bank.tryApproveLoan(holder(thread), loan));
+                    assertEquals(OperationResult.OK, bank.tryRepayLoan(holder(thread), loan));
+                }
+            } else {
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    long read = bank.getReservesCents();
+                    assertTrue(read <= reserves && read >= reserves - borrowers * loan,
+                            "Reserves read as " + read);
+                    assertEquals(0, (reserves - read) % loan, "Reserves read mid-update: " + read);
+                }
+            }
+        });
+
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that withdrawals declined for want of reserves never show up in
+     * a balance read while they are being checked.
+     */
+    @Test
+    @Timeout(10)
+    public void testDeclinedWithdrawalsAreNeverVisible()
+            throws Exception {
+        long balance = bank.getAccountBalanceCents(holder(0));
+        while (bank.getReservesCents() > 0)
+            bank.tryApproveLoan(holder(1), Math.min(bank.getReservesCents(), 1_500_000));
+
+        runOnThreads(2, thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD * 10; i++) {
+                if (thread == 0)
+                    assertEquals(OperationResult.INSUFFICIENT_RESERVES, bank.tryWithdraw(holder(0), 1_000));
+                else
+                    assertEquals(balance, bank.getAccountBalanceCents(holder(0)));
+            }
+        });
+    }
+
+    /**
+     * Verifies that reserves moved out by other threads, even below zero,
+     * cannot still be lent out from this thread's share of the reserves.
+     */
+    @Test
+    @Timeout(10)
+    public void testReservesMovedOutCannotBeLent()
+            throws Exception {
+        assertEquals(OperationResult.OK, bank.tryApproveLoan(holder(0), 100_000));
+        runOnThreads(THREADS,
+                thread -> assertEquals(OperationResult.OK, bank.tryTransferOut(holder(thread), 100_000)));
+        assertEquals(-100_000, bank.getReservesCents());
+
+        assertEquals(OperationResult.INSUFFICIENT_RESERVES, bank.tryApproveLoan(holder(0), 50_000));
+        assertEquals(-100_000, bank.getReservesCents());
+
+        runOnThreads(1, thread -> assertEquals(OperationResult.OK, bank.tryTransferIn(holder(1), 150_000)));
+        assertEquals(OperationResult.OK, bank.tryApproveLoan(holder(0), 50_000));
+        assertEquals(OperationResult.INSUFFICIENT_RESERVES, bank.tryApproveLoan(holder(0), 1));
+        assertEquals(0, bank.getReservesCents());
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+}
@@ -0,0 +1,187 @@
+package banktest;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+import bank.engine.BankEngine;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static banktest.ConcurrentTasks.runOnThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the single-writer {@link BankEngine}.
+ */
+public class BankEngineTest {
+
+    private static final int CAPACITY = 64;
+    private static final int THREADS = 4;
+    private static final int COMMANDS_PER_THREAD = 50_000;
+
+    private Bank bank;
+    private BankEngine engine;
+
+    /**
+     * Sets up a bank with reserves and two accounts, and an engine over it,
+     * before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        bank = new Bank(20_000.0, 10_000.0, 15_000.0);
+        bank.addToReserves(100_000.0);
+        bank.addAccountCents("Alice", 1_000);
+        bank.addAccountCents("Bob", 1_000);
+        engine = new BankEngine(bank, CAPACITY);
+    }
+
+    /**
+     * Closes the engine after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        engine.close();
+    }
+
+    /**
+     * Verifies that commands are applied in submission order, so that a
+     * withdrawal succeeds or fails depending on the deposits before it, and
+     * that their results are published in sequence order.
+     */
+    @Test
+    @Timeout(10)
+    public void testCommandsAppliedInOrder()
+            throws Exception {
+        List<Long> sequences = new ArrayList<>();
+        List<OperationResult> results = new ArrayList<>();
+        BankEngine.ResultListener listener = (sequence, result) -> {
+            sequences.add(sequence);
+            results.add(result);
+        };
+
+        engine.submit(Operation.withdrawal("Alice", 1_500), listener);
+        engine.submit(Operation.deposit("Alice", 1_000), listener);
+        engine.submit(Operation.withdrawal("Alice", 1_500), listener);
+        engine.submit(Operation.deposit("Nobody", 1), listener);
+        engine.submit(Operation.loan("Bob", 2_000), listener);
+        engine.submit(Operation.repayment("Bob", 500), listener);
+        engine.close();
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), sequences);
+        assertEquals(List.of(OperationResult.INSUFFICIENT_FUNDS, OperationResult.OK, OperationResult.OK,
+                OperationResult.ACCOUNT_NOT_FOUND, OperationResult.OK, OperationResult.OK), results);
+        assertEquals(500, bank.getAccountBalanceCents("Alice"));
+        assertEquals(1_500, bank.getLoanBalanceCents("Bob"));
+        assertEquals(6, engine.getAppliedCount());
+    }
+
+    /**
+     * Verifies that commands from several threads, many times the ring's
+     * capacity, are all applied and published exactly once.
+     */
+    @Test
+    @Timeout(30)
+    public void testConcurrentSubmitters()
+            throws Exception {
+        ConcurrentLinkedQueue<Long> published = new ConcurrentLinkedQueue<>();
+        BankEngine.ResultListener listener = (sequence, result) -> {
+            assertEquals(OperationResult.OK, result);
+            published.add(sequence);
+        };
+        Operation deposit = Operation.deposit("Alice", 2);
+        Operation withdrawal = Operation.withdrawal("Alice", 1);
+
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < COMMANDS_PER_THREAD; i += 2) {
+                engine.submit(deposit, listener);
+                engine.submit(withdrawal, listener);
+            }
+        });
+        engine.close();
+
+        long total = (long) THREADS * COMMANDS_PER_THREAD;
+        assertEquals(total, engine.getAppliedCount());
+        assertEquals(total, published.size());
+        assertEquals(total * (total - 1) / 2, published.stream().mapToLong(Long::longValue).sum());
+        assertEquals(1_000 + total / 2, bank.getAccountBalanceCents("Alice"));
+    }
+
+    /**
+     * Verifies that a listener that throws does not stop later results from
+     * being published.
+     */
+    @Test
+    @Timeout(10)
+    public void testThrowingListenerDoesNotStopEngine()
+            throws Exception {
+        List<OperationResult> results = new ArrayList<>();
+        Thread.UncaughtExceptionHandler quiet = (thread, e) -> {
+        };
+        engine.submit(Operation.deposit("Alice", 1), (sequence, result) -> {
+            Thread.currentThread().setUncaughtExceptionHandler(quiet);
+            throw new IllegalStateException("listener failed");
+        });
+        engine.submit(Operation.deposit("Alice", 1), (sequence, result) -> results.add(result));
+        engine.close();
+
+        assertEquals(List.of(OperationResult.OK), results);
+        assertEquals(1_002, bank.getAccountBalanceCents("Alice"));
+    }
+
+    /**
+     * Verifies that commands that throw, whether an action or a failing
+     * mutation log, are reported to their listeners as failures while the
+     * writer carries on, well past a full turn of the ring.
+     */
+    @Test
+    @Timeout(10)
+    public void testThrowingCommandsDoNotStopEngine()
+            throws Exception {
+        List<Throwable> failures = new ArrayList<>();
+        List<OperationResult> results = new ArrayList<>();
+        BankEngine.ResultListener listener = new BankEngine.ResultListener() {
+            @Override
+            public void onResult(long sequence, OperationResult result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onFailure(long sequence, Throwable failure) {
+                failures.add(failure);
+            }
+        };
+
+        for (int i = 0; i < CAPACITY * 4; i++)
+            engine.submit(target -> {
+                throw new IllegalStateException("action failed");
+            }, listener);
+        bank.setMutationLog((mutation, accountHolder, counterparty, amount) -> {
+            throw new UncheckedIOException(new IOException("disk full"));
+        });
+        for (int i = 0; i < CAPACITY * 4; i++)
+            engine.submit(Operation.deposit("Alice", 1), listener);
+        engine.close();
+
+        assertEquals(CAPACITY * 8, failures.size());
+        assertTrue(results.isEmpty());
+        assertEquals(CAPACITY * 8, engine.getAppliedCount());
+    }
+
+    /**
+     * Verifies that a closed engine rejects commands, and that an engine needs
+     * a power-of-two ring.
+     */
+    @Test
+    public void testClosedAndInvalidEngines() {
+        engine.close();
+        assertThrows(IllegalStateException.class, () -> engine.submit(Operation.deposit("Alice", 1), null));
+        assertThrows(IllegalArgumentException.class, () -> new BankEngine(bank, 100));
+        assertThrows(IllegalArgumentException.class, () -> new BankEngine(bank, 0));
+    }
+}
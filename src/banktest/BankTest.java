@@ -4,9 +4,16 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import bank.Account;
 import bank.Bank;
+import bank.Money;
+import bank.Operation;
+import bank.OperationResult;
 import bank.exceptions.*;
+import bank.journal.MutationLog;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.function.ThrowingConsumer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.stream.Stream;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -88,6 +95,16 @@ public class BankTest {
                                 bank.getReserves());
         }
 
+        /**
+         * Verifies that modifying the list returned by getAccounts does not affect
+         * the accounts held by the bank.
+         */
+        @Test
+        public void testGetAccountsReturnsCopy() {
+                bank.getAccounts().clear();
+                assertEquals(INITIAL_ACCOUNT_HOLDERS.size(), bank.getAccounts().size());
+        }
+
         /**
          * Verifies that an invalid deposit amount results in an exception.
          */
@@ -215,6 +232,23 @@ public class BankTest {
                 assertThrows(AccountNotFoundException.class, () -> bank.getAccount("Non Existent"));
         }
 
+        /**
+         * Verifies that a removed account can no longer be found.
+         */
+        @Test
+        public void testFindAccountAfterRemoval()
+                        throws InvalidDepositAmountException,
+                        DuplicateAccountException,
+                        AccountNotFoundException,
+                        InvalidLoanAmountException,
+                        InsufficientReservesException {
+                bank.addAccount("John Doe", 1_000.0);
+                assertEquals("John Doe", bank.getAccount("John Doe").getAccountHolder());
+
+                bank.removeAccount("John Doe");
+                assertThrows(AccountNotFoundException.class, () -> bank.getAccount("John Doe"));
+        }
+
         /**
          * Verifies that bank reserves are updated correctly after various operations.
          */
@@ -239,6 +273,264 @@ public class BankTest {
                 bank.removeAccount("John Doe");
         }
 
+        /**
+         * Verifies that repeated fractional deposits and withdrawals leave the
+         * balance and reserves exact.
+         */
+        @Test
+        public void testFractionalAmountsDoNotDrift()
+                        throws InvalidDepositAmountException,
+                        AccountNotFoundException,
+                        InsufficientFundsException,
+                        InsufficientReservesException,
+                        InvalidWithdrawalAmountException {
+                for (int i = 0; i < 1_000; i++)
+                        bank.deposit(INITIAL_ACCOUNT_HOLDERS.getFirst(), 0.1);
+                assertEquals(INITIAL_DEPOSIT + 100.0,
+                                bank.getAccountBalance(INITIAL_ACCOUNT_HOLDERS.getFirst()));
+
+                for (int i = 0; i < 1_000; i++)
+                        bank.withdraw(INITIAL_ACCOUNT_HOLDERS.getFirst(), 0.1);
+                assertEquals(INITIAL_DEPOSIT,
+                                bank.getAccountBalance(INITIAL_ACCOUNT_HOLDERS.getFirst()));
+                assertEquals(INITIAL_RESERVE + INITIAL_DEPOSIT * INITIAL_ACCOUNT_HOLDERS.size(),
+                                bank.getReserves());
+        }
+
+        /**
+         * Verifies that the cents methods operate on the same balances as the
+         * methods in major units.
+         */
+        @Test
+        public void testCentsOperations()
+                        throws InvalidDepositAmountException,
+                        AccountNotFoundException,
+                        InsufficientFundsException,
+                        InsufficientReservesException,
+                        InvalidWithdrawalAmountException {
+                bank.depositCents(INITIAL_ACCOUNT_HOLDERS.getFirst(), 1_050);
+                assertEquals(INITIAL_DEPOSIT + 10.5,
+                                bank.getAccountBalance(INITIAL_ACCOUNT_HOLDERS.getFirst()));
+
+                bank.withdrawCents(INITIAL_ACCOUNT_HOLDERS.getFirst(), 1_050);
+                assertEquals(Money.toCents(INITIAL_DEPOSIT),
+                                bank.getAccountBalanceCents(INITIAL_ACCOUNT_HOLDERS.getFirst()));
+
+                assertThrows(InvalidDepositAmountException.class,
+                                () -> bank.depositCents(INITIAL_ACCOUNT_HOLDERS.getFirst(),
+                                                Money.toCents(MAX_DEPOSIT) + 1));
+        }
+
+        /**
+         * Verifies that the non-throwing methods report each kind of rejection as
+         * a result and leave the balances unchanged.
+         */
+        @Test
+        public void testTryOperationsReportRejections()
+                        throws AccountNotFoundException {
+                String holder = INITIAL_ACCOUNT_HOLDERS.getFirst();
+                double reservesBefore = bank.getReserves();
+
+                assertEquals(OperationResult.INVALID_AMOUNT, bank.tryDeposit(holder, 0));
+                assertEquals(OperationResult.LIMIT_EXCEEDED,
+                                bank.tryDeposit(holder, Money.toCents(MAX_DEPOSIT) + 1));
+                assertEquals(OperationResult.ACCOUNT_NOT_FOUND, bank.tryDeposit("Non Existent", 100));
+                assertEquals(OperationResult.INSUFFICIENT_FUNDS,
+                                bank.tryWithdraw(holder, Money.toCents(INITIAL_DEPOSIT) + 1));
+                assertEquals(OperationResult.EXCEEDS_LOAN_BALANCE, bank.tryRepayLoan(holder, 100));
+
+                assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(holder));
+                assertEquals(reservesBefore, bank.getReserves());
+        }
+
+        /**
+         * Verifies that the non-throwing methods apply accepted operations.
+         */
+        @Test
+        public void testTryOperationsSuccess()
+                        throws AccountNotFoundException {
+                String holder = INITIAL_ACCOUNT_HOLDERS.getFirst();
+
+                assertEquals(OperationResult.OK, bank.tryDeposit(holder, 10_000));
+                assertEquals(OperationResult.OK, bank.tryWithdraw(holder, 10_000));
+                assertEquals(OperationResult.OK, bank.tryApproveLoan(holder, 5_000));
+                assertEquals(50.0, bank.getLoanBalance(holder));
+                assertEquals(OperationResult.OK, bank.tryRepayLoan(holder, 5_000));
+
+                assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(holder));
+                assertEquals(0.0, bank.getLoanBalance(holder));
+        }
+
+        /**
+         * Verifies that a batch applies its accepted operations, reports a result
+         * for each operation, and updates the reserves by the net amount.
+         */
+        @Test
+        public void testApplyBatch()
+                        throws AccountNotFoundException {
+                double reservesBefore = bank.getReserves();
+                List<Operation> batch = List.of(
+                                Operation.deposit(ACCOUNT_HOLDER_1, 100_000),
+                                Operation.withdrawal(ACCOUNT_HOLDER_2, 50_000),
+                                Operation.withdrawal(ACCOUNT_HOLDER_2, Money.toCents(INITIAL_DEPOSIT)),
+                                Operation.deposit("Non Existent", 100),
+                                Operation.repayment(ACCOUNT_HOLDER_1, 100),
+                                Operation.deposit(ACCOUNT_HOLDER_1, 0));
+
+                OperationResult[] results = bank.applyBatch(batch);
+
+                assertArrayEquals(new OperationResult[] {
+                                OperationResult.OK,
+                                OperationResult.OK,
+                                OperationResult.INSUFFICIENT_FUNDS,
+                                OperationResult.ACCOUNT_NOT_FOUND,
+                                OperationResult.EXCEEDS_LOAN_BALANCE,
+                                OperationResult.INVALID_AMOUNT }, results);
+                assertEquals(INITIAL_DEPOSIT + 1_000.0, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+                assertEquals(INITIAL_DEPOSIT - 500.0, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+                assertEquals(reservesBefore + 500.0, bank.getReserves());
+
+                // clean up
+                bank.applyBatch(List.of(Operation.withdrawal(ACCOUNT_HOLDER_1, 100_000),
+                                Operation.deposit(ACCOUNT_HOLDER_2, 50_000)));
+        }
+
+        /**
+         * Verifies that deposits a batch has already credited reach the reserves
+         * even if appending to the mutation log fails part way through the batch.
+         */
+        @Test
+        public void testApplyBatchKeepsReservesWhenLogFails()
+                        throws AccountNotFoundException {
+                double reservesBefore = bank.getReserves();
+                double balanceBefore = bank.getAccountBalance(ACCOUNT_HOLDER_1);
+                int[] appends = { 0 };
+                bank.setMutationLog((mutation, accountHolder, counterparty, amount) -> {
+                        if (++appends[0] == 2)
+                                throw new IllegalStateException("log failed");
+                });
+                try {
+                        assertThrows(IllegalStateException.class, () -> bank.applyBatch(List.of(
+                                        Operation.deposit(ACCOUNT_HOLDER_1, 10_000),
+                                        Operation.deposit(ACCOUNT_HOLDER_1, 20_000),
+                                        Operation.deposit(ACCOUNT_HOLDER_1, 40_000))));
+                } finally {
+                        bank.setMutationLog(MutationLog.NONE);
+                }
+
+                double credited = bank.getAccountBalance(ACCOUNT_HOLDER_1) - balanceBefore;
+                assertEquals(100.0, credited);
+                assertEquals(reservesBefore + credited, bank.getReserves());
+
+                // clean up
+                bank.applyBatch(List.of(Operation.withdrawal(ACCOUNT_HOLDER_1, 10_000)));
+        }
+
+        /**
+         * Verifies that an operation whose mutation log append fails leaves the
+         * bank unchanged and passes the log's exception on.
+         *
+         * @param name      the name of the operation
+         * @param operation the operation to apply
+         */
+        @ParameterizedTest(name = "{0}")
+        @MethodSource("provideLoggedOperations")
+        public void testLogFailureChangesNothing(String name, ThrowingConsumer<Bank> operation)
+                        throws BankException {
+                Bank logged = new Bank(MAX_DEPOSIT, MAX_WITHDRAWAL, MAX_LOAN);
+                logged.addToReserves(INITIAL_RESERVE);
+                for (String accountHolder : INITIAL_ACCOUNT_HOLDERS)
+                        logged.addAccount(accountHolder, INITIAL_DEPOSIT);
+                logged.approveLoan(ACCOUNT_HOLDER_1, 1_000.0);
+                long reserves = logged.getReservesCents();
+                logged.setMutationLog((mutation, accountHolder, counterparty, amount) -> {
+                        throw new UncheckedIOException(new IOException("log failed"));
+                });
+
+                assertThrows(UncheckedIOException.class, () -> operation.accept(logged));
+
+                assertEquals(reserves, logged.getReservesCents());
+                assertEquals(INITIAL_ACCOUNT_HOLDERS.size(), logged.getAccounts().size());
+                for (String accountHolder : INITIAL_ACCOUNT_HOLDERS)
+                        assertEquals(INITIAL_DEPOSIT, logged.getAccountBalance(accountHolder));
+                assertEquals(1_000.0, logged.getLoanBalance(ACCOUNT_HOLDER_1));
+                assertEquals(0.0, logged.getLoanBalance(ACCOUNT_HOLDER_2));
+        }
+
+        /**
+         * Provides every operation that appends to the mutation log.
+         *
+         * @return a stream of operation names and operations
+         */
+        private static Stream<Arguments> provideLoggedOperations() {
+                return Stream.of(
+                                Arguments.of("addToReserves", (ThrowingConsumer<Bank>) b -> b.addToReserves(1.0)),
+                                Arguments.of("subtractFromReserves",
+                                                (ThrowingConsumer<Bank>) b -> b.subtractFromReserves(1.0)),
+                                Arguments.of("addAccount", (ThrowingConsumer<Bank>) b -> b.addAccount("Carol", 1.0)),
+                                Arguments.of("removeAccount",
+                                                (ThrowingConsumer<Bank>) b -> b.removeAccount(ACCOUNT_HOLDER_2)),
+                                Arguments.of("tryDeposit",
+                                                (ThrowingConsumer<Bank>) b -> b.tryDeposit(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("tryWithdraw",
+                                                (ThrowingConsumer<Bank>) b -> b.tryWithdraw(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("tryApproveLoan",
+                                                (ThrowingConsumer<Bank>) b -> b.tryApproveLoan(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("tryRepayLoan",
+                                                (ThrowingConsumer<Bank>) b -> b.tryRepayLoan(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("tryTransfer", (ThrowingConsumer<Bank>) b -> b.tryTransfer(
+                                                ACCOUNT_HOLDER_1, ACCOUNT_HOLDER_2, 100)),
+                                Arguments.of("tryTransferOut",
+                                                (ThrowingConsumer<Bank>) b -> b.tryTransferOut(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("tryTransferIn",
+                                                (ThrowingConsumer<Bank>) b -> b.tryTransferIn(ACCOUNT_HOLDER_1, 100)),
+                                Arguments.of("applyBatch deposit", (ThrowingConsumer<Bank>) b -> b.applyBatch(
+                                                List.of(Operation.deposit(ACCOUNT_HOLDER_1, 100)))),
+                                Arguments.of("applyBatch withdrawal", (ThrowingConsumer<Bank>) b -> b.applyBatch(
+                                                List.of(Operation.withdrawal(ACCOUNT_HOLDER_1, 100)))),
+                                Arguments.of("applyBatch loan", (ThrowingConsumer<Bank>) b -> b.applyBatch(
+                                                List.of(Operation.loan(ACCOUNT_HOLDER_1, 100)))),
+                                Arguments.of("applyBatch repayment", (ThrowingConsumer<Bank>) b -> b.applyBatch(
+                                                List.of(Operation.repayment(ACCOUNT_HOLDER_1, 100)))));
+        }
+
+        /**
+         * Verifies that a transfer moves money between accounts without changing
+         * the reserves.
+         */
+        @Test
+        public void testTransferSuccess()
+                        throws InsufficientFundsException,
+                        AccountNotFoundException,
+                        InvalidWithdrawalAmountException {
+                double reservesBefore = bank.getReserves();
+
+                bank.transfer(ACCOUNT_HOLDER_1, ACCOUNT_HOLDER_2, 1_500.0);
+
+                assertEquals(INITIAL_DEPOSIT - 1_500.0, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+                assertEquals(INITIAL_DEPOSIT + 1_500.0, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+                assertEquals(reservesBefore, bank.getReserves());
+
+                // clean up
+                bank.transfer(ACCOUNT_HOLDER_2, ACCOUNT_HOLDER_1, 1_500.0);
+        }
+
+        /**
+         * Verifies that a transfer exceeding the debited account's balance, or
+         * involving a missing account, throws an exception and changes nothing.
+         */
+        @Test
+        public void testTransferRejected()
+                        throws AccountNotFoundException {
+                assertThrows(InsufficientFundsException.class,
+                                () -> bank.transfer(ACCOUNT_HOLDER_1, ACCOUNT_HOLDER_2, INITIAL_DEPOSIT + 1.0));
+                assertThrows(AccountNotFoundException.class,
+                                () -> bank.transfer(ACCOUNT_HOLDER_1, "Non Existent", 1.0));
+
+                assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_1));
+                assertEquals(INITIAL_DEPOSIT, bank.getAccountBalance(ACCOUNT_HOLDER_2));
+        }
+
         /**
          * Verifies that adding a duplicate account throws an exception.
          */
@@ -16,6 +16,27 @@ import org.junit.platform.suite.api.Suite;
  * account operations.</li>
  * <li>{@link BankTest} - Tests for the {@link Bank} class, covering banking
  * operations.</li>
+ * <li>{@link BankConcurrencyTest} - Tests for the {@link Bank} class when it
+ * is shared between threads.</li>
+ * <li>{@link JournalTest} - Tests for the journal of a {@link Bank}'s
+ * mutations.</li>
+ * <li>{@link SnapshotTest} - Tests for snapshots of a {@link Bank}.</li>
+ * <li>{@link CheckpointTest} - Tests for incremental checkpoints of a
+ * {@link Bank}.</li>
+ * <li>{@link ColumnarAccountStoreTest} - Tests for the primitive-column
+ * account store.</li>
+ * <li>{@link OffHeapAccountStoreTest} - Tests for the off-heap account
+ * store.</li>
+ * <li>{@link MappedAccountStoreTest} - Tests for the memory-mapped account
+ * store.</li>
+ * <li>{@link AccountStoreConformanceTest} - Tests for a {@link Bank} over each
+ * account store backend.</li>
+ * <li>{@link BankEngineTest} - Tests for the single-writer command
+ * engine.</li>
+ * <li>{@link ShardedBankTest} - Tests for a bank split into shards, each
+ * owned by one thread.</li>
+ * <li>{@link TransactionTest} - Tests for all-or-nothing transactions over
+ * several accounts.</li>
  * </ul>
  * </p>
  * 
@@ -24,7 +45,13 @@ import org.junit.platform.suite.api.Suite;
  * </p>
  */
 @Suite
-@SelectClasses({ AccountTest.class, BankTest.class })
+@SelectClasses({ AccountTest.class, BankTest.class, BankConcurrencyTest.class, JournalTest.class,
+        SnapshotTest.class, CheckpointTest.class, ColumnarAccountStoreTest.class,
+        OffHeapAccountStoreTest.class, MappedAccountStoreTest.class,
+        AccountStoreConformanceTest.HashedTest.class, AccountStoreConformanceTest.SortedTest.class,
+        AccountStoreConformanceTest.ColumnarTest.class, AccountStoreConformanceTest.OffHeapTest.class,
+        AccountStoreConformanceTest.MappedTest.class, BankEngineTest.class,
+        ShardedBankTest.class, TransactionTest.class })
 public class BankTestSuite {
 
 }
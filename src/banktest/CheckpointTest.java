@@ -0,0 +1,190 @@
+package banktest;
+
+import bank.Account;
+import bank.Bank;
+import bank.Checkpoints;
+import bank.journal.Journal;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for incremental checkpoints of a {@link Bank} and the
+ * {@link Checkpoints} directory that compacts them.
+ */
+public class CheckpointTest {
+
+    private static final int ACCOUNTS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    private Bank bank;
+
+    /**
+     * Sets up a bank with a number of accounts before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        bank = new Bank(20_000.0, 10_000.0, 15_000.0);
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 100 + i);
+    }
+
+    /**
+     * Verifies that a checkpoint holds only the accounts changed since the last
+     * snapshot, and that applying it to the snapshot rebuilds the bank.
+     */
+    @Test
+    public void testCheckpointHoldsOnlyChangedAccounts()
+            throws Exception {
+        Path snapshot = directory.resolve("base.snapshot");
+        Path checkpoint = directory.resolve("checkpoint.snapshot");
+        bank.writeSnapshot(snapshot, 0);
+        bank.deposit(holder(1), 5.0);
+        bank.approveLoan(holder(2), 7.0);
+        bank.removeAccount(holder(3));
+        bank.addAccount(holder(ACCOUNTS), 9.0);
+        bank.setMaxDeposit(30_000.0);
+        bank.writeCheckpoint(checkpoint, 0);
+
+        assertTrue(Files.size(checkpoint) * 100 < Files.size(snapshot));
+        Bank recovered = new Bank(1.0, 1.0, 1.0);
+        recovered.loadSnapshot(snapshot);
+        recovered.applyCheckpoint(checkpoint);
+        assertSameState(bank, recovered);
+    }
+
+    /**
+     * Verifies that an account removed and then added again between
+     * checkpoints is kept.
+     */
+    @Test
+    public void testReaddedAccountSurvivesCheckpoint()
+            throws Exception {
+        Path snapshot = directory.resolve("base.snapshot");
+        Path checkpoint = directory.resolve("checkpoint.snapshot");
+        bank.writeSnapshot(snapshot, 0);
+        bank.removeAccount(holder(4));
+        bank.addAccount(holder(4), 12.0);
+        bank.writeCheckpoint(checkpoint, 0);
+
+        Bank recovered = new Bank(1.0, 1.0, 1.0);
+        recovered.loadSnapshot(snapshot);
+        recovered.applyCheckpoint(checkpoint);
+        assertSameState(bank, recovered);
+    }
+
+    /**
+     * Verifies that the accounts written to a checkpoint that could not be put
+     * in place are still held by the next checkpoint.
+     */
+    @Test
+    public void testFailedCheckpointKeepsChanges()
+            throws Exception {
+        Path snapshot = directory.resolve("base.snapshot");
+        Path checkpoint = directory.resolve("checkpoint.snapshot");
+        bank.writeSnapshot(snapshot, 0);
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.depositCents(holder(i), 1);
+        Path inTheWay = Files.createDirectories(checkpoint.resolve("in-the-way"));
+        assertThrows(IOException.class, () -> bank.writeCheckpoint(checkpoint, 0));
+
+        Files.delete(inTheWay);
+        Files.delete(checkpoint);
+        bank.writeCheckpoint(checkpoint, 0);
+        Bank recovered = new Bank(1.0, 1.0, 1.0);
+        recovered.loadSnapshot(snapshot);
+        recovered.applyCheckpoint(checkpoint);
+        assertSameState(bank, recovered);
+    }
+
+    /**
+     * Verifies that compacting a directory of checkpoints leaves a single base
+     * that loads to the same state.
+     */
+    @Test
+    public void testCompactionFoldsCheckpointsIntoBase()
+            throws Exception {
+        try (Checkpoints checkpoints = new Checkpoints(directory)) {
+            checkpoints.writeBase(bank, 0);
+            bank.deposit(holder(1), 5.0);
+            bank.removeAccount(holder(3));
+            checkpoints.writeCheckpoint(bank, 0);
+            bank.withdraw(holder(1), 2.0);
+            bank.addAccount(holder(3), 4.0);
+            bank.addAccount(holder(ACCOUNTS), 9.0);
+            checkpoints.writeCheckpoint(bank, 0);
+            bank.removeAccount(holder(5));
+            checkpoints.writeCheckpoint(bank, 0);
+
+            Bank beforeCompaction = new Bank(1.0, 1.0, 1.0);
+            checkpoints.load(beforeCompaction);
+            assertSameState(bank, beforeCompaction);
+
+            checkpoints.compactInBackground().get();
+            assertEquals(1, fileCount(directory));
+            Bank afterCompaction = new Bank(1.0, 1.0, 1.0);
+            checkpoints.load(afterCompaction);
+            assertSameState(bank, afterCompaction);
+        }
+    }
+
+    /**
+     * Verifies that a bank is recovered from a base, its checkpoints and the
+     * journal records written after the last checkpoint.
+     */
+    @Test
+    public void testRecoverFromCheckpointsAndJournalTail()
+            throws Exception {
+        Path checkpointDirectory = directory.resolve("checkpoints");
+        Path journalFile = directory.resolve("bank.journal");
+        try (Checkpoints checkpoints = new Checkpoints(checkpointDirectory);
+                Journal journal = new Journal(journalFile, Journal.Durability.GROUP)) {
+            bank.setMutationLog(journal);
+            checkpoints.writeBase(bank, journal.getLastSequence());
+            bank.deposit(holder(1), 5.0);
+            checkpoints.writeCheckpoint(bank, journal.getLastSequence());
+            bank.transfer(holder(1), holder(2), 3.0);
+            bank.removeAccount(holder(3));
+        }
+
+        Bank recovered = new Bank(1.0, 1.0, 1.0);
+        try (Checkpoints checkpoints = new Checkpoints(checkpointDirectory)) {
+            long sequence = checkpoints.load(recovered);
+            assertEquals(1, sequence);
+            assertEquals(3, recovered.replayJournal(journalFile, sequence));
+        }
+        assertSameState(bank, recovered);
+    }
+
+    private static void assertSameState(Bank expected, Bank actual)
+            throws Exception {
+        assertEquals(expected.getMaxDeposit(), actual.getMaxDeposit());
+        assertEquals(expected.getReservesCents(), actual.getReservesCents());
+        assertEquals(expected.getAccounts().size(), actual.getAccounts().size());
+        for (Account account : expected.getAccounts()) {
+            String holder = account.getAccountHolder();
+            assertEquals(account.getAccountBalanceCents(), actual.getAccountBalanceCents(holder), holder);
+            assertEquals(account.getLoanBalanceCents(), actual.getLoanBalanceCents(holder), holder);
+        }
+    }
+
+    private static long fileCount(Path path)
+            throws Exception {
+        try (Stream<Path> files = Files.list(path)) {
+            return files.count();
+        }
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+}
@@ -0,0 +1,16 @@
+package banktest;
+
+import bank.store.ColumnarAccountStore;
+import bank.store.SlotAccountStore;
+
+/**
+ * Runs the {@link SlotAccountStoreTest} tests against a
+ * {@link ColumnarAccountStore}.
+ */
+public class ColumnarAccountStoreTest extends SlotAccountStoreTest {
+
+    @Override
+    protected SlotAccountStore createStore() {
+        return new ColumnarAccountStore();
+    }
+}
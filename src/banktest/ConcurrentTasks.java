@@ -0,0 +1,49 @@
+package banktest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the same task on several threads at once for the concurrency tests.
+ */
+final class ConcurrentTasks {
+
+    /**
+     * Work run by each thread in {@link #runOnThreads(int, ThreadTask)}.
+     */
+    interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+
+    private ConcurrentTasks() {
+    }
+
+    /**
+     * Runs a task on a number of threads and waits for all of them to finish,
+     * rethrowing the first failure.
+     *
+     * @param threads the number of threads to run the task on
+     * @param task    the task to run, given the index of the thread running it
+     */
+    static void runOnThreads(int threads, ThreadTask task)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package banktest;
+
+import bank.Account;
+import bank.Bank;
+import bank.OperationResult;
+import bank.exceptions.AccountNotFoundException;
+import bank.journal.Journal;
+import bank.journal.JournalReader;
+import bank.journal.Mutation;
+import bank.journal.MutationLog;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link Journal} of a {@link Bank}'s mutations and for
+ * rebuilding a bank by replaying it.
+ */
+public class JournalTest {
+
+    private static final int HOLDERS = 8;
+    private static final int OPERATIONS = 2_000;
+    private static final int FAULTS = 50;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Bank bank;
+
+    /**
+     * Sets up a bank and a journal file before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        file = directory.resolve("bank.journal");
+        bank = new Bank(20_000.0, 10_000.0, 15_000.0);
+    }
+
+    /**
+     * Verifies that every mutation is journaled, in order, under each
+     * durability.
+     */
+    @Test
+    public void testMutationsAreJournaled()
+            throws Exception {
+        for (Journal.Durability durability : Journal.Durability.values()) {
+            Path journalFile = directory.resolve(durability + ".journal");
+            Bank journaled = new Bank(20_000.0, 10_000.0, 15_000.0);
+            try (Journal journal = new Journal(journalFile, durability)) {
+                journaled.setMutationLog(journal);
+                journaled.addAccount("Alice", 500.0);
+                journaled.addAccount("Bob", 100.0);
+                journaled.deposit("Alice", 100.0);
+                journaled.withdraw("Alice", 50.0);
+                journaled.approveLoan("Bob", 200.0);
+                journaled.repayLoan("Bob", 200.0);
+                journaled.transfer("Alice", "Bob", 25.0);
+                journaled.addToReserves(10.0);
+                journaled.subtractFromReserves(10.0);
+                journaled.removeAccount("Bob");
+            }
+
+            List<Mutation> mutations = new ArrayList<>();
+            try (JournalReader reader = new JournalReader(journalFile)) {
+                while (reader.next()) {
+                    mutations.add(reader.getMutation());
+                    assertEquals(mutations.size(), reader.getSequence());
+                    if (reader.getMutation() == Mutation.TRANSFER) {
+                        assertEquals("Alice", reader.getAccountHolder());
+                        assertEquals("Bob", reader.getCounterparty());
+                        assertEquals(2_500, reader.getAmount());
+                    }
+                    if (reader.getMutation() == Mutation.ACCOUNT_REMOVED)
+                        assertEquals(12_500, reader.getAmount());
+                }
+            }
+            assertEquals(List.of(Mutation.ACCOUNT_ADDED, Mutation.ACCOUNT_ADDED, Mutation.DEPOSIT,
+                    Mutation.WITHDRAWAL, Mutation.LOAN, Mutation.REPAYMENT, Mutation.TRANSFER,
+                    Mutation.RESERVES_ADDED, Mutation.RESERVES_SUBTRACTED, Mutation.ACCOUNT_REMOVED),
+                    mutations, durability.toString());
+        }
+    }
+
+    /**
+     * Verifies that rejected operations are not journaled.
+     */
+    @Test
+    public void testRejectedOperationsAreNotJournaled()
+            throws Exception {
+        try (Journal journal = new Journal(file, Journal.Durability.SYNC)) {
+            bank.setMutationLog(journal);
+            bank.addAccount("Alice", 100.0);
+            bank.tryWithdraw("Alice", 1_000_000);
+            bank.tryDeposit("Nobody", 100);
+            assertEquals(1, journal.getLastSequence());
+        }
+    }
+
+    /**
+     * Verifies that a removal is journaled while the account is still in the
+     * bank, so that a new account for the same holder cannot be journaled
+     * before it.
+     */
+    @Test
+    public void testRemovalIsJournaledBeforeAccountLeavesBank()
+            throws Exception {
+        bank.addAccount("Alice", 100.0);
+        List<Boolean> stillPresent = new ArrayList<>();
+        bank.setMutationLog((mutation, accountHolder, counterparty, amount) -> {
+            if (mutation == Mutation.ACCOUNT_REMOVED)
+                stillPresent.add(bank.getAccounts().stream()
+                        .anyMatch(account -> account.getAccountHolder().equals(accountHolder)));
+        });
+
+        bank.removeAccount("Alice");
+
+        assertEquals(List.of(true), stillPresent);
+        assertThrows(AccountNotFoundException.class, () -> bank.getAccount("Alice"));
+    }
+
+    /**
+     * Verifies that appends racing with {@link Journal#close()} are rejected
+     * without failing the close, and that every record accepted before it is
+     * written.
+     */
+    @Test
+    @Timeout(30)
+    public void testAppendsRacingCloseDoNotFailClose()
+            throws Exception {
+        for (int round = 0; round < 20; round++) {
+            Path journalFile = directory.resolve("race-" + round + ".journal");
+            Journal journal = new Journal(journalFile, Journal.Durability.ASYNC);
+            List<Thread> appenders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread appender = new Thread(() -> {
+                    try {
+                        while (true)
+                            journal.append(Mutation.RESERVES_ADDED, null, null, 1);
+                    } catch (UncheckedIOException e) {
+                        // expected once the journal is closed
+                    }
+                });
+                appenders.add(appender);
+                appender.start();
+            }
+            Thread.sleep(2);
+            assertDoesNotThrow(journal::close);
+            for (Thread appender : appenders)
+                appender.join();
+            assertThrows(UncheckedIOException.class,
+                    () -> journal.append(Mutation.RESERVES_ADDED, null, null, 1));
+
+            long records = 0;
+            try (JournalReader reader = new JournalReader(journalFile)) {
+                while (reader.next())
+                    records++;
+            }
+            assertEquals(journal.getLastSequence(), records);
+        }
+    }
+
+    /**
+     * Verifies that reopening a journal drops a torn final record and continues
+     * the sequence after the last valid one.
+     */
+    @Test
+    public void testReopenTruncatesTornRecord()
+            throws Exception {
+        try (Journal journal = new Journal(file, Journal.Durability.GROUP)) {
+            bank.setMutationLog(journal);
+            bank.addAccount("Alice", 100.0);
+            bank.deposit("Alice", 1.0);
+            bank.deposit("Alice", 2.0);
+        }
+        truncate(file, size(file) - 3);
+
+        try (Journal journal = new Journal(file, Journal.Durability.GROUP)) {
+            assertEquals(2, journal.getLastSequence());
+            bank.setMutationLog(journal);
+            bank.deposit("Alice", 3.0);
+        }
+
+        List<Long> amounts = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(file)) {
+            while (reader.next())
+                amounts.add(reader.getAmount());
+            assertEquals(size(file), reader.getValidLength());
+        }
+        assertEquals(List.of(10_000L, 100L, 300L), amounts);
+    }
+
+    /**
+     * Verifies that replaying a journal into a fresh bank rebuilds its accounts,
+     * loans and reserves.
+     */
+    @Test
+    public void testReplayRebuildsBank()
+            throws Exception {
+        List<BankOperation> operations = journalRandomOperations();
+
+        Bank recovered = new Bank(20_000.0, 10_000.0, 15_000.0);
+        assertEquals(operations.size(), recovered.replayJournal(file, 0));
+        assertSameState(applyAll(operations.size(), operations), recovered);
+        assertSameState(bank, recovered);
+    }
+
+    /**
+     * Verifies that replaying a journal cut at random offsets rebuilds the
+     * state recorded by every complete record before the cut.
+     */
+    @Test
+    public void testReplayStopsAtTornRecord()
+            throws Exception {
+        List<BankOperation> operations = journalRandomOperations();
+        List<Long> recordEnds = recordEnds(file);
+        Path copy = directory.resolve("torn.journal");
+        Random random = new Random(12);
+
+        for (int fault = 0; fault < FAULTS; fault++) {
+            long cut = random.nextInt((int) size(file));
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            truncate(copy, cut);
+
+            int complete = completeRecords(recordEnds, cut);
+            Bank recovered = new Bank(20_000.0, 10_000.0, 15_000.0);
+            assertEquals(complete, recovered.replayJournal(copy, 0), "cut at " + cut);
+            assertSameState(applyAll(complete, operations), recovered);
+        }
+    }
+
+    /**
+     * Verifies that a committed transaction is journaled as one record, and
+     * that replay applies all of its operations or, if that record is torn,
+     * none of them.
+     */
+    @Test
+    public void testTransactionIsReplayedWhole()
+            throws Exception {
+        try (Journal journal = new Journal(file, Journal.Durability.SYNC)) {
+            bank.setMutationLog(journal);
+            bank.addAccount("Alice", 100.0);
+            bank.addAccount("Bob", 100.0);
+            bank.transaction().withdraw("Alice", 4_000).deposit("Bob", 4_000).approveLoan("Bob", 1_000).commit();
+        }
+
+        List<Mutation> mutations = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(file)) {
+            while (reader.next()) {
+                mutations.add(reader.getMutation());
+                if (reader.getMutation() == Mutation.TRANSACTION) {
+                    assertEquals(3, reader.getAmount());
+                    assertEquals(3, reader.getOperations().size());
+                }
+            }
+        }
+        assertEquals(List.of(Mutation.ACCOUNT_ADDED, Mutation.ACCOUNT_ADDED, Mutation.TRANSACTION), mutations);
+
+        Bank recovered = new Bank(20_000.0, 10_000.0, 15_000.0);
+        assertEquals(3, recovered.replayJournal(file, 0));
+        assertSameState(bank, recovered);
+
+        truncate(file, size(file) - 3);
+        Bank torn = new Bank(20_000.0, 10_000.0, 15_000.0);
+        assertEquals(2, torn.replayJournal(file, 0));
+        assertEquals(10_000, torn.getAccountBalanceCents("Alice"));
+        assertEquals(10_000, torn.getAccountBalanceCents("Bob"));
+        assertEquals(0, torn.getLoanBalanceCents("Bob"));
+        assertEquals(20_000, torn.getReservesCents());
+    }
+
+    /**
+     * Verifies that replay stops at a record whose bytes have been corrupted.
+     */
+    @Test
+    public void testReplayStopsAtCorruptRecord()
+            throws Exception {
+        List<BankOperation> operations = journalRandomOperations();
+        List<Long> recordEnds = recordEnds(file);
+        Random random = new Random(34);
+
+        long offset = random.nextInt((int) size(file));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) ~buffer.get(0));
+            buffer.rewind();
+            channel.write(buffer, offset);
+        }
+
+        int complete = completeRecords(recordEnds, offset);
+        Bank recovered = new Bank(20_000.0, 10_000.0, 15_000.0);
+        assertEquals(complete, recovered.replayJournal(file, 0));
+        assertSameState(applyAll(complete, operations), recovered);
+    }
+
+    /**
+     * Verifies that records already applied are skipped.
+     */
+    @Test
+    public void testReplaySkipsAppliedRecords()
+            throws Exception {
+        List<BankOperation> operations = journalRandomOperations();
+        int applied = operations.size() / 2;
+
+        Bank recovered = applyAll(applied, operations);
+        assertEquals(operations.size(), recovered.replayJournal(file, applied));
+        assertSameState(bank, recovered);
+    }
+
+    /**
+     * A single operation on a bank, used to rebuild the expected state.
+     */
+    private interface BankOperation {
+        OperationResult apply(Bank bank) throws Exception;
+    }
+
+    /**
+     * Applies random operations to the bank with every successful one
+     * journaled, and returns the successful operations in journal order.
+     */
+    private List<BankOperation> journalRandomOperations()
+            throws Exception {
+        List<BankOperation> operations = new ArrayList<>();
+        Random random = new Random(56);
+        try (Journal journal = new Journal(file, Journal.Durability.ASYNC)) {
+            bank.setMutationLog(journal);
+            for (int i = 0; i < HOLDERS; i++) {
+                String holder = holder(i);
+                BankOperation operation = target -> {
+                    target.addAccountCents(holder, 100_000);
+                    return OperationResult.OK;
+                };
+                operation.apply(bank);
+                operations.add(operation);
+            }
+            for (int i = 0; i < OPERATIONS; i++) {
+                String holder = holder(random.nextInt(HOLDERS));
+                String counterparty = holder(random.nextInt(HOLDERS));
+                long amount = 1 + random.nextInt(50_000);
+                BankOperation operation = switch (random.nextInt(5)) {
+                    case 0 -> target -> target.tryDeposit(holder, amount);
+                    case 1 -> target -> target.tryWithdraw(holder, amount);
+                    case 2 -> target -> target.tryApproveLoan(holder, amount);
+                    case 3 -> target -> target.tryRepayLoan(holder, amount);
+                    default -> target -> target.tryTransfer(holder, counterparty, amount);
+                };
+                if (operation.apply(bank) == OperationResult.OK)
+                    operations.add(operation);
+            }
+            bank.setMutationLog(MutationLog.NONE);
+        }
+        return operations;
+    }
+
+    private static Bank applyAll(int count, List<BankOperation> operations)
+            throws Exception {
+        Bank expected = new Bank(20_000.0, 10_000.0, 15_000.0);
+        for (int i = 0; i < count; i++)
+            assertEquals(OperationResult.OK, operations.get(i).apply(expected));
+        return expected;
+    }
+
+    private static void assertSameState(Bank expected, Bank actual)
+            throws Exception {
+        assertEquals(expected.getReservesCents(), actual.getReservesCents());
+        assertEquals(expected.getAccounts().size(), actual.getAccounts().size());
+        for (Account account : expected.getAccounts()) {
+            String holder = account.getAccountHolder();
+            assertEquals(account.getAccountBalanceCents(), actual.getAccountBalanceCents(holder), holder);
+            assertEquals(account.getLoanBalanceCents(), actual.getLoanBalanceCents(holder), holder);
+        }
+    }
+
+    private static List<Long> recordEnds(Path path)
+            throws IOException {
+        List<Long> ends = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(path)) {
+            while (reader.next())
+                ends.add(reader.getValidLength());
+        }
+        return ends;
+    }
+
+    /**
+     * Counts the records that end at or before a byte offset, which are the
+     * ones left intact by a cut or corruption at that offset.
+     */
+    private static int completeRecords(List<Long> recordEnds, long offset) {
+        int complete = 0;
+        while (complete < recordEnds.size() && recordEnds.get(complete) <= offset)
+            complete++;
+        return complete;
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+
+    private static long size(Path path)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size();
+        }
+    }
+
+    private static void truncate(Path path, long length)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
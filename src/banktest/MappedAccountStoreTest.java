@@ -0,0 +1,143 @@
+package banktest;
+
+import bank.store.MappedAccountStore;
+import bank.store.SlotAccountStore;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link SlotAccountStoreTest} tests against a
+ * {@link MappedAccountStore}, along with tests of reopening its file.
+ */
+public class MappedAccountStoreTest extends SlotAccountStoreTest {
+
+    private static final int CAPACITY = 1 << 18;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    @Override
+    protected SlotAccountStore createStore()
+            throws IOException {
+        file = directory.resolve("accounts.mapped");
+        return new MappedAccountStore(file, CAPACITY);
+    }
+
+    /**
+     * Closes the store after each test.
+     */
+    @AfterEach
+    public void tearDown()
+            throws IOException {
+        ((MappedAccountStore) store).close();
+    }
+
+    /**
+     * Verifies that a file closed cleanly reopens with the same accounts,
+     * balances and free slots.
+     */
+    @Test
+    public void testReopenKeepsAccounts()
+            throws IOException {
+        populate();
+        ((MappedAccountStore) store).close();
+
+        store = new MappedAccountStore(file, 1);
+        assertEquals(CAPACITY, ((MappedAccountStore) store).getCapacity());
+        assertPopulated();
+    }
+
+    /**
+     * Verifies that a copy of a file taken while it was open, as a crash would
+     * leave it, is recovered with the accounts that had been forced.
+     */
+    @Test
+    public void testUncleanFileIsRecovered()
+            throws IOException {
+        populate();
+        ((MappedAccountStore) store).force();
+        Path copy = directory.resolve("crashed.mapped");
+        Files.copy(file, copy);
+        store.insert("Unforced", 1, 0);
+
+        ((MappedAccountStore) store).close();
+        file = copy;
+        store = new MappedAccountStore(copy, CAPACITY);
+        assertPopulated();
+    }
+
+    /**
+     * Verifies that inserting into a full file is rejected.
+     */
+    @Test
+    public void testFullFileRejectsInsert()
+            throws IOException {
+        ((MappedAccountStore) store).close();
+        store = new MappedAccountStore(directory.resolve("small.mapped"), 1);
+        int capacity = ((MappedAccountStore) store).getCapacity();
+        for (int i = 0; i < capacity; i++)
+            assertNotEquals(SlotAccountStore.NO_SLOT, store.insert(holder(i), i, 0));
+        assertThrows(IllegalStateException.class, () -> store.insert(holder(capacity), 0, 0));
+        assertEquals(capacity, store.size());
+    }
+
+    /**
+     * Verifies that a file without the mapped account header is rejected.
+     */
+    @Test
+    public void testForeignFileIsRejected()
+            throws IOException {
+        Path foreign = directory.resolve("foreign.mapped");
+        try (FileChannel channel = FileChannel.open(foreign, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8192));
+        }
+        assertThrows(IOException.class, () -> new MappedAccountStore(foreign, CAPACITY));
+    }
+
+    /**
+     * Inserts accounts, removes some of them and updates the balances of
+     * others.
+     */
+    private void populate() {
+        for (int i = 0; i < 1_000; i++)
+            store.insert(holder(i), i, i % 3);
+        for (int i = 0; i < 1_000; i += 10) {
+            int slot = store.find(holder(i));
+            synchronized (store.lock(slot)) {
+                store.remove(slot);
+            }
+        }
+        int slot = store.find(holder(1));
+        synchronized (store.lock(slot)) {
+            store.setBalance(slot, 5_000);
+        }
+    }
+
+    private void assertPopulated() {
+        assertEquals(900, store.size());
+        for (int i = 0; i < 1_000; i++) {
+            int slot = store.find(holder(i));
+            if (i % 10 == 0) {
+                assertEquals(SlotAccountStore.NO_SLOT, slot, holder(i));
+            } else {
+                assertNotEquals(SlotAccountStore.NO_SLOT, slot, holder(i));
+                assertEquals(i == 1 ? 5_000 : i, store.getBalance(slot), holder(i));
+                assertEquals(i % 3, store.getLoanBalance(slot), holder(i));
+            }
+        }
+        int reused = store.insert("Reused", 0, 0);
+        assertTrue(reused < 1_000);
+        assertEquals(reused, store.find("Reused"));
+    }
+}
@@ -0,0 +1,47 @@
+package banktest;
+
+import bank.store.OffHeapAccountStore;
+import bank.store.SlotAccountStore;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link SlotAccountStoreTest} tests against an
+ * {@link OffHeapAccountStore}, along with tests of its holder encoding.
+ */
+public class OffHeapAccountStoreTest extends SlotAccountStoreTest {
+
+    @Override
+    protected SlotAccountStore createStore() {
+        return new OffHeapAccountStore();
+    }
+
+    /**
+     * Verifies that account holders with non-ASCII names, up to the longest
+     * that fits, are stored and found.
+     */
+    @Test
+    public void testNonAsciiHolders() {
+        String longest = "é".repeat(OffHeapAccountStore.MAX_HOLDER_BYTES / 2);
+        int zoe = store.insert("Zoë", 100, 0);
+        int slot = store.insert(longest, 200, 0);
+        assertEquals(zoe, store.find("Zoë"));
+        assertEquals(slot, store.find(longest));
+        assertEquals(SlotAccountStore.NO_SLOT, store.find("Zoe"));
+        assertEquals("Zoë", store.getAccountHolder(zoe));
+        assertEquals(longest, store.getAccountHolder(slot));
+        assertTrue(store.holds(zoe, "Zoë"));
+        assertFalse(store.holds(zoe, "Zoë "));
+    }
+
+    /**
+     * Verifies that a name too long for a record is rejected.
+     */
+    @Test
+    public void testLongHolderIsRejected() {
+        String tooLong = "x".repeat(OffHeapAccountStore.MAX_HOLDER_BYTES + 1);
+        assertThrows(IllegalArgumentException.class, () -> store.insert(tooLong, 0, 0));
+        assertEquals(0, store.size());
+    }
+}
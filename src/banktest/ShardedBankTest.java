@@ -0,0 +1,272 @@
+package banktest;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+import bank.engine.ShardedBank;
+import bank.exceptions.AccountNotFoundException;
+import bank.exceptions.BankException;
+import bank.exceptions.DuplicateAccountException;
+import org.junit.jupiter.api.*;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static banktest.ConcurrentTasks.runOnThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ShardedBank}.
+ */
+public class ShardedBankTest {
+
+    private static final int SHARDS = 4;
+    private static final int ACCOUNTS = 200;
+    private static final long RESERVES = 10_000_000;
+    private static final long INITIAL_DEPOSIT = 10_000;
+
+    private ShardedBank bank;
+
+    /**
+     * Sets up a sharded bank with reserves and a number of accounts before
+     * each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        bank = new ShardedBank(SHARDS, 20_000.0, 10_000.0, 15_000.0, 64);
+        bank.addToReservesCents(RESERVES);
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), INITIAL_DEPOSIT);
+    }
+
+    /**
+     * Stops the shards' engines after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        bank.close();
+    }
+
+    /**
+     * Verifies that accounts are spread over the shards, each held by the shard
+     * its account holder hashes to, and that the reserves add up.
+     */
+    @Test
+    public void testAccountsAreSpreadOverShards() {
+        int total = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int accounts = bank.getShard(shard).getAccounts().size();
+            assertTrue(accounts > 0);
+            total += accounts;
+        }
+        assertEquals(ACCOUNTS, total);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String holder = holder(i);
+            assertDoesNotThrow(() -> bank.getShard(bank.shardOf(holder)).getAccount(holder));
+        }
+        assertEquals(RESERVES + ACCOUNTS * INITIAL_DEPOSIT, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that single-account operations are applied on the account's
+     * shard and change only that shard's reserves.
+     */
+    @Test
+    @Timeout(10)
+    public void testSingleAccountOperations()
+            throws Exception {
+        String holder = holder(1);
+        long shardReserves = bank.getShard(bank.shardOf(holder)).getReservesCents();
+
+        assertEquals(OperationResult.OK, bank.apply(Operation.deposit(holder, 500)));
+        assertEquals(OperationResult.OK, bank.apply(Operation.withdrawal(holder, 200)));
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS, bank.apply(Operation.withdrawal(holder, 900_000)));
+        assertEquals(OperationResult.ACCOUNT_NOT_FOUND, bank.apply(Operation.deposit("Nobody", 1)));
+
+        assertEquals(INITIAL_DEPOSIT + 300, bank.getAccountBalanceCents(holder));
+        assertEquals(shardReserves + 300, bank.getShard(bank.shardOf(holder)).getReservesCents());
+    }
+
+    /**
+     * Verifies that transfers within a shard and between shards move money
+     * without changing the total reserves, and that a declined credit returns
+     * the money to the source account.
+     */
+    @Test
+    @Timeout(10)
+    public void testTransfers()
+            throws Exception {
+        String from = holder(0);
+        String sameShard = holderOnShard(bank.shardOf(from), from);
+        String otherShard = holderOnShard((bank.shardOf(from) + 1) % SHARDS, from);
+        long reserves = bank.getReservesCents();
+
+        assertEquals(OperationResult.OK, bank.transfer(from, sameShard, 1_000));
+        assertEquals(OperationResult.OK, bank.transfer(from, otherShard, 2_000));
+        assertEquals(INITIAL_DEPOSIT - 3_000, bank.getAccountBalanceCents(from));
+        assertEquals(INITIAL_DEPOSIT + 1_000, bank.getAccountBalanceCents(sameShard));
+        assertEquals(INITIAL_DEPOSIT + 2_000, bank.getAccountBalanceCents(otherShard));
+        assertEquals(reserves, bank.getReservesCents());
+
+        bank.removeAccount(otherShard);
+        reserves = bank.getReservesCents();
+        assertEquals(OperationResult.ACCOUNT_NOT_FOUND, bank.transfer(from, otherShard, 500));
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS, bank.transfer(from, sameShard, INITIAL_DEPOSIT));
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS,
+                bank.transfer(from, holderOnShard((bank.shardOf(from) + 2) % SHARDS, from), INITIAL_DEPOSIT));
+        assertEquals(OperationResult.LIMIT_EXCEEDED, bank.transfer(from, otherShard, 3_000_000));
+        assertEquals(INITIAL_DEPOSIT - 3_000, bank.getAccountBalanceCents(from));
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that a transfer between shards moves its slice of the reserves
+     * with it, so it succeeds even when the source shard's reserves have been
+     * lent out.
+     */
+    @Test
+    @Timeout(10)
+    public void testTransferBetweenShardsMovesReserves()
+            throws Exception {
+        String from = holder(0);
+        String to = holderOnShard((bank.shardOf(from) + 1) % SHARDS, from);
+        Bank source = bank.getShard(bank.shardOf(from));
+        Bank target = bank.getShard(bank.shardOf(to));
+        while (source.getReservesCents() > 0)
+            assertEquals(OperationResult.OK,
+                    bank.apply(Operation.loan(from, Math.min(source.getReservesCents(), 1_500_000))));
+        long reserves = bank.getReservesCents();
+        long targetReserves = target.getReservesCents();
+
+        assertEquals(OperationResult.INSUFFICIENT_RESERVES, bank.apply(Operation.withdrawal(from, 5_000)));
+        assertEquals(OperationResult.OK, bank.transfer(from, to, 5_000));
+        assertEquals(INITIAL_DEPOSIT - 5_000, bank.getAccountBalanceCents(from));
+        assertEquals(INITIAL_DEPOSIT + 5_000, bank.getAccountBalanceCents(to));
+        assertEquals(-5_000, source.getReservesCents());
+        assertEquals(targetReserves + 5_000, target.getReservesCents());
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that a transfer between shards whose amount can be neither
+     * credited nor returned, because the source account was closed while the
+     * transfer was under way, is reported rather than dropped.
+     */
+    @Test
+    @Timeout(10)
+    public void testFailedRefundIsReported()
+            throws Exception {
+        String from = holder(0);
+        String to = holderOnShard((bank.shardOf(from) + 1) % SHARDS, from);
+        bank.removeAccount(to);
+        CountDownLatch sourceClosed = new CountDownLatch(1);
+        bank.submit(Operation.deposit(holderOnShard(bank.shardOf(to), to), 1), (sequence, result) -> {
+            try {
+                sourceClosed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<OperationResult> transfer = CompletableFuture.supplyAsync(
+                () -> bank.transfer(from, to, 1_000));
+        try {
+            while (bank.getAccountBalanceCents(from) == INITIAL_DEPOSIT)
+                Thread.onSpinWait();
+            bank.removeAccount(from);
+        } finally {
+            sourceClosed.countDown();
+        }
+
+        ExecutionException failure = assertThrows(ExecutionException.class, transfer::get);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+    }
+
+    /**
+     * Verifies that accounts opened and closed through the sharded bank are
+     * changed by their shard's owning thread, behind the commands already
+     * submitted to it.
+     */
+    @Test
+    @Timeout(10)
+    public void testAccountChangesRunOnShardThread()
+            throws Exception {
+        String holder = holder(ACCOUNTS);
+        Bank shard = bank.getShard(bank.shardOf(holder));
+        long reserves = shard.getReservesCents();
+        CountDownLatch released = new CountDownLatch(1);
+        bank.submit(Operation.deposit(holderOnShard(bank.shardOf(holder), holder), 1), (sequence, result) -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<Void> opened = CompletableFuture.runAsync(() -> {
+            try {
+                bank.addAccountCents(holder, INITIAL_DEPOSIT);
+            } catch (BankException e) {
+                throw new AssertionError(e);
+            }
+        });
+        try {
+            Thread.sleep(50);
+            assertFalse(opened.isDone());
+        } finally {
+            released.countDown();
+        }
+        opened.get();
+
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder));
+        assertThrows(DuplicateAccountException.class, () -> bank.addAccountCents(holder, INITIAL_DEPOSIT));
+        bank.removeAccount(holder);
+        assertThrows(AccountNotFoundException.class, () -> bank.removeAccount(holder));
+        assertEquals(reserves + 1, shard.getReservesCents());
+    }
+
+    /**
+     * Verifies that concurrent transfers between random accounts on every
+     * shard neither create nor lose money.
+     */
+    @Test
+    @Timeout(30)
+    public void testConcurrentTransfersConserveMoney()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+        runOnThreads(SHARDS, seed -> {
+            Random random = new Random(seed);
+            for (int i = 0; i < 2_000; i++)
+                bank.transfer(holder(random.nextInt(ACCOUNTS)), holder(random.nextInt(ACCOUNTS)),
+                        1 + random.nextInt(5_000));
+        });
+
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++)
+            total += bank.getAccountBalanceCents(holder(i));
+        assertEquals(reserves, bank.getReservesCents());
+        assertEquals(ACCOUNTS * INITIAL_DEPOSIT, total);
+    }
+
+    /**
+     * Verifies that a sharded bank needs at least one shard.
+     */
+    @Test
+    public void testInvalidShardCount() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardedBank(0, 1.0, 1.0, 1.0, 64));
+    }
+
+    private String holderOnShard(int shard, String except) {
+        for (int i = 0; i < ACCOUNTS; i++)
+            if (bank.shardOf(holder(i)) == shard && !holder(i).equals(except))
+                return holder(i);
+        throw new IllegalStateException("No account on shard " + shard);
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+}
@@ -0,0 +1,297 @@
+package banktest;
+
+import bank.store.SlotAccountStore;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests shared by every {@link SlotAccountStore}. Each store has a
+ * subclass that creates it.
+ */
+public abstract class SlotAccountStoreTest {
+
+    private static final int ACCOUNTS = 200_000;
+    private static final int THREADS = 4;
+
+    protected SlotAccountStore store;
+
+    /**
+     * Creates an empty store.
+     *
+     * @return the store to test
+     * @throws Exception if the store cannot be created
+     */
+    protected abstract SlotAccountStore createStore() throws Exception;
+
+    /**
+     * Sets up an empty store before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        store = createStore();
+    }
+
+    /**
+     * Verifies that an inserted account can be found and its balances read and
+     * written through its slot.
+     */
+    @Test
+    public void testInsertAndFind() {
+        int slot = store.insert("Alice", 500, 20);
+        assertNotEquals(SlotAccountStore.NO_SLOT, slot);
+        assertEquals(slot, store.find("Alice"));
+        assertEquals(SlotAccountStore.NO_SLOT, store.find("Bob"));
+        assertEquals("Alice", store.getAccountHolder(slot));
+        assertTrue(store.holds(slot, "Alice"));
+
+        synchronized (store.lock(slot)) {
+            assertEquals(500, store.getBalance(slot));
+            assertEquals(20, store.getLoanBalance(slot));
+            store.setBalance(slot, 750);
+            store.setLoanBalance(slot, 0);
+            assertEquals(750, store.getBalance(slot));
+            assertEquals(0, store.getLoanBalance(slot));
+        }
+        assertEquals(1, store.size());
+    }
+
+    /**
+     * Verifies that an account holder cannot be inserted twice.
+     */
+    @Test
+    public void testDuplicateInsertIsRejected() {
+        int slot = store.insert("Alice", 500, 0);
+        assertEquals(SlotAccountStore.NO_SLOT, store.insert("Alice", 100, 0));
+        assertEquals(500, store.getBalance(slot));
+        assertEquals(1, store.size());
+    }
+
+    /**
+     * Verifies that a removed account can no longer be found and that its slot
+     * is reused without keeping its balances.
+     */
+    @Test
+    public void testRemovedSlotIsReused() {
+        int alice = store.insert("Alice", 500, 20);
+        store.insert("Bob", 100, 0);
+        synchronized (store.lock(alice)) {
+            store.remove(alice);
+        }
+        assertEquals(SlotAccountStore.NO_SLOT, store.find("Alice"));
+        assertFalse(store.holds(alice, "Alice"));
+        assertEquals(1, store.size());
+
+        int carol = store.insert("Carol", 0, 0);
+        assertEquals(alice, carol);
+        assertEquals(0, store.getBalance(carol));
+        assertEquals(0, store.getLoanBalance(carol));
+        assertEquals(carol, store.find("Carol"));
+        assertNotEquals(SlotAccountStore.NO_SLOT, store.find("Bob"));
+        assertEquals(100, store.totalBalance());
+    }
+
+    /**
+     * Verifies that removing an account advances its slot's generation, so a
+     * new account for the same holder in the same slot can be told apart.
+     */
+    @Test
+    public void testRemovalAdvancesGeneration() {
+        int slot = store.insert("Alice", 500, 0);
+        int generation;
+        synchronized (store.lock(slot)) {
+            generation = store.generation(slot);
+            store.remove(slot);
+            assertNotEquals(generation, store.generation(slot));
+        }
+
+        int reused = store.allocate("Alice", 100, 0);
+        assertEquals(slot, reused);
+        synchronized (store.lock(reused)) {
+            assertTrue(store.holds(reused, "Alice"));
+            assertFalse(store.isPublished(reused));
+            assertNotEquals(generation, store.generation(reused));
+            assertTrue(store.publish(reused));
+            assertNotEquals(generation, store.generation(reused));
+        }
+    }
+
+    /**
+     * Verifies that a slot's version is odd while a change is under way and
+     * different once it is done, so a read that overlapped it is rejected.
+     */
+    @Test
+    public void testVersionDetectsChange() {
+        int slot = store.insert("Alice", 500, 0);
+        int version = store.readVersion(slot);
+        assertTrue(store.validate(slot, version));
+
+        synchronized (store.lock(slot)) {
+            store.beginChange(slot);
+            assertFalse(store.validate(slot, version));
+            assertFalse(store.validate(slot, store.readVersion(slot)));
+            store.setBalance(slot, 750);
+            store.endChange(slot);
+        }
+        assertFalse(store.validate(slot, version));
+        assertTrue(store.validate(slot, store.readVersion(slot)));
+    }
+
+    /**
+     * Verifies that a reader checking the version never accepts a balance and
+     * loan balance from different changes, while a writer keeps moving the
+     * amount between them under the slot's lock.
+     */
+    @Test
+    public void testVersionedReadsAreConsistent()
+            throws Exception {
+        long total = 1_000_000;
+        int slot = store.insert("Alice", total, 0);
+        Thread writer = new Thread(() -> {
+            for (long i = 1; i <= 1_000_000; i++) {
+                synchronized (store.lock(slot)) {
+                    store.beginChange(slot);
+                    store.setBalance(slot, total - i);
+                    store.setLoanBalance(slot, i);
+                    store.endChange(slot);
+                }
+            }
+        });
+        writer.start();
+
+        int accepted = 0;
+        while (writer.isAlive() || accepted == 0) {
+            int version = store.readVersion(slot);
+            long balance = store.getBalance(slot);
+            long loanBalance = store.getLoanBalance(slot);
+            if (store.validate(slot, version)) {
+                assertEquals(total, balance + loanBalance);
+                accepted++;
+            }
+        }
+        writer.join();
+    }
+
+    /**
+     * Verifies that an allocated account is only found once it is published,
+     * and that publishing a second account for the same holder frees its slot.
+     */
+    @Test
+    public void testAllocateAndPublish() {
+        int slot = store.allocate("Alice", 500, 0);
+        assertEquals(SlotAccountStore.NO_SLOT, store.find("Alice"));
+        assertTrue(store.holds(slot, "Alice"));
+        synchronized (store.lock(slot)) {
+            assertTrue(store.publish(slot));
+        }
+        assertEquals(slot, store.find("Alice"));
+        assertEquals(1, store.size());
+
+        int duplicate = store.allocate("Alice", 100, 0);
+        synchronized (store.lock(duplicate)) {
+            assertFalse(store.publish(duplicate));
+        }
+        assertFalse(store.holds(duplicate, "Alice"));
+        assertEquals(slot, store.find("Alice"));
+        assertEquals(500, store.totalBalance());
+        assertEquals(1, store.size());
+    }
+
+    /**
+     * Verifies that many accounts, with some removed and reinserted, are all
+     * found and counted by the sweeps.
+     */
+    @Test
+    public void testManyAccounts() {
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertNotEquals(SlotAccountStore.NO_SLOT, store.insert(holder(i), i, i % 7));
+            expected.put(holder(i), (long) i);
+        }
+        Random random = new Random(78);
+        for (int i = 0; i < ACCOUNTS / 10; i++) {
+            String holder = holder(random.nextInt(ACCOUNTS));
+            int slot = store.find(holder);
+            if (slot == SlotAccountStore.NO_SLOT)
+                continue;
+            synchronized (store.lock(slot)) {
+                store.remove(slot);
+            }
+            expected.remove(holder);
+        }
+        for (int i = ACCOUNTS; i < ACCOUNTS + ACCOUNTS / 20; i++) {
+            store.insert(holder(i), i, 0);
+            expected.put(holder(i), (long) i);
+        }
+
+        assertEquals(expected.size(), store.size());
+        long total = 0;
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            int slot = store.find(entry.getKey());
+            assertNotEquals(SlotAccountStore.NO_SLOT, slot, entry.getKey());
+            assertEquals(entry.getValue(), store.getBalance(slot));
+            total += entry.getValue();
+        }
+        assertEquals(total, store.totalBalance());
+
+        long[] visited = new long[2];
+        store.forEach((slot, holder, balance, loanBalance) -> {
+            assertEquals(expected.get(holder), balance);
+            visited[0]++;
+            visited[1] += loanBalance;
+        });
+        assertEquals(expected.size(), visited[0]);
+        assertEquals(visited[1], store.totalLoanBalance());
+    }
+
+    /**
+     * Verifies that accounts inserted by several threads are all found while
+     * other threads look them up and update their balances under slot locks.
+     */
+    @Test
+    public void testConcurrentInsertAndUpdate()
+            throws Exception {
+        int perThread = ACCOUNTS / THREADS;
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int first = t * perThread;
+            Thread thread = new Thread(() -> {
+                for (int i = first; i < first + perThread; i++) {
+                    store.insert(holder(i), 0, 0);
+                    int slot = store.find(holder(i - first / 2));
+                    if (slot != SlotAccountStore.NO_SLOT) {
+                        synchronized (store.lock(slot)) {
+                            store.setBalance(slot, store.getBalance(slot) + 1);
+                        }
+                    }
+                }
+            });
+            thread.setUncaughtExceptionHandler((ignored, failure) -> {
+                synchronized (failures) {
+                    failures.add(failure);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(ACCOUNTS, store.size());
+        for (int i = 0; i < ACCOUNTS; i++)
+            assertNotEquals(SlotAccountStore.NO_SLOT, store.find(holder(i)), holder(i));
+    }
+
+    protected static String holder(int index) {
+        return "Holder " + index;
+    }
+}
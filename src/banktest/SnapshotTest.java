@@ -0,0 +1,162 @@
+package banktest;
+
+import bank.Account;
+import bank.Bank;
+import bank.journal.Journal;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for writing and loading snapshots of a {@link Bank}.
+ */
+public class SnapshotTest {
+
+    private static final int ACCOUNTS = 100_000;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Bank bank;
+
+    /**
+     * Sets up a bank with enough accounts to fill several snapshot segments
+     * before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        file = directory.resolve("bank.snapshot");
+        bank = new Bank(20_000.0, 10_000.0, 15_000.0);
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), 1 + i);
+        bank.approveLoanCents(holder(7), 500);
+        bank.addAccountCents("Zoë", 1_234);
+    }
+
+    /**
+     * Verifies that a loaded snapshot has the same limits, reserves and accounts
+     * as the bank it was written from.
+     */
+    @Test
+    public void testSnapshotRoundTrip()
+            throws Exception {
+        bank.writeSnapshot(file, 42);
+
+        Bank loaded = new Bank(1.0, 1.0, 1.0);
+        assertEquals(42, loaded.loadSnapshot(file));
+        assertEquals(bank.getMaxDeposit(), loaded.getMaxDeposit());
+        assertEquals(bank.getMaxWithdrawal(), loaded.getMaxWithdrawal());
+        assertEquals(bank.getMaxLoan(), loaded.getMaxLoan());
+        assertEquals(bank.getReservesCents(), loaded.getReservesCents());
+        assertEquals(bank.getAccounts().size(), loaded.getAccounts().size());
+        for (Account account : bank.getAccounts()) {
+            String holder = account.getAccountHolder();
+            assertEquals(account.getAccountBalanceCents(), loaded.getAccountBalanceCents(holder));
+            assertEquals(account.getLoanBalanceCents(), loaded.getLoanBalanceCents(holder));
+        }
+    }
+
+    /**
+     * Verifies that a bank is recovered from a snapshot plus the journal
+     * records written after it.
+     */
+    @Test
+    public void testRecoverFromSnapshotAndJournalTail()
+            throws Exception {
+        Path journalFile = directory.resolve("bank.journal");
+        try (Journal journal = new Journal(journalFile, Journal.Durability.GROUP)) {
+            bank.setMutationLog(journal);
+            bank.deposit(holder(1), 10.0);
+            bank.writeSnapshot(file, journal.getLastSequence());
+            bank.deposit(holder(1), 20.0);
+            bank.transfer(holder(1), holder(2), 5.0);
+            bank.removeAccount("Zoë");
+        }
+
+        Bank recovered = new Bank(1.0, 1.0, 1.0);
+        long sequence = recovered.loadSnapshot(file);
+        assertEquals(4, recovered.replayJournal(journalFile, sequence));
+        assertEquals(bank.getReservesCents(), recovered.getReservesCents());
+        assertEquals(bank.getAccountBalanceCents(holder(1)), recovered.getAccountBalanceCents(holder(1)));
+        assertEquals(bank.getAccountBalanceCents(holder(2)), recovered.getAccountBalanceCents(holder(2)));
+        assertEquals(bank.getAccounts().size(), recovered.getAccounts().size());
+    }
+
+    /**
+     * Verifies that a corrupted segment is detected on load.
+     */
+    @Test
+    public void testCorruptSnapshotIsRejected()
+            throws Exception {
+        bank.writeSnapshot(file, 0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), Files.size(file) / 2);
+        }
+
+        assertThrows(IOException.class, () -> new Bank(1.0, 1.0, 1.0).loadSnapshot(file));
+    }
+
+    /**
+     * Verifies that a corrupted header is detected on load, before any of the
+     * limits or reserves it holds are used.
+     */
+    @Test
+    public void testCorruptHeaderIsRejected()
+            throws Exception {
+        bank.writeSnapshot(file, 0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1 }), 40);
+        }
+
+        Bank loaded = new Bank(1.0, 1.0, 1.0);
+        assertThrows(IOException.class, () -> loaded.loadSnapshot(file));
+        assertEquals(0, loaded.getReservesCents());
+    }
+
+    /**
+     * Verifies that a snapshot cannot be loaded into a bank that already has
+     * accounts.
+     */
+    @Test
+    public void testLoadIntoNonEmptyBankIsRejected()
+            throws Exception {
+        bank.writeSnapshot(file, 0);
+
+        assertThrows(IllegalStateException.class, () -> bank.loadSnapshot(file));
+    }
+
+    /**
+     * Verifies that a snapshot that fails part way through leaves the previous
+     * snapshot at the same path intact and no temporary file behind.
+     */
+    @Test
+    public void testFailedSnapshotKeepsPreviousSnapshot()
+            throws Exception {
+        bank.writeSnapshot(file, 7);
+        byte[] previous = Files.readAllBytes(file);
+
+        bank.addAccountCents("x".repeat(70_000), 100);
+        assertThrows(IllegalArgumentException.class, () -> bank.writeSnapshot(file, 8));
+
+        assertArrayEquals(previous, Files.readAllBytes(file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(7, new Bank(1.0, 1.0, 1.0).loadSnapshot(file));
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+}
@@ -0,0 +1,236 @@
+package banktest;
+
+import bank.Bank;
+import bank.Operation;
+import bank.OperationResult;
+import bank.Transaction;
+import bank.journal.Mutation;
+import bank.journal.MutationLog;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static banktest.ConcurrentTasks.runOnThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Transaction}s started with {@link Bank#transaction()}.
+ */
+public class TransactionTest {
+
+    private static final double MAX_DEPOSIT = 20_000.0;
+    private static final double MAX_WITHDRAWAL = 10_000.0;
+    private static final double MAX_LOAN = 15_000.0;
+
+    private static final int THREADS = 8;
+    private static final int ACCOUNTS = 16;
+    private static final long INITIAL_DEPOSIT = 100_000;
+
+    private Bank bank;
+
+    /**
+     * Sets up a bank with a number of accounts before each test.
+     */
+    @BeforeEach
+    public void setUp()
+            throws Exception {
+        bank = new Bank(MAX_DEPOSIT, MAX_WITHDRAWAL, MAX_LOAN);
+        for (int i = 0; i < ACCOUNTS; i++)
+            bank.addAccountCents(holder(i), INITIAL_DEPOSIT);
+    }
+
+    /**
+     * Verifies that a committed transaction applies every operation, each
+     * seeing the operations added before it.
+     */
+    @Test
+    public void testCommitAppliesEveryOperation()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+
+        OperationResult result = bank.transaction()
+                .deposit(holder(0), 50_000)
+                .withdraw(holder(0), 150_000)
+                .approveLoan(holder(1), 30_000)
+                .repayLoan(holder(1), 10_000)
+                .deposit(holder(2), 1)
+                .commit();
+
+        assertEquals(OperationResult.OK, result);
+        assertEquals(0, bank.getAccountBalanceCents(holder(0)));
+        assertEquals(20_000, bank.getLoanBalanceCents(holder(1)));
+        assertEquals(INITIAL_DEPOSIT + 1, bank.getAccountBalanceCents(holder(2)));
+        assertEquals(reserves + 50_000 - 150_000 - 30_000 + 10_000 + 1, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that a transaction with one rejected operation changes nothing,
+     * including the accounts changed by the operations before it.
+     */
+    @Test
+    public void testRejectedOperationChangesNothing()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+
+        OperationResult result = bank.transaction()
+                .deposit(holder(0), 10_000)
+                .approveLoan(holder(1), 10_000)
+                .withdraw(holder(2), INITIAL_DEPOSIT + 1)
+                .commit();
+
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS, result);
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder(0)));
+        assertEquals(0, bank.getLoanBalanceCents(holder(1)));
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder(2)));
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that each kind of rejection is reported and changes nothing.
+     */
+    @Test
+    public void testRejectionsAreReported()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+
+        assertEquals(OperationResult.ACCOUNT_NOT_FOUND,
+                bank.transaction().deposit(holder(0), 1).deposit("Nobody", 1).commit());
+        assertEquals(OperationResult.INVALID_AMOUNT,
+                bank.transaction().deposit(holder(0), 1).withdraw(holder(1), -1).commit());
+        assertEquals(OperationResult.LIMIT_EXCEEDED,
+                bank.transaction().deposit(holder(0), 1).approveLoan(holder(1), 1_500_001).commit());
+        assertEquals(OperationResult.EXCEEDS_LOAN_BALANCE,
+                bank.transaction().deposit(holder(0), 1).repayLoan(holder(1), 1).commit());
+        assertEquals(OperationResult.INSUFFICIENT_RESERVES,
+                bank.transaction().deposit(holder(0), 1)
+                        .approveLoan(holder(1), 1_000_000).approveLoan(holder(2), 1_000_000).commit());
+
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder(0)));
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that the reserves may not go below zero part way through a
+     * transaction, even if later operations would pay them back.
+     */
+    @Test
+    public void testReservesMustCoverLowestPoint()
+            throws Exception {
+        Bank small = new Bank(MAX_DEPOSIT, MAX_WITHDRAWAL, MAX_LOAN);
+        small.addAccountCents(holder(0), 1_000);
+        small.addAccountCents(holder(1), 1_000);
+
+        assertEquals(OperationResult.INSUFFICIENT_RESERVES, small.transaction()
+                .approveLoan(holder(0), 2_001)
+                .deposit(holder(1), 10)
+                .commit());
+        assertEquals(OperationResult.OK, small.transaction()
+                .deposit(holder(1), 10)
+                .approveLoan(holder(0), 2_001)
+                .commit());
+        assertEquals(9, small.getReservesCents());
+    }
+
+    /**
+     * Verifies that a rolled back or closed transaction changes nothing and
+     * cannot be used again.
+     */
+    @Test
+    public void testRollbackAndClose()
+            throws Exception {
+        Transaction transaction = bank.transaction().deposit(holder(0), 10);
+        transaction.rollback();
+        assertThrows(IllegalStateException.class, transaction::commit);
+        assertThrows(IllegalStateException.class, () -> transaction.deposit(holder(0), 10));
+
+        try (Transaction closed = bank.transaction()) {
+            closed.withdraw(holder(0), 10);
+        }
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder(0)));
+
+        Transaction committed = bank.transaction().deposit(holder(0), 10);
+        assertEquals(OperationResult.OK, committed.commit());
+        assertThrows(IllegalStateException.class, committed::rollback);
+        assertDoesNotThrow(committed::close);
+    }
+
+    /**
+     * Verifies that a committed transaction appends each of its operations to
+     * the mutation log, and a rejected one appends nothing.
+     */
+    @Test
+    public void testCommitIsLogged()
+            throws Exception {
+        List<Mutation> mutations = new ArrayList<>();
+        bank.setMutationLog((mutation, accountHolder, counterparty, amount) -> mutations.add(mutation));
+
+        bank.transaction().withdraw(holder(0), INITIAL_DEPOSIT + 1).deposit(holder(1), 1).commit();
+        assertTrue(mutations.isEmpty());
+
+        bank.transaction().deposit(holder(0), 1).withdraw(holder(1), 1).approveLoan(holder(2), 1).commit();
+        assertEquals(List.of(Mutation.DEPOSIT, Mutation.WITHDRAWAL, Mutation.LOAN), mutations);
+    }
+
+    /**
+     * Verifies that a transaction the mutation log rejects changes nothing,
+     * including the reserves taken for its lowest point.
+     */
+    @Test
+    public void testLogFailureChangesNothing()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+        bank.setMutationLog(new MutationLog() {
+            @Override
+            public void append(Mutation mutation, String accountHolder, String counterparty, long amount) {
+            }
+
+            @Override
+            public void appendTransaction(List<Operation> operations) {
+                throw new IllegalStateException("Log failed");
+            }
+        });
+
+        assertThrows(IllegalStateException.class, () -> bank.transaction()
+                .approveLoan(holder(0), 50_000)
+                .deposit(holder(1), 10_000)
+                .commit());
+        assertEquals(0, bank.getLoanBalanceCents(holder(0)));
+        assertEquals(INITIAL_DEPOSIT, bank.getAccountBalanceCents(holder(1)));
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    /**
+     * Verifies that concurrent transactions moving money around overlapping
+     * sets of accounts neither deadlock nor create or destroy money.
+     */
+    @Test
+    @Timeout(10)
+    public void testConcurrentTransactions()
+            throws Exception {
+        long reserves = bank.getReservesCents();
+
+        runOnThreads(THREADS, thread -> {
+            for (int i = 0; i < 10_000; i++) {
+                int first = (thread + i) % ACCOUNTS;
+                int second = (thread * 3 + i * 7 + 1) % ACCOUNTS;
+                int third = (i * 5 + 2) % ACCOUNTS;
+                bank.transaction()
+                        .withdraw(holder(first), 300)
+                        .deposit(holder(second), 100)
+                        .deposit(holder(third), 200)
+                        .commit();
+            }
+        });
+
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++)
+            total += bank.getAccountBalanceCents(holder(i));
+        assertEquals(ACCOUNTS * INITIAL_DEPOSIT, total);
+        assertEquals(reserves, bank.getReservesCents());
+    }
+
+    private static String holder(int index) {
+        return "Holder " + index;
+    }
+}